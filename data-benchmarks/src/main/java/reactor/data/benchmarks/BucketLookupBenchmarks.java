@@ -0,0 +1,79 @@
+package reactor.data.benchmarks;
+
+import com.basho.riak.client.IRiakClient;
+import com.basho.riak.client.RiakRetryFailedException;
+import com.basho.riak.client.bucket.Bucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.data.riak.Riak;
+import reactor.data.riak.RiakInternals;
+import reactor.data.riak.test.InMemoryRiakClient;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking a bucket up by name in the bucket cache {@link Riak#fetchBucket(String)} serves cached buckets
+ * from, with and without idle tracking, as the number of cached buckets grows. A lookup should cost the same however
+ * many buckets there are.
+ *
+ * @author Jon Brisbin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class BucketLookupBenchmarks {
+
+	/**
+	 * The number of cached buckets.
+	 */
+	@Param({"10", "1000", "10000"})
+	public int buckets;
+
+	RiakInternals.Buckets cache;
+	RiakInternals.Buckets idleCache;
+	String[]              names;
+
+	@Setup
+	public void setup() throws RiakRetryFailedException {
+		IRiakClient client = new InMemoryRiakClient().getClient();
+		cache = RiakInternals.bucketCache(0, 0);
+		idleCache = RiakInternals.bucketCache(TimeUnit.HOURS.toNanos(1), 0);
+		names = new String[buckets];
+		for (int i = 0; i < buckets; i++) {
+			names[i] = "bucket-" + i;
+			Bucket b = client.fetchBucket(names[i]).execute();
+			cache.put(b);
+			idleCache.put(b);
+		}
+	}
+
+	@Benchmark
+	public Bucket bucketCache() {
+		return cache.get(randomName());
+	}
+
+	@Benchmark
+	public Bucket bucketCacheWithIdleTimeout() {
+		return idleCache.get(randomName());
+	}
+
+	private String randomName() {
+		return names[ThreadLocalRandom.current().nextInt(names.length)];
+	}
+
+}
@@ -0,0 +1,100 @@
+package reactor.data.benchmarks;
+
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.convert.Converter;
+import com.basho.riak.client.convert.JSONConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.data.riak.codec.CodecConverter;
+import reactor.data.riak.codec.JacksonCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares riak-client's default JSON conversion with the {@link JacksonCodec} codecs, with and without compression.
+ * Run with JMH's GC profiler to compare the garbage each produces:
+ * <p>
+ * <pre>
+ * ./gradlew :data-benchmarks:jmh -PjmhArgs="CodecBenchmarks -prof gc"
+ * </pre>
+ *
+ * @author Jon Brisbin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CodecBenchmarks {
+
+	/**
+	 * The converter: riak-client's JSON converter, or a codec with compression above 1KB ({@code "-z"}) or without.
+	 */
+	@Param({"client-json", "json", "smile", "smile-z"})
+	public String converter;
+
+	/**
+	 * The number of entries in the document's list, which sets its size.
+	 */
+	@Param({"4", "256"})
+	public int entries;
+
+	Converter<Document> conv;
+	Document            document;
+	IRiakObject         stored;
+
+	@Setup
+	public void setup() {
+		switch (converter) {
+			case "client-json":
+				conv = new JSONConverter<>(Document.class, "bench", "key");
+				break;
+			case "json":
+				conv = new CodecConverter<>(JacksonCodec.json(Document.class), "bench", "key", 0);
+				break;
+			case "smile":
+				conv = new CodecConverter<>(JacksonCodec.smile(Document.class), "bench", "key", 0);
+				break;
+			case "smile-z":
+				conv = new CodecConverter<>(JacksonCodec.smile(Document.class), "bench", "key", 1024);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown converter: " + converter);
+		}
+
+		document = new Document();
+		document.name = "benchmark";
+		for (int i = 0; i < entries; i++) {
+			document.entries.add("entry number " + i);
+		}
+		stored = conv.fromDomain(document, null);
+	}
+
+	@Benchmark
+	public IRiakObject encode() {
+		return conv.fromDomain(document, null);
+	}
+
+	@Benchmark
+	public Document decode() {
+		return conv.toDomain(stored);
+	}
+
+	public static class Document {
+		public String       name;
+		public List<String> entries = new ArrayList<>();
+	}
+
+}
@@ -0,0 +1,95 @@
+package reactor.data.benchmarks;
+
+import com.basho.riak.client.RiakException;
+import com.basho.riak.client.bucket.Bucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.data.riak.DeleteEvent;
+import reactor.data.riak.Riak;
+import reactor.data.riak.RiakInternals;
+import reactor.data.riak.StoreEvent;
+import reactor.data.riak.test.InMemoryRiakClient;
+import reactor.fn.Event;
+import reactor.fn.Tuple;
+
+import java.util.concurrent.TimeUnit;
+
+import static reactor.Fn.$;
+
+/**
+ * Measures the cost {@link Riak} adds to a store and a delete for publishing events, with and without a subscriber.
+ * {@link #publishBefore()} publishes the way {@link Riak} did before paths were only built for subscribed keys, so the
+ * two can be compared in one run. Run with JMH's GC profiler to see the bytes allocated per operation:
+ * <p>
+ * <pre>
+ * ./gradlew :data-benchmarks:jmh -PjmhArgs="EventPublishingBenchmarks -prof gc"
+ * </pre>
+ *
+ * @author Jon Brisbin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EventPublishingBenchmarks {
+
+	/**
+	 * Whether a consumer is subscribed to the object's {@code "/bucket/key"} path.
+	 */
+	@Param({"false", "true"})
+	public boolean subscribed;
+
+	static final String KEY   = "key";
+	static final String VALUE = "value";
+
+	Riak   riak;
+	Bucket bucket;
+
+	@Setup(Level.Trial)
+	public void setup() throws RiakException, InterruptedException {
+		riak = new Riak(new InMemoryRiakClient().getClient());
+		bucket = riak.fetchBucket("bench").await(RiakBenchmarks.TIMEOUT_S, TimeUnit.SECONDS);
+		if (subscribed) {
+			riak.on($("/bench/key"), (Event<Object> ev) -> {
+			});
+		}
+	}
+
+	@Benchmark
+	public Object storeAndDelete() throws InterruptedException {
+		riak.store(bucket, KEY, VALUE, null, null, null).await(RiakBenchmarks.TIMEOUT_S, TimeUnit.SECONDS);
+		return riak.delete(bucket, KEY, null).await(RiakBenchmarks.TIMEOUT_S, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Publish a store and a delete the way {@link Riak} used to: the path is concatenated and the events created whether
+	 * or not anything is subscribed.
+	 */
+	@Benchmark
+	public void publishBefore() {
+		riak.notify("/" + bucket.getName() + "/" + KEY, new StoreEvent<>(VALUE));
+		riak.notify("/" + bucket.getName() + "/" + KEY, new DeleteEvent(Tuple.of(bucket, KEY)));
+	}
+
+	/**
+	 * Publish a store and a delete the way {@link Riak} does now.
+	 */
+	@Benchmark
+	public void publishAfter() {
+		RiakInternals.publishStore(riak, bucket, KEY, VALUE);
+		RiakInternals.publishDelete(riak, bucket, KEY);
+	}
+
+}
@@ -0,0 +1,152 @@
+package reactor.data.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.data.repository.CrudRepository;
+import reactor.core.Composable;
+import reactor.data.spring.ComposableCrudRepository;
+import reactor.data.spring.ComposableRepository;
+import reactor.data.spring.RepositoryInternals;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what a {@link ComposableRepository} proxy adds to a repository call. The repository and its Spring Data
+ * delegate do no work, so the numbers are the cost of dispatch alone: a direct call, a call through a proxy with no
+ * advice, and calls through a proxy advised the way {@link reactor.data.spring.ComposableRepositoryFactoryBean} advises
+ * it to a CRUD method and to a finder method.
+ *
+ * @author Jon Brisbin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RepositoryDispatchBenchmarks {
+
+	StubRepository repository;
+	ThingFinder    delegate;
+	Things         unadvised;
+	Things         things;
+	Long           id;
+
+	@Setup
+	public void setup() {
+		repository = new StubRepository();
+		delegate = (ThingFinder) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[]{ThingFinder.class},
+				(proxy, method, args) -> ("findByName".equals(method.getName()) ? args[0] : null)
+		);
+
+		ProxyFactory plain = new ProxyFactory(repository);
+		plain.addInterface(Things.class);
+		unadvised = (Things) plain.getProxy();
+
+		ProxyFactory advised = new ProxyFactory(repository);
+		advised.addInterface(Things.class);
+		advised.addInterface(ComposableRepository.class);
+		advised.addAdvice(RepositoryInternals.queryMethodExecutor(Things.class, repository, delegate));
+		things = (Things) advised.getProxy();
+
+		id = 1L;
+	}
+
+	@Benchmark
+	public Composable<String> direct() {
+		return repository.findOne(id);
+	}
+
+	@Benchmark
+	public Composable<String> unadvisedProxy() {
+		return unadvised.findOne(id);
+	}
+
+	@Benchmark
+	public Composable<String> crudMethod() {
+		return things.findOne(id);
+	}
+
+	@Benchmark
+	public String finderDirect() {
+		return delegate.findByName("thing");
+	}
+
+	@Benchmark
+	public Composable<String> finderMethod() {
+		return things.findByName("thing");
+	}
+
+	public interface Things extends ComposableCrudRepository<String, Long> {
+		Composable<String> findByName(String name);
+	}
+
+	public interface ThingFinder extends CrudRepository<String, Long> {
+		String findByName(String name);
+	}
+
+	/**
+	 * A repository whose methods return immediately, so only the cost of getting to them is measured.
+	 */
+	static class StubRepository implements ComposableCrudRepository<String, Long> {
+		private final Composable<String> thing = new Composable<String>();
+
+		@Override
+		public <S extends String> Composable<S> save(Composable<S> entities) {
+			return entities;
+		}
+
+		@Override
+		public Composable<String> findOne(Long id) {
+			return thing;
+		}
+
+		@Override
+		public Composable<Boolean> exists(Long id) {
+			return null;
+		}
+
+		@Override
+		public Composable<String> findAll() {
+			return thing;
+		}
+
+		@Override
+		public Composable<String> findAll(Composable<Long> ids) {
+			return thing;
+		}
+
+		@Override
+		public Composable<Long> count() {
+			return null;
+		}
+
+		@Override
+		public Composable<Void> delete(Long id) {
+			return null;
+		}
+
+		@Override
+		public Composable<Void> delete(Composable<? extends String> entities) {
+			return null;
+		}
+
+		@Override
+		public Composable<Void> deleteAll() {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+package reactor.data.benchmarks;
+
+import com.basho.riak.client.RiakException;
+import com.basho.riak.client.bucket.Bucket;
+import com.basho.riak.client.operations.RiakOperation;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.data.riak.Riak;
+import reactor.data.riak.RiakSpec;
+import reactor.data.riak.test.InMemoryRiakClient;
+import reactor.fn.dispatch.RingBufferDispatcher;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static reactor.core.Context.rootDispatcher;
+
+/**
+ * Measures the dispatch overhead of {@link Riak}'s operations against an {@link InMemoryRiakClient}, so no cluster is
+ * needed. Vary the number of caller threads with JMH's {@code -t} option.
+ * <p>
+ * <pre>
+ * ./gradlew :data-benchmarks:jmh -PjmhArgs="RiakBenchmarks -t 4 -p io=sharded-4"
+ * </pre>
+ *
+ * @author Jon Brisbin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RiakBenchmarks {
+
+	static final int KEYS      = 1024;
+	static final int BATCH     = 16;
+	static final int TIMEOUT_S = 30;
+
+	/**
+	 * The IO dispatcher setup: a single ring buffer with a yielding or blocking wait strategy, or several key-routed
+	 * shards.
+	 */
+	@Param({"yielding", "blocking", "sharded-4"})
+	public String io;
+
+	/**
+	 * Latency injected into every round trip to the in-memory stand-in, in microseconds.
+	 */
+	@Param({"0", "100"})
+	public int latencyMicros;
+
+	/**
+	 * The size of stored values, in characters.
+	 */
+	@Param({"16", "1024"})
+	public int payloadSize;
+
+	InMemoryRiakClient fake;
+	Riak               riak;
+	Bucket             bucket;
+	String             payload;
+	String[]           keys;
+
+	@Setup(Level.Trial)
+	public void setup() throws RiakException, InterruptedException {
+		fake = new InMemoryRiakClient().withLatency(latencyMicros, TimeUnit.MICROSECONDS);
+		riak = createRiak(io, fake);
+
+		char[] chars = new char[payloadSize];
+		Arrays.fill(chars, 'x');
+		payload = new String(chars);
+
+		keys = new String[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			keys[i] = "key" + i;
+		}
+
+		bucket = riak.fetchBucket("bench").await(TIMEOUT_S, TimeUnit.SECONDS);
+		for (String key : keys) {
+			riak.store(bucket, key, payload, null, null, null).await(TIMEOUT_S, TimeUnit.SECONDS);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		fake.clear();
+	}
+
+	@Benchmark
+	public Object fetch(Caller caller) throws InterruptedException {
+		return riak.fetch(bucket, caller.nextKey(keys), String.class, null, null).await(TIMEOUT_S, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public Object store(Caller caller) throws InterruptedException {
+		return riak.store(bucket, caller.nextKey(keys), payload, null, null, null).await(TIMEOUT_S, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public Object delete(Caller caller) throws InterruptedException {
+		return riak.delete(bucket, caller.nextKey(keys), null).await(TIMEOUT_S, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public Object sendOperations(Caller caller) throws InterruptedException {
+		RiakOperation<?>[] ops = new RiakOperation<?>[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			ops[i] = bucket.store(caller.nextKey(keys), payload);
+		}
+		return riak.send(ops).await(TIMEOUT_S, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public Object fetchBucket() throws InterruptedException {
+		return riak.fetchBucket("bench").await(TIMEOUT_S, TimeUnit.SECONDS);
+	}
+
+	static Riak createRiak(String io, InMemoryRiakClient fake) throws RiakException {
+		switch (io) {
+			case "yielding":
+				return new Riak(fake.getClient(), rootDispatcher(), new RingBufferDispatcher(
+						"riak", 1, Riak.DEFAULT_IO_BACKLOG, ProducerType.MULTI, new YieldingWaitStrategy()
+				));
+			case "blocking":
+				return new Riak(fake.getClient(), rootDispatcher(), new RingBufferDispatcher(
+						"riak", 1, Riak.DEFAULT_IO_BACKLOG, ProducerType.MULTI, new BlockingWaitStrategy()
+				));
+			default:
+				if (io.startsWith("sharded-")) {
+					return new RiakSpec()
+							.client(fake.getClient())
+							.ioShards(Integer.parseInt(io.substring("sharded-".length())))
+							.build();
+				}
+				throw new IllegalArgumentException("Unknown io setup: " + io);
+		}
+	}
+
+	/**
+	 * Per-thread state so that concurrent callers walk the key space independently.
+	 */
+	@State(Scope.Thread)
+	public static class Caller {
+		int next = (int) (Thread.currentThread().getId() * 31);
+
+		String nextKey(String[] keys) {
+			return keys[(next++ & Integer.MAX_VALUE) % keys.length];
+		}
+	}
+
+}
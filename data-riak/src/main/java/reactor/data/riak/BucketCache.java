@@ -0,0 +1,101 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.bucket.Bucket;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The buckets {@link Riak} has fetched, keyed by name. A lookup is a single hash map read, however many buckets there
+ * are. Buckets not looked up for longer than the idle timeout are evicted, and buckets whose properties are older than
+ * the refresh interval are flagged so {@link Riak} can fetch them again in the background while still serving the
+ * cached copy.
+ *
+ * @author Jon Brisbin
+ */
+class BucketCache {
+
+	private final ConcurrentMap<String, Entry> buckets = new ConcurrentHashMap<>();
+	private final long idleNanos;
+	private final long refreshNanos;
+
+	/**
+	 * @param idleNanos    evict buckets that haven't been looked up for this long, or {@literal 0} to keep them forever
+	 * @param refreshNanos refresh bucket properties older than this, or {@literal 0} to never refresh them
+	 */
+	BucketCache(long idleNanos, long refreshNanos) {
+		this.idleNanos = idleNanos;
+		this.refreshNanos = refreshNanos;
+	}
+
+	long getIdleNanos() {
+		return idleNanos;
+	}
+
+	/**
+	 * Look up a bucket, evicting it instead if it has been idle for too long.
+	 *
+	 * @return the entry or {@literal null} if the bucket isn't cached
+	 */
+	Entry get(String name) {
+		Entry e = buckets.get(name);
+		if (null == e || idleNanos == 0) {
+			return e;
+		}
+		long now = System.nanoTime();
+		if (now - e.accessedAt > idleNanos) {
+			buckets.remove(name, e);
+			return null;
+		}
+		e.accessedAt = now;
+		return e;
+	}
+
+	void put(Bucket bucket) {
+		buckets.put(bucket.getName(), new Entry(bucket));
+	}
+
+	void remove(String name) {
+		buckets.remove(name);
+	}
+
+	int size() {
+		return buckets.size();
+	}
+
+	/**
+	 * Whether the bucket's properties are old enough to be fetched again.
+	 */
+	boolean needsRefresh(Entry e) {
+		return refreshNanos > 0 && System.nanoTime() - e.loadedAt > refreshNanos;
+	}
+
+	/**
+	 * Evict every bucket that has been idle for longer than the idle timeout.
+	 */
+	void evictIdle() {
+		long now = System.nanoTime();
+		for (Iterator<Entry> it = buckets.values().iterator(); it.hasNext(); ) {
+			if (now - it.next().accessedAt > idleNanos) {
+				it.remove();
+			}
+		}
+	}
+
+	static final class Entry {
+		private final Bucket bucket;
+		private final long   loadedAt;
+		private volatile long accessedAt;
+
+		private Entry(Bucket bucket) {
+			this.bucket = bucket;
+			this.loadedAt = this.accessedAt = System.nanoTime();
+		}
+
+		Bucket getBucket() {
+			return bucket;
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package reactor.data.riak;
+
+/**
+ * An immutable bucket and key pair, used to key per-object state inside {@link Riak}. The hash is computed once and is
+ * the same one {@link Riak} routes the key to an IO shard with.
+ *
+ * @author Jon Brisbin
+ */
+final class BucketKey {
+
+	private final String bucket;
+	private final String key;
+	private final int    hash;
+
+	BucketKey(String bucket, String key) {
+		this.bucket = bucket;
+		this.key = key;
+		this.hash = 31 * bucket.hashCode() + key.hashCode();
+	}
+
+	String getBucket() {
+		return bucket;
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof BucketKey)) {
+			return false;
+		}
+		BucketKey that = (BucketKey) o;
+		return hash == that.hash && key.equals(that.key) && bucket.equals(that.bucket);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "/" + bucket + "/" + key;
+	}
+
+}
@@ -0,0 +1,114 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.RiakException;
+import com.basho.riak.client.bucket.Bucket;
+import com.basho.riak.client.convert.Converter;
+import reactor.Fn;
+import reactor.fn.Function;
+import reactor.fn.Tuple;
+import reactor.fn.Tuple2;
+
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams keys from a {@link KeySource}, like a bucket's key listing or an index query, and fetches their values. Keys
+ * are read on one of {@link Riak}'s streaming threads and each value is fetched on the IO shard its key is routed to,
+ * with at most {@code prefetch} fetches outstanding, so memory use doesn't grow with the number of keys.
+ *
+ * @author Jon Brisbin
+ */
+class BucketScan<T> implements Runnable {
+
+	private final AtomicLong                    pending = new AtomicLong(1);
+	private final AtomicLong                    emitted = new AtomicLong();
+	private final Riak                          riak;
+	private final Bucket                        bucket;
+	private final KeySource                     keys;
+	private final Class<T>                      asType;
+	private final Function<Collection<T>, T>    conflictResolver;
+	private final Converter<T>                  converter;
+	private final Semaphore                     window;
+	private final RiakStream<Tuple2<String, T>> stream;
+
+	BucketScan(Riak riak,
+						 Bucket bucket,
+						 KeySource keys,
+						 Class<T> asType,
+						 Function<Collection<T>, T> conflictResolver,
+						 Converter<T> converter,
+						 int prefetch,
+						 RiakStream<Tuple2<String, T>> stream) {
+		if (prefetch < 1) {
+			throw new IllegalArgumentException("prefetch must be at least 1");
+		}
+		this.riak = riak;
+		this.bucket = bucket;
+		this.keys = keys;
+		this.asType = asType;
+		this.conflictResolver = conflictResolver;
+		this.converter = converter;
+		this.window = new Semaphore(prefetch);
+		this.stream = stream;
+	}
+
+	@Override
+	public void run() {
+		try {
+			// a key listing can't be aborted without closing the connection, so a cancelled scan drains it instead
+			for (String key : keys.keys()) {
+				if (stream.isCancelled()) {
+					continue;
+				}
+				window.acquire();
+				try {
+					riak.admit(OperationType.FETCH, bucket.getName(), true);
+				} catch (RiakOverloadedException e) {
+					window.release();
+					riak.notify(Fn.T(e.getClass()), Fn.event(e));
+					stream.failed(e);
+					stream.cancel();
+					continue;
+				}
+				pending.incrementAndGet();
+				riak.schedule(riak.shard(bucket.getName(), key), OperationType.FETCH, v -> fetch(key));
+			}
+		} catch (RiakException | RuntimeException e) {
+			riak.notify(Fn.T(e.getClass()), Fn.event(e));
+			stream.failed(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stream.cancel();
+		} finally {
+			finished();
+		}
+	}
+
+	private void fetch(String key) {
+		try {
+			T value = riak.doFetch(bucket, key, asType, conflictResolver, converter);
+			riak.release(bucket.getName());
+			window.release();
+			// keys deleted since they were listed have no value to emit
+			if (null != value && !stream.isCancelled()) {
+				emitted.incrementAndGet();
+				stream.accept(Tuple.of(key, value));
+			}
+		} catch (Throwable t) {
+			riak.recordFailure(OperationType.FETCH, t);
+			riak.release(bucket.getName());
+			window.release();
+			riak.publishError(bucket.getName(), key, t);
+		} finally {
+			finished();
+		}
+	}
+
+	private void finished() {
+		if (pending.decrementAndGet() == 0) {
+			stream.complete(emitted.get());
+		}
+	}
+
+}
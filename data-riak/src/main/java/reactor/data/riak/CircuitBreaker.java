@@ -0,0 +1,167 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.RiakRetryFailedException;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stops {@link Riak} from sending operations to a cluster that is failing most of them. Calls and failures are counted
+ * over a fixed window; once at least {@code minCalls} calls have been made in a window and the share of them that
+ * failed reaches the failure rate, the circuit opens and operations fail fast. After {@code openNanos} a few probes are
+ * let through: the circuit closes again once enough of them succeed, and reopens as soon as one fails.
+ * <p>
+ * Only failures to talk to the cluster count, not conversion errors or rejections by the in-flight limit. Timeouts only
+ * count against probes, so a half-open circuit whose probe times out opens again.
+ *
+ * @author Jon Brisbin
+ */
+class CircuitBreaker {
+
+	private final AtomicReference<CircuitState> state         = new AtomicReference<>(CircuitState.CLOSED);
+	private final AtomicLong                    calls         = new AtomicLong();
+	private final AtomicLong                    failures      = new AtomicLong();
+	private final AtomicInteger                 probes        = new AtomicInteger();
+	private final AtomicInteger                 probesPassed  = new AtomicInteger();
+	private final double      failureRate;
+	private final int         minCalls;
+	private final int         halfOpenProbes;
+	private final long        windowNanos;
+	private final long        openNanos;
+	private final RiakMetrics metrics;
+	private volatile long windowStart = System.nanoTime();
+	private volatile long openedAt;
+
+	CircuitBreaker(double failureRate, int minCalls, long windowNanos, long openNanos, RiakMetrics metrics) {
+		this.failureRate = failureRate;
+		this.minCalls = minCalls;
+		this.halfOpenProbes = Math.max(1, minCalls / 10);
+		this.windowNanos = windowNanos;
+		this.openNanos = openNanos;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Whether an error means the cluster couldn't be reached, like the {@link RiakRetryFailedException} riak-client and
+	 * the protocol buffers transport wrap IO and connection errors in.
+	 */
+	static boolean isClusterFailure(Throwable error) {
+		return error instanceof RiakRetryFailedException || error instanceof IOException;
+	}
+
+	CircuitState getState() {
+		CircuitState s = state.get();
+		if (s == CircuitState.OPEN && System.nanoTime() - openedAt >= openNanos) {
+			transition(CircuitState.OPEN, CircuitState.HALF_OPEN);
+			return state.get();
+		}
+		return s;
+	}
+
+	/**
+	 * Whether a new operation may be submitted. While half-open only the probes are allowed.
+	 */
+	boolean allow() {
+		switch (getState()) {
+			case CLOSED:
+				return true;
+			case HALF_OPEN:
+				return probes.getAndDecrement() > 0;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Whether an operation that was submitted before the circuit opened should still be executed.
+	 */
+	boolean isOpen() {
+		return getState() == CircuitState.OPEN;
+	}
+
+	/**
+	 * Count a call to the cluster. Its failure, if any, has already been counted by {@link #failed()}.
+	 */
+	void called() {
+		rollWindow();
+		calls.incrementAndGet();
+		if (state.get() == CircuitState.HALF_OPEN && probesPassed.incrementAndGet() >= halfOpenProbes) {
+			transition(CircuitState.HALF_OPEN, CircuitState.CLOSED);
+		}
+	}
+
+	/**
+	 * Count a call to the cluster that ended in an error. Unlike {@link #called()}, it never counts as a passed probe.
+	 */
+	void called(Throwable error) {
+		if (isClusterFailure(error)) {
+			failed();
+		}
+		rollWindow();
+		calls.incrementAndGet();
+	}
+
+	void failed() {
+		rollWindow();
+		long f = failures.incrementAndGet();
+		switch (state.get()) {
+			case HALF_OPEN:
+				open(CircuitState.HALF_OPEN);
+				break;
+			case CLOSED:
+				// the failure is counted before the call that failed
+				long c = Math.max(calls.get() + 1, f);
+				if (c >= minCalls && f >= failureRate * c) {
+					open(CircuitState.CLOSED);
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Count an operation that timed out. Only a probe that times out is a failure; otherwise the call is still counted
+	 * once it finishes.
+	 */
+	void timedOut() {
+		if (state.get() == CircuitState.HALF_OPEN) {
+			failed();
+		}
+	}
+
+	private void open(CircuitState from) {
+		probes.set(halfOpenProbes);
+		probesPassed.set(0);
+		openedAt = System.nanoTime();
+		transition(from, CircuitState.OPEN);
+	}
+
+	private void transition(CircuitState from, CircuitState to) {
+		if (!state.compareAndSet(from, to)) {
+			return;
+		}
+		if (to == CircuitState.CLOSED) {
+			resetWindow(System.nanoTime());
+		}
+		if (null != metrics) {
+			metrics.circuitChanged(to);
+		}
+	}
+
+	private void rollWindow() {
+		long now = System.nanoTime();
+		if (now - windowStart > windowNanos) {
+			resetWindow(now);
+		}
+	}
+
+	private void resetWindow(long now) {
+		windowStart = now;
+		calls.set(0);
+		failures.set(0);
+	}
+
+}
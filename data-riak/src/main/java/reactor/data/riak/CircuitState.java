@@ -0,0 +1,28 @@
+package reactor.data.riak;
+
+/**
+ * The states of the circuit breaker that {@link Riak} puts in front of the cluster.
+ *
+ * @author Jon Brisbin
+ * @see RiakSpec#circuitBreaker(double, int, long, long, java.util.concurrent.TimeUnit)
+ */
+public enum CircuitState {
+
+	/**
+	 * Operations are executed normally.
+	 */
+	CLOSED,
+
+	/**
+	 * Too many operations have failed, and operations fail fast with a {@link RiakCircuitOpenException} without going to
+	 * the cluster.
+	 */
+	OPEN,
+
+	/**
+	 * The circuit has been open long enough that a few operations are let through to probe whether the cluster has
+	 * recovered.
+	 */
+	HALF_OPEN
+
+}
@@ -0,0 +1,14 @@
+package reactor.data.riak;
+
+import reactor.fn.Event;
+
+/**
+ * @author Jon Brisbin
+ */
+public class ErrorEvent extends Event<Throwable> {
+
+	public ErrorEvent(Throwable data) {
+		super(data);
+	}
+
+}
@@ -0,0 +1,128 @@
+package reactor.data.riak;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of operations {@link Riak} has in flight, overall and optionally per bucket. A permit is taken when
+ * an operation is submitted and given back once it has finished, just before its {@link reactor.core.Promise} is
+ * completed.
+ *
+ * @author Jon Brisbin
+ */
+class InflightLimiter {
+
+	private final Semaphore              global;
+	private final int                    maxInFlight;
+	private final Map<String, Semaphore> buckets;
+	private final OverflowPolicy         policy;
+	private final long                   waitNanos;
+
+	InflightLimiter(int maxInFlight, Map<String, Integer> bucketLimits, OverflowPolicy policy, long waitNanos) {
+		this.maxInFlight = maxInFlight;
+		this.global = (maxInFlight > 0 ? new Semaphore(maxInFlight) : null);
+		Map<String, Semaphore> buckets = new HashMap<>();
+		for (Map.Entry<String, Integer> limit : bucketLimits.entrySet()) {
+			buckets.put(limit.getKey(), new Semaphore(limit.getValue()));
+		}
+		this.buckets = Collections.unmodifiableMap(buckets);
+		this.policy = policy;
+		this.waitNanos = waitNanos;
+	}
+
+	/**
+	 * Get the number of operations currently holding a permit against the overall limit.
+	 */
+	int getInFlight() {
+		return (null != global ? maxInFlight - global.availablePermits() : 0);
+	}
+
+	/**
+	 * Take a permit for an operation on the given bucket. Foreground work that finds no permit available is handled
+	 * according to the {@link OverflowPolicy}. Background work never waits, whatever the policy: it only takes a permit
+	 * that is available right away, so it can be admitted from threads other work depends on, like the IO shards and
+	 * the timer. Under {@link OverflowPolicy#SHED} it also gives way to foreground work that is waiting.
+	 *
+	 * @param bucket     the bucket, or {@literal null} if the operation isn't bound to one
+	 * @param background whether this is background work no caller is blocked on
+	 * @throws RiakOverloadedException if no permit could be taken
+	 */
+	void acquire(String bucket, boolean background) throws RiakOverloadedException {
+		Semaphore bucketPermits = (null != bucket ? buckets.get(bucket) : null);
+		if (null != bucketPermits && !tryAcquire(bucketPermits, background)) {
+			throw new RiakOverloadedException(bucket, "Too many operations in flight on bucket " + bucket);
+		}
+		if (null != global && !tryAcquire(global, background)) {
+			if (null != bucketPermits) {
+				bucketPermits.release();
+			}
+			throw new RiakOverloadedException(null, "Too many operations in flight");
+		}
+	}
+
+	/**
+	 * Take up to {@code max} permits for background work on the given bucket. Like any background work it never waits,
+	 * so only the permits that are available right away are taken.
+	 *
+	 * @return the number of permits taken, at least 1
+	 * @throws RiakOverloadedException if not even one permit could be taken
+	 */
+	int acquireUpTo(String bucket, int max) throws RiakOverloadedException {
+		acquire(bucket, true);
+		int acquired = 1;
+		Semaphore bucketPermits = (null != bucket ? buckets.get(bucket) : null);
+		while (acquired < max) {
+			if (null != bucketPermits && !bucketPermits.tryAcquire()) {
+				break;
+			}
+			if (null != global && !global.tryAcquire()) {
+				if (null != bucketPermits) {
+					bucketPermits.release();
+				}
+				break;
+			}
+			acquired++;
+		}
+		return acquired;
+	}
+
+	/**
+	 * Give back a permit taken by {@link #acquire(String, boolean)}.
+	 */
+	void release(String bucket) {
+		Semaphore bucketPermits = (null != bucket ? buckets.get(bucket) : null);
+		if (null != bucketPermits) {
+			bucketPermits.release();
+		}
+		if (null != global) {
+			global.release();
+		}
+	}
+
+	private boolean tryAcquire(Semaphore permits, boolean background) throws RiakOverloadedException {
+		if (background) {
+			// under SHED, waiting foreground work goes first
+			return (policy != OverflowPolicy.SHED || !permits.hasQueuedThreads()) && permits.tryAcquire();
+		}
+		switch (policy) {
+			case WAIT:
+			case SHED:
+				return tryAcquire(permits, waitNanos);
+			default:
+				return permits.tryAcquire();
+		}
+	}
+
+	private static boolean tryAcquire(Semaphore permits, long waitNanos) throws RiakOverloadedException {
+		try {
+			return permits.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RiakOverloadedException(null, "Interrupted while waiting for an operation to finish");
+		}
+	}
+
+}
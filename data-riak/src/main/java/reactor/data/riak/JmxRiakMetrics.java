@@ -0,0 +1,220 @@
+package reactor.data.riak;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RiakMetrics} that keeps counts and HdrHistogram latency histograms in memory and exposes them over JMX.
+ * <p>
+ * <pre>
+ * Riak riak = new RiakSpec()
+ *     .metrics(new JmxRiakMetrics().register("default"))
+ *     .build();
+ * </pre>
+ *
+ * @author Jon Brisbin
+ */
+public class JmxRiakMetrics implements RiakMetrics, JmxRiakMetricsMXBean {
+
+	private static final int    SIGNIFICANT_DIGITS = 3;
+	private static final double NANOS_PER_MILLI    = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final Map<OperationType, Histogram> executionTimes = new EnumMap<>(OperationType.class);
+	private final Map<OperationType, Histogram> queueWaits     = new EnumMap<>(OperationType.class);
+	private final ConcurrentMap<String, AtomicLong> errors         = new ConcurrentHashMap<>();
+	private final AtomicLong                        merges         = new AtomicLong();
+	private final AtomicLong                        mergedSiblings = new AtomicLong();
+	private final AtomicLong                        retries        = new AtomicLong();
+	private final AtomicLong                        retriesRefused = new AtomicLong();
+	private final AtomicLong                        openings       = new AtomicLong();
+	private volatile ObjectName   objectName;
+	private volatile CircuitState circuitState = CircuitState.CLOSED;
+
+	public JmxRiakMetrics() {
+		for (OperationType type : OperationType.values()) {
+			executionTimes.put(type, new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+			queueWaits.put(type, new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+		}
+	}
+
+	/**
+	 * Register with the platform {@link MBeanServer} as {@code reactor.data.riak:type=RiakMetrics,name=<name>}.
+	 *
+	 * @param name the name to register under
+	 * @return {@literal this}
+	 */
+	public JmxRiakMetrics register(String name) {
+		try {
+			ObjectName on = new ObjectName("reactor.data.riak:type=RiakMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+			this.objectName = on;
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register " + name + " with the platform MBeanServer", e);
+		}
+		return this;
+	}
+
+	/**
+	 * Remove the registration made by {@link #register(String)}, if any.
+	 */
+	public void unregister() {
+		ObjectName on = objectName;
+		if (null == on) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(on);
+			objectName = null;
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not unregister " + on, e);
+		}
+	}
+
+	/**
+	 * Get the histogram of execution times in nanoseconds for the given type of operation.
+	 *
+	 * @param type the type of operation
+	 * @return the live histogram
+	 */
+	public Histogram getExecutionTimes(OperationType type) {
+		return executionTimes.get(type);
+	}
+
+	/**
+	 * Get the histogram of queue wait times in nanoseconds for the given type of operation.
+	 *
+	 * @param type the type of operation
+	 * @return the live histogram
+	 */
+	public Histogram getQueueWaits(OperationType type) {
+		return queueWaits.get(type);
+	}
+
+	@Override
+	public void executed(OperationType type, long queueNanos, long executionNanos) {
+		queueWaits.get(type).recordValue(Math.max(0, queueNanos));
+		executionTimes.get(type).recordValue(Math.max(0, executionNanos));
+	}
+
+	@Override
+	public void failed(OperationType type, Throwable error) {
+		String name = error.getClass().getName();
+		AtomicLong count = errors.get(name);
+		if (null == count) {
+			AtomicLong newCount = new AtomicLong();
+			if (null == (count = errors.putIfAbsent(name, newCount))) {
+				count = newCount;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	@Override
+	public void merged(String bucket, int siblings) {
+		merges.incrementAndGet();
+		mergedSiblings.addAndGet(siblings);
+	}
+
+	@Override
+	public void retried(OperationType type, int attempt, long delayNanos) {
+		retries.incrementAndGet();
+	}
+
+	@Override
+	public void retryBudgetExhausted(OperationType type) {
+		retriesRefused.incrementAndGet();
+	}
+
+	@Override
+	public void circuitChanged(CircuitState state) {
+		circuitState = state;
+		if (state == CircuitState.OPEN) {
+			openings.incrementAndGet();
+		}
+	}
+
+	@Override
+	public Map<String, Long> getOperationCounts() {
+		Map<String, Long> counts = new TreeMap<>();
+		for (Map.Entry<OperationType, Histogram> e : executionTimes.entrySet()) {
+			counts.put(e.getKey().name(), e.getValue().getTotalCount());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getErrorCounts() {
+		Map<String, Long> counts = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> e : errors.entrySet()) {
+			counts.put(e.getKey(), e.getValue().get());
+		}
+		return counts;
+	}
+
+	@Override
+	public long getMerges() {
+		return merges.get();
+	}
+
+	@Override
+	public long getMergedSiblings() {
+		return mergedSiblings.get();
+	}
+
+	@Override
+	public long getRetries() {
+		return retries.get();
+	}
+
+	@Override
+	public long getRetriesRefused() {
+		return retriesRefused.get();
+	}
+
+	@Override
+	public String getCircuitState() {
+		return circuitState.name();
+	}
+
+	@Override
+	public long getCircuitOpenings() {
+		return openings.get();
+	}
+
+	@Override
+	public double getExecutionTimePercentile(String operation, double percentile) {
+		return executionTimes.get(OperationType.valueOf(operation)).getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getQueueWaitPercentile(String operation, double percentile) {
+		return queueWaits.get(OperationType.valueOf(operation)).getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public void reset() {
+		for (OperationType type : OperationType.values()) {
+			executionTimes.get(type).reset();
+			queueWaits.get(type).reset();
+		}
+		errors.clear();
+		merges.set(0);
+		mergedSiblings.set(0);
+		retries.set(0);
+		retriesRefused.set(0);
+		openings.set(0);
+	}
+
+}
@@ -0,0 +1,91 @@
+package reactor.data.riak;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link JmxRiakMetrics}. Times are reported in milliseconds.
+ *
+ * @author Jon Brisbin
+ */
+public interface JmxRiakMetricsMXBean {
+
+	/**
+	 * Get the number of operations executed, by {@link OperationType}.
+	 *
+	 * @return operation counts keyed by operation type
+	 */
+	Map<String, Long> getOperationCounts();
+
+	/**
+	 * Get the number of failed operations, by the class of the error.
+	 *
+	 * @return error counts keyed by exception class name
+	 */
+	Map<String, Long> getErrorCounts();
+
+	/**
+	 * Get the number of times siblings were passed through a conflict resolver.
+	 *
+	 * @return the number of merges
+	 */
+	long getMerges();
+
+	/**
+	 * Get the total number of siblings that were resolved.
+	 *
+	 * @return the number of merged siblings
+	 */
+	long getMergedSiblings();
+
+	/**
+	 * Get the number of times failed operations were tried again.
+	 *
+	 * @return the number of retries
+	 */
+	long getRetries();
+
+	/**
+	 * Get the number of retries that weren't made because the retry budget had run out.
+	 *
+	 * @return the number of retries refused by the budget
+	 */
+	long getRetriesRefused();
+
+	/**
+	 * Get the current state of the circuit breaker.
+	 *
+	 * @return the name of a {@link CircuitState}
+	 */
+	String getCircuitState();
+
+	/**
+	 * Get the number of times the circuit breaker opened.
+	 *
+	 * @return the number of times the circuit opened
+	 */
+	long getCircuitOpenings();
+
+	/**
+	 * Get a percentile of the time operations of the given type took to execute.
+	 *
+	 * @param operation  the name of an {@link OperationType}
+	 * @param percentile the percentile, e.g. {@literal 99.9}
+	 * @return the execution time in milliseconds
+	 */
+	double getExecutionTimePercentile(String operation, double percentile);
+
+	/**
+	 * Get a percentile of the time operations of the given type waited on their IO shard before executing.
+	 *
+	 * @param operation  the name of an {@link OperationType}
+	 * @param percentile the percentile, e.g. {@literal 99.9}
+	 * @return the queue wait time in milliseconds
+	 */
+	double getQueueWaitPercentile(String operation, double percentile);
+
+	/**
+	 * Reset every count and histogram.
+	 */
+	void reset();
+
+}
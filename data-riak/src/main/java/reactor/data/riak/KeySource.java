@@ -0,0 +1,15 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.RiakException;
+
+/**
+ * Lists the keys a {@link RiakStream} is fed from, like a bucket's key listing or the result of an index query. Called
+ * once, on one of {@link Riak}'s streaming threads.
+ *
+ * @author Jon Brisbin
+ */
+interface KeySource {
+
+	Iterable<String> keys() throws RiakException;
+
+}
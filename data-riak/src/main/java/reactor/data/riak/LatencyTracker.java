@@ -0,0 +1,55 @@
+package reactor.data.riak;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a window of recent fetch latencies and derives the delay after which {@link Riak} hedges a fetch that hasn't
+ * finished yet. Recording is a single array store; the percentile is recomputed off the IO threads by {@link
+ * Riak#timer()}.
+ *
+ * @author Jon Brisbin
+ */
+class LatencyTracker {
+
+	private static final int WINDOW = 1024;
+
+	private final long[]     samples = new long[WINDOW];
+	private final AtomicLong count   = new AtomicLong();
+	private final double     percentile;
+	private final long       minDelayNanos;
+	private volatile long hedgeDelayNanos;
+
+	LatencyTracker(double percentile, long minDelayNanos) {
+		this.percentile = percentile;
+		this.minDelayNanos = minDelayNanos;
+		this.hedgeDelayNanos = minDelayNanos;
+	}
+
+	void record(long nanos) {
+		samples[(int) (count.getAndIncrement() % WINDOW)] = nanos;
+	}
+
+	/**
+	 * Get how long a fetch may run before it is hedged.
+	 */
+	long getHedgeDelayNanos() {
+		return hedgeDelayNanos;
+	}
+
+	/**
+	 * Recompute the hedge delay from the samples in the window. Samples being overwritten while this runs only skew the
+	 * result slightly.
+	 */
+	void recompute() {
+		int n = (int) Math.min(count.get(), WINDOW);
+		if (n == 0) {
+			return;
+		}
+		long[] sorted = Arrays.copyOf(samples, n);
+		Arrays.sort(sorted);
+		int idx = (int) Math.ceil(percentile / 100.0 * n) - 1;
+		hedgeDelayNanos = Math.max(minDelayNanos, sorted[Math.max(0, Math.min(idx, n - 1))]);
+	}
+
+}
@@ -0,0 +1,246 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.bucket.Bucket;
+import com.basho.riak.client.convert.Converter;
+import reactor.Fn;
+import reactor.fn.Consumer;
+import reactor.fn.Function;
+import reactor.fn.Tuple;
+import reactor.fn.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches a batch of keys from a single bucket, with up to {@code maxConcurrency} chunks of keys in flight. Each chunk
+ * holds keys routed to the same IO shard. Its keys are fetched from the cluster one after another on a stream thread,
+ * so chunks run in parallel however many shards there are, and then converted, resolved and emitted by a single task on
+ * their shard, so events and cache updates for a key still only happen on its shard.
+ *
+ * @author Jon Brisbin
+ */
+class MultiFetch<T> {
+
+	private final Queue<Chunk>               pending = new ConcurrentLinkedQueue<>();
+	private final Riak                       riak;
+	private final Bucket                     bucket;
+	private final Class<T>                   asType;
+	private final Function<Collection<T>, T> conflictResolver;
+	private final Converter<T>               converter;
+	private final int                        maxConcurrency;
+	private final String[]                   keys;
+	private final Object[]                   values;
+	private final boolean[]                  fetched;
+	private final Throwable[]                errors;
+	private final AtomicInteger              remaining;
+
+	private Consumer<Tuple2<String, T>> valueConsumer;
+	private Consumer<Map<String, T>>    completeConsumer;
+	private Consumer<Throwable>         errorConsumer;
+
+	MultiFetch(Riak riak,
+						 Bucket bucket,
+						 Collection<String> keys,
+						 Class<T> asType,
+						 Function<Collection<T>, T> conflictResolver,
+						 Converter<T> converter,
+						 int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be at least 1");
+		}
+		this.riak = riak;
+		this.bucket = bucket;
+		this.asType = asType;
+		this.conflictResolver = conflictResolver;
+		this.converter = converter;
+		this.maxConcurrency = maxConcurrency;
+		this.keys = new LinkedHashSet<>(keys).toArray(new String[0]);
+		this.values = new Object[this.keys.length];
+		this.fetched = new boolean[this.keys.length];
+		this.errors = new Throwable[this.keys.length];
+
+		List<List<Integer>> shards = new ArrayList<>(riak.getIoShards());
+		for (int i = 0; i < riak.getIoShards(); i++) {
+			shards.add(null);
+		}
+		for (int i = 0; i < this.keys.length; i++) {
+			int shard = riak.shard(bucket.getName(), this.keys[i]);
+			List<Integer> idxs = shards.get(shard);
+			if (null == idxs) {
+				shards.set(shard, (idxs = new ArrayList<>()));
+			}
+			idxs.add(i);
+		}
+		// cut the keys into about maxConcurrency chunks, so every permit taken has work to do
+		int chunkSize = Math.max(1, (this.keys.length + maxConcurrency - 1) / maxConcurrency);
+		for (int shard = 0; shard < shards.size(); shard++) {
+			List<Integer> idxs = shards.get(shard);
+			if (null == idxs) {
+				continue;
+			}
+			for (int from = 0; from < idxs.size(); from += chunkSize) {
+				pending.add(new Chunk(shard, idxs.subList(from, Math.min(from + chunkSize, idxs.size()))));
+			}
+		}
+		this.remaining = new AtomicInteger(pending.size());
+	}
+
+	MultiFetch<T> onValue(Consumer<Tuple2<String, T>> valueConsumer) {
+		this.valueConsumer = valueConsumer;
+		return this;
+	}
+
+	/**
+	 * Set the consumer of the fetched values, called once every key has been fetched.
+	 */
+	MultiFetch<T> onComplete(Consumer<Map<String, T>> completeConsumer) {
+		this.completeConsumer = completeConsumer;
+		return this;
+	}
+
+	/**
+	 * Set the consumer of the error the batch fails with: a {@link RiakOverloadedException} if it can't be admitted, or
+	 * a {@link RiakFetchAllException} instead of completing if any key couldn't be fetched.
+	 */
+	MultiFetch<T> onError(Consumer<Throwable> errorConsumer) {
+		this.errorConsumer = errorConsumer;
+		return this;
+	}
+
+	void start() {
+		if (pending.isEmpty()) {
+			complete();
+			return;
+		}
+		// each running chunk holds an in-flight permit and hands it on to the next chunk when it's done
+		int permits;
+		try {
+			permits = riak.admitUpTo(bucket.getName(), Math.min(maxConcurrency, pending.size()));
+		} catch (RiakOverloadedException e) {
+			if (null != errorConsumer) {
+				errorConsumer.accept(e);
+			}
+			return;
+		}
+		for (int i = 0; i < permits; i++) {
+			launchNext();
+		}
+	}
+
+	private boolean launchNext() {
+		Chunk c = pending.poll();
+		if (null == c) {
+			return false;
+		}
+		c.scheduledAt = System.nanoTime();
+		riak.streams().execute(c);
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void complete() {
+		Map<String, T> results = new LinkedHashMap<>(keys.length);
+		Map<String, Throwable> failures = new LinkedHashMap<>();
+		for (int i = 0; i < keys.length; i++) {
+			if (fetched[i]) {
+				results.put(keys[i], (T) values[i]);
+			} else if (null != errors[i]) {
+				failures.put(keys[i], errors[i]);
+			}
+		}
+		if (!failures.isEmpty()) {
+			if (null != errorConsumer) {
+				errorConsumer.accept(new RiakFetchAllException(results, failures));
+			}
+		} else if (null != completeConsumer) {
+			completeConsumer.accept(results);
+		}
+	}
+
+	private class Chunk implements Runnable, Consumer<Void> {
+		private final int           shard;
+		private final List<Integer> idxs;
+		private final Object[]      siblings;
+		private final long[]        startedAt;
+		private       long          scheduledAt;
+
+		private Chunk(int shard, List<Integer> idxs) {
+			this.shard = shard;
+			this.idxs = idxs;
+			this.siblings = new Object[idxs.size()];
+			this.startedAt = new long[idxs.size()];
+		}
+
+		/**
+		 * Fetch the siblings of every key on a stream thread, then finish on the keys' shard.
+		 */
+		@Override
+		public void run() {
+			for (int i = 0; i < siblings.length; i++) {
+				startedAt[i] = System.nanoTime();
+				try {
+					siblings[i] = riak.fetchSiblings(bucket, keys[idxs.get(i)]);
+				} catch (Throwable t) {
+					siblings[i] = t;
+				}
+			}
+			riak.schedule(shard, this);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void accept(Void v) {
+			for (int i = 0; i < siblings.length; i++) {
+				int idx = idxs.get(i);
+				String key = keys[idx];
+				T value;
+				try {
+					if (siblings[i] instanceof Throwable) {
+						throw (Throwable) siblings[i];
+					}
+					List<IRiakObject> objects = (List<IRiakObject>) siblings[i];
+					value = riak.resolveFetched(bucket, key, asType, conflictResolver, converter, objects);
+				} catch (Throwable t) {
+					riak.recordFailure(OperationType.FETCH, t);
+					riak.recordExecution(OperationType.FETCH, scheduledAt, startedAt[i]);
+					riak.publishError(bucket.getName(), key, t);
+					errors[idx] = t;
+					continue;
+				}
+				riak.recordExecution(OperationType.FETCH, scheduledAt, startedAt[i]);
+				values[idx] = value;
+				fetched[idx] = true;
+				emit(key, value);
+			}
+			if (!launchNext()) {
+				riak.release(bucket.getName());
+			}
+			if (remaining.decrementAndGet() == 0) {
+				complete();
+			}
+		}
+
+		/**
+		 * Hand a value to the value consumer. The consumer failing doesn't make the fetch a failure.
+		 */
+		private void emit(String key, T value) {
+			if (null == valueConsumer) {
+				return;
+			}
+			try {
+				valueConsumer.accept(Tuple.of(key, value));
+			} catch (RuntimeException e) {
+				riak.notify(Fn.T(e.getClass()), Fn.event(e));
+			}
+		}
+	}
+
+}
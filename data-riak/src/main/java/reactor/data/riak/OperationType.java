@@ -0,0 +1,40 @@
+package reactor.data.riak;
+
+/**
+ * The kinds of operation {@link Riak} reports to its {@link RiakMetrics}.
+ *
+ * @author Jon Brisbin
+ */
+public enum OperationType {
+
+	/**
+	 * A fetch of a single key, including each key of a multi-key fetch and each hedged attempt.
+	 */
+	FETCH,
+
+	/**
+	 * A store of a single key, including each coalesced write-behind store.
+	 */
+	STORE,
+
+	/**
+	 * A delete of a single key.
+	 */
+	DELETE,
+
+	/**
+	 * A fetch of a bucket's properties.
+	 */
+	FETCH_BUCKET,
+
+	/**
+	 * A raw {@link com.basho.riak.client.operations.RiakOperation} passed to {@link Riak#send}.
+	 */
+	SEND,
+
+	/**
+	 * A MapReduce job or search query run through {@link Riak#mapReduce}.
+	 */
+	MAP_REDUCE
+
+}
@@ -0,0 +1,30 @@
+package reactor.data.riak;
+
+/**
+ * What {@link Riak} does with an operation submitted while the maximum number of operations are already in flight.
+ *
+ * @author Jon Brisbin
+ * @see RiakSpec#maxInFlight(int)
+ * @see RiakSpec#overflow(OverflowPolicy, long, java.util.concurrent.TimeUnit)
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Fail the operation right away with a {@link RiakOverloadedException}.
+	 */
+	REJECT,
+
+	/**
+	 * Block the submitting thread until an operation finishes, failing with a {@link RiakOverloadedException} if none
+	 * finishes in time. Background work such as hedged fetches and sibling write-backs never waits; it fails right away,
+	 * as under {@link #REJECT}.
+	 */
+	WAIT,
+
+	/**
+	 * Let single-key operations wait like {@link #WAIT}, but fail background work such as batched sends and multi-key
+	 * fetches right away, and also whenever a single-key operation is waiting.
+	 */
+	SHED
+
+}
@@ -0,0 +1,60 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.builders.RiakObjectBuilder;
+import com.basho.riak.client.cap.VClock;
+import com.basho.riak.client.convert.ConversionException;
+import com.basho.riak.client.convert.Converter;
+
+/**
+ * Stores a {@link String} or {@code byte[]} as it is, as {@code text/plain} or {@code application/octet-stream}, and
+ * reads back any object's value as one, whatever its content type. Neither a codec nor JSON is applied, so a value
+ * stored as either type is fetched back unchanged.
+ *
+ * @param <T> {@link String} or {@code byte[]}
+ * @author Jon Brisbin
+ */
+class RawConverter<T> implements Converter<T> {
+
+	static final String TEXT   = "text/plain";
+	static final String BINARY = "application/octet-stream";
+
+	private final Class<?> type;
+	private final String   bucket;
+	private final String   key;
+
+	RawConverter(Class<?> type, String bucket, String key) {
+		if (!isRaw(type)) {
+			throw new IllegalArgumentException(type + " is not a String or byte[]");
+		}
+		this.type = type;
+		this.bucket = bucket;
+		this.key = key;
+	}
+
+	/**
+	 * Whether values of the given type are stored and fetched as they are rather than converted.
+	 */
+	static boolean isRaw(Class<?> type) {
+		return String.class == type || byte[].class == type;
+	}
+
+	@Override
+	public IRiakObject fromDomain(T domainObject, VClock vclock) throws ConversionException {
+		RiakObjectBuilder builder = RiakObjectBuilder.newBuilder(bucket, key).withVClock(vclock);
+		if (String.class == type) {
+			return builder.withContentType(TEXT).withValue((String) domainObject).build();
+		}
+		return builder.withContentType(BINARY).withValue((byte[]) domainObject).build();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T toDomain(IRiakObject riakObject) throws ConversionException {
+		if (null == riakObject) {
+			return null;
+		}
+		return (T) (String.class == type ? riakObject.getValueAsString() : riakObject.getValue());
+	}
+
+}
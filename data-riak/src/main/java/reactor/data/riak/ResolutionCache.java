@@ -0,0 +1,74 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.cap.VClock;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers how the siblings of a key were last resolved, so the same set of siblings, identified by the vector clock
+ * they were fetched with, is only passed to the conflict resolver once. Only the latest resolution of each key is kept,
+ * since a newer vector clock supersedes the older ones. Once the cache is full an arbitrary key is evicted to make room.
+ * <p>
+ * Resolved values are shared between callers, so they should be treated as immutable.
+ *
+ * @author Jon Brisbin
+ */
+class ResolutionCache {
+
+	private final ConcurrentMap<BucketKey, Resolution> resolutions = new ConcurrentHashMap<>();
+	private final int maxSize;
+
+	ResolutionCache(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Look up the resolution of the siblings fetched with the given vector clock.
+	 *
+	 * @return the resolved value or {@literal null} if those siblings haven't been resolved to a {@code type} yet
+	 */
+	Object get(BucketKey bk, VClock vclock, Class<?> type) {
+		Resolution r = resolutions.get(bk);
+		if (null == r || r.type != type || !Arrays.equals(r.vclock, vclock.getBytes())) {
+			return null;
+		}
+		return r.value;
+	}
+
+	void put(BucketKey bk, VClock vclock, Class<?> type, Object value) {
+		if (null == value) {
+			return;
+		}
+		if (resolutions.size() >= maxSize && !resolutions.containsKey(bk)) {
+			Iterator<BucketKey> it = resolutions.keySet().iterator();
+			if (it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+		resolutions.put(bk, new Resolution(vclock.getBytes(), type, value));
+	}
+
+	int size() {
+		return resolutions.size();
+	}
+
+	private static class Resolution {
+		private final byte[]   vclock;
+		private final Class<?> type;
+		private final Object   value;
+
+		private Resolution(byte[] vclock, Class<?> type, Object value) {
+			this.vclock = vclock;
+			this.type = type;
+			this.value = value;
+		}
+	}
+
+}
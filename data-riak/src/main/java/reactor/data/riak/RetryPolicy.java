@@ -0,0 +1,100 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.RiakRetryFailedException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether and when {@link Riak} tries a failed operation again. Only failures to talk to the cluster are
+ * retried, after an exponential backoff with full jitter: attempt {@code n} waits a random time of up to {@code
+ * baseNanos * 2^(n - 1)}, capped at {@code maxNanos}.
+ * <p>
+ * Retries are paid for from a budget so they can't multiply the load on a struggling cluster: every call to the
+ * cluster deposits a fraction of a retry, and a retry is only made if a whole one is available. Writes are only retried
+ * if asked for, since a retried write can land after writes to the same key that were submitted after it.
+ *
+ * @author Jon Brisbin
+ */
+class RetryPolicy {
+
+	private static final long TOKEN = 1000;
+
+	private final AtomicLong  balance = new AtomicLong();
+	private final int         maxAttempts;
+	private final long        baseNanos;
+	private final long        maxNanos;
+	private final boolean     retryWrites;
+	private final long        deposit;
+	private final long        maxBalance;
+	private final RiakMetrics metrics;
+
+	RetryPolicy(int maxAttempts,
+							long baseNanos,
+							long maxNanos,
+							boolean retryWrites,
+							double budgetRatio,
+							int maxBurst,
+							RiakMetrics metrics) {
+		this.maxAttempts = maxAttempts;
+		this.baseNanos = baseNanos;
+		this.maxNanos = maxNanos;
+		this.retryWrites = retryWrites;
+		this.deposit = Math.round(budgetRatio * TOKEN);
+		this.maxBalance = maxBurst * TOKEN;
+		this.metrics = metrics;
+		this.balance.set(maxBalance);
+	}
+
+	/**
+	 * Pay a call to the cluster into the budget.
+	 */
+	void called() {
+		long b;
+		while ((b = balance.get()) < maxBalance) {
+			if (balance.compareAndSet(b, Math.min(maxBalance, b + deposit))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get how long to wait before making attempt {@code attempt + 1} of an operation that failed with {@code error}.
+	 *
+	 * @return the delay in nanoseconds, or {@literal -1} if the operation shouldn't be retried
+	 */
+	long retryDelay(OperationType type, int attempt, Throwable error) {
+		if (attempt >= maxAttempts || !(error instanceof RiakRetryFailedException)) {
+			return -1;
+		}
+		if (!retryWrites && (type == OperationType.STORE || type == OperationType.DELETE)) {
+			return -1;
+		}
+		if (!withdraw()) {
+			if (null != metrics) {
+				metrics.retryBudgetExhausted(type);
+			}
+			return -1;
+		}
+		long ceiling = (attempt > 62 ? maxNanos : Math.min(maxNanos, baseNanos << (attempt - 1)));
+		if (ceiling <= 0) {
+			ceiling = maxNanos;
+		}
+		long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+		if (null != metrics) {
+			metrics.retried(type, attempt, delay);
+		}
+		return delay;
+	}
+
+	private boolean withdraw() {
+		long b;
+		while ((b = balance.get()) >= TOKEN) {
+			if (balance.compareAndSet(b, b - TOKEN)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
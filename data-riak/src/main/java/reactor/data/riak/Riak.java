@@ -4,31 +4,52 @@ import com.basho.riak.client.*;
 import com.basho.riak.client.bucket.Bucket;
 import com.basho.riak.client.cap.Mutation;
 import com.basho.riak.client.cap.Retrier;
+import com.basho.riak.client.cap.UnresolvedConflictException;
 import com.basho.riak.client.convert.Converter;
+import com.basho.riak.client.convert.JSONConverter;
+import com.basho.riak.client.convert.PassThroughConverter;
 import com.basho.riak.client.operations.DeleteObject;
-import com.basho.riak.client.operations.FetchObject;
 import com.basho.riak.client.operations.RiakOperation;
 import com.basho.riak.client.operations.StoreObject;
+import com.basho.riak.client.query.MapReduce;
+import com.basho.riak.client.query.indexes.FetchIndex;
+import com.basho.riak.client.query.indexes.RiakIndex;
+import com.lmax.disruptor.BlockingWaitStrategy;
 import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.ProducerType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.Fn;
-import reactor.core.CachingRegistry;
+import reactor.core.Composable;
 import reactor.core.Promise;
 import reactor.core.R;
 import reactor.core.Reactor;
-import reactor.data.riak.selector.BucketSelector;
+import reactor.data.riak.codec.CodecRegistry;
+import reactor.data.riak.pb.PbTransport;
+import reactor.fn.Consumer;
+import reactor.fn.Event;
 import reactor.fn.Function;
-import reactor.fn.Registration;
 import reactor.fn.Registry;
 import reactor.fn.Tuple;
+import reactor.fn.Tuple2;
 import reactor.fn.dispatch.Dispatcher;
 import reactor.fn.dispatch.RingBufferDispatcher;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static reactor.core.Context.rootDispatcher;
 
@@ -36,15 +57,57 @@ import static reactor.core.Context.rootDispatcher;
  * Instances of this class manage the execution of {@link RiakOperation RiakOperations} so that the user doesn't
  * directly call {@link com.basho.riak.client.operations.RiakOperation#execute()}. All operations are asynchronous and
  * the Reactor "worker" {@link Dispatcher} is used to ensure that operational load for the IO is
+ * <p>
+ * The IO work can be spread over several "shards", each with its own single-threaded {@link Dispatcher}. Operations
+ * that target a bucket and key are always routed to the same shard, so operations on a single key are executed in the
+ * order they were submitted while operations on unrelated keys run in parallel. Raw operations passed to {@link
+ * #send(RiakOperation)} carry no routing key and are distributed round-robin.
+ * <p>
+ * The number of operations in flight can be bounded with {@link RiakSpec#maxInFlight(int)}, overall and per bucket.
+ * Operations over the limit are rejected, made to wait or shed according to the {@link OverflowPolicy}, and fail with a
+ * {@link RiakOverloadedException} if they can't be admitted.
+ * <p>
+ * Values are converted with the {@link com.basho.riak.client.convert.Converter} passed to an operation, or else with
+ * the {@link reactor.data.riak.codec.Codec} bound to the bucket in the {@link RiakSpec#codecs(CodecRegistry) codec
+ * registry}, or else with riak-client's default JSON conversion. {@link String} and {@code byte[]} values are the
+ * exception: without a converter of their own they are stored and fetched as they are.
  *
  * @author Jon Brisbin
+ * @see RiakSpec
  */
 public class Riak extends Reactor {
 
-	private final Logger           log            = LoggerFactory.getLogger(Riak.class);
-	private final Registry<Bucket> bucketRegistry = new CachingRegistry<>(null, null);
-	private final IRiakClient riakClient;
-	private final Reactor     ioReactor;
+	public static final int DEFAULT_IO_BACKLOG            = 1024;
+	public static final int DEFAULT_FETCH_ALL_CONCURRENCY = 8;
+
+	private final Logger        log        = LoggerFactory.getLogger(Riak.class);
+	private final AtomicInteger nextShard  = new AtomicInteger();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	private final ConcurrentMap<String, String>              pathPrefixes    = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Promise<Bucket>>     inflightBuckets = new ConcurrentHashMap<>();
+	private final ConcurrentMap<BucketKey, InflightFetch<?>> inflightFetches = new ConcurrentHashMap<>();
+
+	private final IRiakClient         riakClient;
+	private final Reactor[]           ioReactors;
+	private final int                 ioBacklog;
+	private final RiakCache           cache;
+	private final WriteBehind         writeBehind;
+	private final InflightLimiter     limiter;
+	private final LatencyTracker      latencies;
+	private final RiakMetrics         metrics;
+	private final CodecRegistry       codecs;
+	private final BucketCache         buckets;
+	private final ResolutionCache     resolutions;
+	private final boolean             writeBackResolutions;
+	private final RetryPolicy         retryPolicy;
+	private final CircuitBreaker      breaker;
+	private final PbTransport         transport;
+	private final TransportOperations transportOps;
+	private final long                timeoutNanos;
+
+	private volatile ScheduledExecutorService timer;
+	private volatile ExecutorService          streams;
 
 	public Riak() throws RiakException {
 		this(RiakFactory.pbcClient());
@@ -58,38 +121,175 @@ public class Riak extends Reactor {
 		this(riakClient, customDispatcher, new RingBufferDispatcher(
 				"riak",
 				1,
-				1024,
+				DEFAULT_IO_BACKLOG,
 				ProducerType.MULTI,
 				new YieldingWaitStrategy()
 		));
 	}
 
 	public Riak(IRiakClient riakClient, Dispatcher customDispatcher, Dispatcher ioDispatcher) {
+		this(riakClient, customDispatcher, new Dispatcher[]{ioDispatcher}, new RiakSpec());
+	}
+
+	/**
+	 * Create a {@literal Riak} that spreads its IO over {@code ioShards} single-threaded dispatchers, each with a ring
+	 * buffer of {@code ioBacklog} slots.
+	 *
+	 * @param riakClient       the client to execute operations with
+	 * @param customDispatcher the {@link Dispatcher} used to notify consumers and complete {@link Promise Promises}
+	 * @param ioShards         the number of IO dispatchers (and therefore threads) to use
+	 * @param ioBacklog        the size of each IO dispatcher's ring buffer, must be a power of 2
+	 */
+	public Riak(IRiakClient riakClient, Dispatcher customDispatcher, int ioShards, int ioBacklog) {
+		this(riakClient,
+				 customDispatcher,
+				 createIoDispatchers(ioShards, ioBacklog),
+				 new RiakSpec().ioShards(ioShards).ioBacklog(ioBacklog));
+	}
+
+	Riak(IRiakClient riakClient, Dispatcher customDispatcher, Dispatcher[] ioDispatchers, RiakSpec spec) {
 		super(customDispatcher);
 		this.riakClient = riakClient;
-		this.ioReactor = new Reactor(ioDispatcher);
+		this.ioBacklog = spec.getIoBacklog();
+		this.cache = spec.getCache();
+		this.limiter = spec.getInflightLimiter();
+		this.timeoutNanos = spec.getTimeoutNanos();
+		this.metrics = spec.getMetrics();
+		this.codecs = spec.getCodecs();
+		this.buckets = spec.getBucketCache();
+		this.resolutions = spec.getResolutionCache();
+		this.writeBackResolutions = spec.isWriteBackResolutions();
+		this.retryPolicy = spec.getRetryPolicy();
+		this.breaker = spec.getCircuitBreaker();
+		this.transport = spec.getTransport(this);
+		this.transportOps = (null != transport ? new TransportOperations(this, transport) : null);
+		if (buckets.getIdleNanos() > 0) {
+			long sweep = buckets.getIdleNanos();
+			timer().scheduleWithFixedDelay(buckets::evictIdle, sweep, sweep, TimeUnit.NANOSECONDS);
+		}
+		// a hedge goes to the next shard, so there's nothing to gain from hedging with only one
+		this.latencies = (ioDispatchers.length > 1 ? spec.getLatencyTracker() : null);
+		if (null != latencies) {
+			timer().scheduleWithFixedDelay(latencies::recompute, 1, 1, TimeUnit.SECONDS);
+		}
+		this.writeBehind = (spec.getWriteBehindWindow() > 0
+												? new WriteBehind(this, spec.getWriteBehindWindow(), spec.getWriteBehindMaxPending())
+												: null);
+		this.ioReactors = new Reactor[ioDispatchers.length];
+		for (int i = 0; i < ioDispatchers.length; i++) {
+			this.ioReactors[i] = new Reactor(ioDispatchers[i]);
+		}
+	}
+
+	/**
+	 * Get the number of IO shards operations are spread across.
+	 *
+	 * @return the number of IO shards
+	 */
+	public int getIoShards() {
+		return ioReactors.length;
+	}
+
+	/**
+	 * Get the number of slots in each IO shard's queue.
+	 *
+	 * @return the per-shard queue depth
+	 */
+	public int getIoBacklog() {
+		return ioBacklog;
+	}
+
+	/**
+	 * Get the cache {@link #fetch} reads through, if one was configured.
+	 *
+	 * @return the cache or {@literal null} if values aren't cached
+	 */
+	public RiakCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Get the number of operations that have been submitted and not yet finished. Only operations counted against a
+	 * {@link RiakSpec#maxInFlight(int) limit} are tracked.
+	 *
+	 * @return the number of operations in flight, or {@literal 0} if no limit is configured
+	 */
+	public int getInFlight() {
+		return (null != limiter ? limiter.getInFlight() : 0);
+	}
+
+	/**
+	 * Get the metrics operations are reported to, if any were configured.
+	 *
+	 * @return the metrics or {@literal null} if operations aren't measured
+	 */
+	public RiakMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Get the non-blocking transport single-key operations are sent over, if one was configured.
+	 *
+	 * @return the transport or {@literal null} if every operation runs on the IO shards
+	 * @see RiakSpec#transport(java.net.InetSocketAddress, int, int)
+	 */
+	public PbTransport getTransport() {
+		return transport;
 	}
 
+	/**
+	 * Get the state of the circuit breaker.
+	 *
+	 * @return the state, always {@link CircuitState#CLOSED} if no circuit breaker was configured
+	 * @see RiakSpec#circuitBreaker(double, int, long, long, TimeUnit)
+	 */
+	public CircuitState getCircuitState() {
+		return (null != breaker ? breaker.getState() : CircuitState.CLOSED);
+	}
+
+	/**
+	 * Get the registry of per-bucket codecs values are converted with, if one was configured.
+	 *
+	 * @return the codecs or {@literal null} if values are converted with riak-client's default conversion
+	 */
+	public CodecRegistry getCodecs() {
+		return codecs;
+	}
+
+	/**
+	 * Get the number of tasks waiting in the IO shards' queues to be executed.
+	 *
+	 * @return the current queue depth over all IO shards
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * Execute a batch of operations. The batch counts as background work: each operation that can't be admitted is
+	 * skipped and a {@link RiakOverloadedException} is published on its type, like any other error in the batch.
+	 *
+	 * @param ops the operations to execute
+	 * @return a {@link Promise} that completes once every operation has been attempted
+	 */
 	public Promise<Void> send(RiakOperation<?>... ops) {
 		Promise<Void> p = new Promise<>(this);
+		if (ops.length == 0) {
+			p.set((Void) null);
+			return p;
+		}
 
-		AtomicLong counter = new AtomicLong(ops.length);
+		// a single consumer is shared by every operation in the batch, the operation is passed as the event data
+		SendBatch batch = new SendBatch(p, ops.length);
 		for (RiakOperation<?> op : ops) {
-			R.schedule(
-					(Void v) -> {
-						try {
-							op.execute();
-						} catch (RiakException e) {
-							notify(Fn.T(e.getClass()), Fn.event(e));
-						} finally {
-							if (counter.decrementAndGet() == 0) {
-								p.set((Void) null);
-							}
-						}
-					},
-					null,
-					ioReactor
-			);
+			try {
+				admit(OperationType.SEND, null, true);
+			} catch (RiakOverloadedException e) {
+				notify(Fn.T(e.getClass()), Fn.event(e));
+				batch.countDown();
+				continue;
+			}
+			schedule(nextShard(), batch, op);
 		}
 
 		return p;
@@ -97,177 +297,1656 @@ public class Riak extends Reactor {
 
 	public <T, O extends RiakOperation<T>> Promise<T> send(O op) {
 		Promise<T> p = new Promise<>(this);
+		try {
+			admit(OperationType.SEND, null, false);
+		} catch (RiakOverloadedException e) {
+			p.set(e);
+			return p;
+		}
 
-		R.schedule(
+		schedule(
+				nextShard(),
+				OperationType.SEND,
 				(Void v) -> {
+					T result = null;
+					Exception error = null;
 					try {
-						T result = op.execute();
-						if (log.isTraceEnabled()) {
-							log.trace("{} result: {}", op, result);
-						}
-						p.set(result);
-					} catch (RiakException e) {
-						p.set(e);
+						result = op.execute();
+					} catch (RiakException | RuntimeException e) {
+						recordFailure(OperationType.SEND, e);
+						error = e;
+					} finally {
+						release(null);
 					}
-				},
-				null,
-				ioReactor
+					if (null != error) {
+						p.set(error);
+						return;
+					}
+					if (log.isTraceEnabled()) {
+						log.trace("{} result: {}", op, result);
+					}
+					p.set(result);
+				}
 		);
 
-		return p;
+		return withTimeout(OperationType.SEND, p, timeoutNanos);
 	}
 
+	/**
+	 * Fetch the named bucket. Buckets are cached once fetched, and concurrent calls for a bucket that isn't cached yet
+	 * share a single fetch and a single {@link Promise}. If the cached properties are older than the {@link
+	 * RiakSpec#bucketCache refresh interval}, the cached bucket is returned and fetched again in the background.
+	 *
+	 * @param name the bucket name
+	 * @return a {@link Promise} of the bucket
+	 */
 	public Promise<Bucket> fetchBucket(String name) {
-		Promise<Bucket> p = new Promise<>(this);
+		BucketCache.Entry cached = buckets.get(name);
+		if (null != cached) {
+			if (buckets.needsRefresh(cached)) {
+				loadBucket(name, true);
+			}
+			Promise<Bucket> p = new Promise<>(this);
+			p.set(cached.getBucket());
+			return p;
+		}
+		return withTimeout(OperationType.FETCH_BUCKET, loadBucket(name, false), timeoutNanos);
+	}
 
-		Iterator<Registration<? extends Bucket>> buckets = bucketRegistry.select(name).iterator();
-		if (!buckets.hasNext()) {
-			R.schedule(
-					(Void v) -> {
-						try {
-							Bucket b = riakClient.fetchBucket(name).execute();
-							bucketRegistry.register(new BucketSelector(b), b);
-							if (log.isTraceEnabled()) {
-								log.trace("Fetched: {}", b);
-							}
-							p.set(b);
-						} catch (Throwable t) {
-							p.set(t);
-						}
-					},
-					null,
-					ioReactor
-			);
-		} else {
-			p.set(buckets.next().getObject());
+	/**
+	 * Drop the named bucket from the bucket cache, so the next {@link #fetchBucket(String)} fetches its properties
+	 * again.
+	 *
+	 * @param name the bucket name
+	 */
+	public void invalidateBucket(String name) {
+		buckets.remove(name);
+	}
+
+	/**
+	 * Fetch a bucket's properties and cache the bucket, sharing the fetch with concurrent callers. A failed refresh
+	 * leaves the cached bucket in place.
+	 *
+	 * @param background whether this is a refresh no caller is waiting for
+	 */
+	private Promise<Bucket> loadBucket(String name, boolean background) {
+		Promise<Bucket> p = new Promise<>(this);
+		Promise<Bucket> inflight = inflightBuckets.putIfAbsent(name, p);
+		if (null != inflight) {
+			return inflight;
 		}
+		try {
+			admit(OperationType.FETCH_BUCKET, name, background);
+		} catch (RiakOverloadedException e) {
+			inflightBuckets.remove(name, p);
+			p.set(e);
+			return p;
+		}
+
+		new RetryingTask<>(
+				shard(name),
+				OperationType.FETCH_BUCKET,
+				name,
+				p,
+				() -> {
+					checkCircuit();
+					Bucket b = riakClient.fetchBucket(name).execute();
+					buckets.put(b);
+					if (log.isTraceEnabled()) {
+						log.trace("Fetched: {}", b);
+					}
+					inflightBuckets.remove(name, p);
+					return b;
+				},
+				null,
+				() -> inflightBuckets.remove(name, p)
+		).schedule();
 
 		return p;
 	}
 
+	/**
+	 * Store a value. If write-behind is enabled and a key is given, the store is coalesced with other stores to the same
+	 * key and written when the next batch is flushed; the {@link Promise} completes once that write has finished, but the
+	 * store only holds an in-flight permit until it has been queued.
+	 *
+	 * @param bucket           the bucket to store into
+	 * @param key              the key, or {@literal null} to let Riak generate one
+	 * @param value            the value to store
+	 * @param conflictResolver optional sibling resolver
+	 * @param converter        optional converter
+	 * @param mutation         optional mutation to apply to the existing value instead of replacing it
+	 * @param <T>              the type of the value
+	 * @return a {@link Promise} of the stored value
+	 * @see RiakSpec#writeBehind(long, TimeUnit, int)
+	 * @see RiakSpec#maxInFlight(int)
+	 */
 	public <T> Promise<T> store(Bucket bucket,
 															String key,
 															T value,
 															Function<Collection<T>, T> conflictResolver,
 															Converter<T> converter,
 															Mutation<T> mutation) {
+		try {
+			admit(OperationType.STORE, bucket.getName(), false);
+		} catch (RiakOverloadedException e) {
+			Promise<T> p = new Promise<>(this);
+			p.set(e);
+			return p;
+		}
+
+		BucketKey bk = (null != key ? new BucketKey(bucket.getName(), key) : null);
+		if (null != bk) {
+			inflightFetches.remove(bk);
+			if (null != cache) {
+				cache.beginWrite(bk);
+			}
+			if (null != writeBehind && writeBehind.isOpen()) {
+				Promise<T> p;
+				try {
+					p = writeBehind.store(bucket, bk, value, conflictResolver, converter, mutation);
+				} finally {
+					// a queued store is bounded by the write-behind's maxPending, not by the in-flight limit
+					release(bucket.getName());
+				}
+				return withTimeout(OperationType.STORE, p, timeoutNanos);
+			}
+		}
+		if (null != transportOps && null == mutation && (null != conflictResolver || !allowsSiblings(bucket))) {
+			Promise<T> op = transportOps.store(bucket, key, bk, value, conflictResolver, converter);
+			return withTimeout(OperationType.STORE, releasing(bucket.getName(), op), timeoutNanos);
+		}
+
 		Promise<T> p = new Promise<>(this);
+		new RetryingTask<>(
+				(null != bk ? shard(bk) : nextShard()),
+				OperationType.STORE,
+				bucket.getName(),
+				p,
+				() -> doStore(bucket, key, bk, value, conflictResolver, converter, mutation),
+				null,
+				(null != bk && null != cache ? () -> cache.abortWrite(bk) : null)
+		).schedule();
 
-		R.schedule(
-				(Void v) -> {
-					StoreObject<T> op = (null == key ? bucket.store(value) : bucket.store(key, value));
-					if (log.isTraceEnabled()) {
-						log.trace("Preparing operation {}", op);
-					}
-					if (null != conflictResolver) {
-						op = op.withResolver(siblings -> {
-							T result = conflictResolver.apply(siblings);
-							notify("/" + bucket.getName() + "/" + key, new MergeEvent<T>(Tuple.of(siblings, result)));
-							return result;
-						});
-					}
-					if (null != converter) {
-						op = op.withConverter(converter);
-					}
-					if (null != mutation) {
-						op = op.withMutator(mutation);
-					}
+		return withTimeout(OperationType.STORE, p, timeoutNanos);
+	}
 
-					try {
-						T result = op.execute();
-						if (log.isTraceEnabled()) {
-							log.trace("/{}/{} stored: {}", bucket.getName(), key, result);
-						}
-						notify("/" + bucket.getName() + "/" + key, new StoreEvent<>(result));
+	/**
+	 * Whether the bucket keeps siblings. A store over the transport is written without a vector clock, so in such a
+	 * bucket it creates a sibling that can only be resolved with a conflict resolver; without one the store takes the
+	 * blocking path, which fetches the key and resolves its siblings before writing.
+	 */
+	private static boolean allowsSiblings(Bucket bucket) {
+		return Boolean.TRUE.equals(bucket.getAllowSiblings());
+	}
 
-						p.set(result);
-					} catch (RiakRetryFailedException e) {
-						p.set(e);
-					}
-				},
-				null,
-				ioReactor
-		);
+	/**
+	 * Write out every store that is waiting for the next write-behind flush.
+	 *
+	 * @return a {@link Promise} that completes once the pending stores have finished
+	 */
+	public Promise<Void> flush() {
+		if (null != writeBehind) {
+			return writeBehind.flush();
+		}
+		Promise<Void> p = new Promise<>(this);
+		p.set((Void) null);
+		return p;
+	}
 
+	/**
+	 * Stop accepting write-behind stores and write out the ones that are pending. Once they have finished, the
+	 * transport is closed and the timer and stream threads are stopped, so this {@link Riak} can't be used afterward.
+	 * The {@link com.basho.riak.client.IRiakClient} it was built with is left open.
+	 *
+	 * @return a {@link Promise} that completes once the pending stores have finished and everything is shut down
+	 */
+	public Promise<Void> close() {
+		Promise<Void> flushed = (null != writeBehind ? writeBehind.close() : flush());
+		Promise<Void> p = new Promise<>(this);
+		flushed.onSuccess(v -> {
+			shutdown();
+			p.set(v);
+		});
+		flushed.when(Throwable.class, e -> {
+			shutdown();
+			p.set(e);
+		});
 		return p;
 	}
 
-	@SuppressWarnings({"unchecked"})
+	/**
+	 * Fetch a value. Concurrent fetches of the same key with the same type, resolver and converter share a single
+	 * operation and a single {@link Promise}. A {@link #store store} or {@link #delete delete} of the key ends the
+	 * sharing, so a fetch submitted after a write always sees that write.
+	 * <p>
+	 * If a {@link RiakCache} is configured it is consulted first, and a cached value that is an instance of {@code asType}
+	 * completes the {@link Promise} without going to the cluster.
+	 *
+	 * @param bucket           the bucket to fetch from
+	 * @param key              the key to fetch
+	 * @param asType           the type to convert the value to
+	 * @param conflictResolver optional sibling resolver
+	 * @param converter        optional converter
+	 * @param <T>              the type of the value
+	 * @return a {@link Promise} of the value
+	 * @see RiakSpec#timeout(long, TimeUnit)
+	 * @see RiakSpec#hedgedReads(double, long, TimeUnit)
+	 */
 	public <T> Promise<T> fetch(Bucket bucket,
 															String key,
 															Class<T> asType,
 															Function<Collection<T>, T> conflictResolver,
 															Converter<T> converter) {
-		Promise<T> p = new Promise<>(this);
+		return fetch(bucket, key, asType, conflictResolver, converter, timeoutNanos, TimeUnit.NANOSECONDS);
+	}
 
-		R.schedule(
-				(Void v) -> {
-					FetchObject<T> op;
-					if (null == asType || String.class.equals(asType) || byte[].class.equals(asType)) {
-						op = (FetchObject<T>) bucket.fetch(key);
-					} else {
-						op = bucket.fetch(key, asType);
+	/**
+	 * Fetch a value, failing the {@link Promise} with a {@link RiakTimeoutException} if it hasn't been fetched within
+	 * {@code timeout}. The timeout only applies to this call, even if the fetch is shared with other callers.
+	 *
+	 * @param bucket           the bucket to fetch from
+	 * @param key              the key to fetch
+	 * @param asType           the type to convert the value to
+	 * @param conflictResolver optional sibling resolver
+	 * @param converter        optional converter
+	 * @param timeout          how long to wait for the value, or {@literal 0} to wait indefinitely
+	 * @param unit             the unit of {@code timeout}
+	 * @param <T>              the type of the value
+	 * @return a {@link Promise} of the value
+	 * @see #fetch(Bucket, String, Class, Function, Converter)
+	 */
+	@SuppressWarnings({"unchecked"})
+	public <T> Promise<T> fetch(Bucket bucket,
+															String key,
+															Class<T> asType,
+															Function<Collection<T>, T> conflictResolver,
+															Converter<T> converter,
+															long timeout,
+															TimeUnit unit) {
+		BucketKey bk = new BucketKey(bucket.getName(), key);
+		if (null != cache) {
+			Object cached = cache.get(bk, asType);
+			if (null != cached) {
+				Promise<T> p = new Promise<>(this);
+				p.set((T) cached);
+				return p;
+			}
+		}
+
+		InflightFetch<T> flight = new InflightFetch<>(bucket, bk, asType, conflictResolver, converter);
+		InflightFetch<?> inflight = inflightFetches.putIfAbsent(bk, flight);
+		if (null != inflight && inflight.sameAs(asType, conflictResolver, converter)) {
+			return withTimeout(OperationType.FETCH, (Promise<T>) inflight.promise, unit.toNanos(timeout));
+		}
+		// if another kind of fetch of this key is running, this one runs on its own without being shared
+		try {
+			admit(OperationType.FETCH, bucket.getName(), false);
+		} catch (RiakOverloadedException e) {
+			inflightFetches.remove(bk, flight);
+			flight.promise.set(e);
+			return flight.promise;
+		}
+
+		if (null != transportOps) {
+			Promise<T> op = transportOps.fetch(bucket, bk.getKey(), asType, conflictResolver, converter);
+			op.onSuccess(result -> flight.succeeded(result, true));
+			op.when(Throwable.class, flight::failed);
+		} else {
+			schedule(shard(bk), OperationType.FETCH, flight);
+		}
+		return withTimeout(OperationType.FETCH, flight.promise, unit.toNanos(timeout));
+	}
+
+	/**
+	 * Fetch many keys from the same bucket at once, with up to {@value #DEFAULT_FETCH_ALL_CONCURRENCY} chunks of keys in
+	 * flight. Keys are fetched from the cluster on stream threads, and then converted, resolved and published on the IO
+	 * shard they're routed to like any other fetch.
+	 * <p>
+	 * The returned {@link Promise} is completed once, when every key has been attempted. The {@link Map} iterates in the
+	 * order of the given keys and maps keys that don't exist to {@literal null}. If any key fails, the {@link Promise}
+	 * fails with a {@link RiakFetchAllException} that holds both the values that were fetched and the error of each key
+	 * that wasn't. Each error is also published as an {@link ErrorEvent} on {@code "/bucket/key"}.
+	 * <p>
+	 * The batch counts as background work against the {@link RiakSpec#maxInFlight(int) in-flight limit}, taking one
+	 * permit per chunk in flight. If not even one can be taken the {@link Promise} fails with a {@link
+	 * RiakOverloadedException}.
+	 *
+	 * @param bucket           the bucket to fetch from
+	 * @param keys             the keys to fetch
+	 * @param asType           the type to convert values to
+	 * @param conflictResolver optional sibling resolver
+	 * @param converter        optional converter
+	 * @param <T>              the type of the values
+	 * @return a {@link Promise} of the fetched values, keyed by their key
+	 */
+	public <T> Promise<Map<String, T>> fetchAll(Bucket bucket,
+																							Collection<String> keys,
+																							Class<T> asType,
+																							Function<Collection<T>, T> conflictResolver,
+																							Converter<T> converter) {
+		return fetchAll(bucket, keys, asType, conflictResolver, converter, DEFAULT_FETCH_ALL_CONCURRENCY);
+	}
+
+	/**
+	 * Fetch many keys from the same bucket at once, with at most {@code maxConcurrency} chunks of keys in flight.
+	 *
+	 * @param bucket           the bucket to fetch from
+	 * @param keys             the keys to fetch
+	 * @param asType           the type to convert values to
+	 * @param conflictResolver optional sibling resolver
+	 * @param converter        optional converter
+	 * @param maxConcurrency   the maximum number of keys being fetched at a time
+	 * @param <T>              the type of the values
+	 * @return a {@link Promise} of the fetched values, keyed by their key
+	 * @see #fetchAll(Bucket, Collection, Class, Function, Converter)
+	 */
+	public <T> Promise<Map<String, T>> fetchAll(Bucket bucket,
+																							Collection<String> keys,
+																							Class<T> asType,
+																							Function<Collection<T>, T> conflictResolver,
+																							Converter<T> converter,
+																							int maxConcurrency) {
+		Promise<Map<String, T>> p = new Promise<>(this);
+		new MultiFetch<>(this, bucket, keys, asType, conflictResolver, converter, maxConcurrency)
+				.onComplete(p::set)
+				.onError(p::set)
+				.start();
+		return p;
+	}
+
+	/**
+	 * Fetch many keys from the same bucket at once, emitting a {@link Tuple2} of key and value as soon as each one is
+	 * fetched, which isn't necessarily the order of the given keys. Each distinct key is emitted at most once, and the
+	 * {@link Composable} completes once every key has been tried. A key that couldn't be fetched isn't emitted; once
+	 * every key has been tried, a {@link RiakFetchAllException} with the error of each such key is published on its
+	 * type. If the batch can't be admitted, a {@link RiakOverloadedException} is published on its type and the {@link
+	 * Composable} completes without emitting anything.
+	 *
+	 * @param bucket           the bucket to fetch from
+	 * @param keys             the keys to fetch
+	 * @param asType           the type to convert values to
+	 * @param conflictResolver optional sibling resolver
+	 * @param converter        optional converter
+	 * @param maxConcurrency   the maximum number of keys being fetched at a time
+	 * @param <T>              the type of the values
+	 * @return a {@link Composable} of keys and their values
+	 * @see #fetchAll(Bucket, Collection, Class, Function, Converter)
+	 */
+	public <T> Composable<Tuple2<String, T>> fetchStream(Bucket bucket,
+																											 Collection<String> keys,
+																											 Class<T> asType,
+																											 Function<Collection<T>, T> conflictResolver,
+																											 Converter<T> converter,
+																											 int maxConcurrency) {
+		Composable<Tuple2<String, T>> c = new Composable<>(this);
+		new MultiFetch<>(this, bucket, keys, asType, conflictResolver, converter, maxConcurrency)
+				.onValue(c::accept)
+				// one value was emitted for each key that was fetched
+				.onComplete(values -> c.setExpectedAcceptCount(values.size()))
+				.onError(e -> {
+					c.setExpectedAcceptCount(e instanceof RiakFetchAllException
+																	 ? ((RiakFetchAllException) e).getValues().size()
+																	 : 0);
+					notify(Fn.T(e.getClass()), Fn.event(e));
+				})
+				.start();
+		return c;
+	}
+
+	/**
+	 * Stream the keys of a bucket as Riak lists them. The listing runs on a streaming thread rather than an IO shard, so
+	 * it doesn't hold up other operations however large the bucket is.
+	 * <p>
+	 * Listing keys is an expensive operation for Riak and shouldn't be done routinely against production clusters. If
+	 * the listing fails, the error is published on its type.
+	 *
+	 * @param bucket the bucket to list
+	 * @return a {@link RiakStream} of keys
+	 */
+	public RiakStream<String> keys(Bucket bucket) {
+		return streamKeys(bucket::keys);
+	}
+
+	/**
+	 * Stream the keys and values of a bucket, keeping up to two fetches per IO shard outstanding.
+	 *
+	 * @param bucket the bucket to scan
+	 * @param asType the type to convert values to
+	 * @param <T>    the type of the values
+	 * @return a {@link RiakStream} of keys and their values
+	 * @see #scan(Bucket, Class, Function, Converter, int)
+	 */
+	public <T> RiakStream<Tuple2<String, T>> scan(Bucket bucket, Class<T> asType) {
+		return scan(bucket, asType, null, null, 2 * getIoShards());
+	}
+
+	/**
+	 * Stream the keys and values of a bucket. Keys are listed as in {@link #keys(Bucket)} and each value is fetched on
+	 * the IO shard its key is routed to as soon as the key arrives, with at most {@code prefetch} fetches outstanding.
+	 * Values are emitted as they're fetched, which isn't necessarily the order the keys were listed in, and keys deleted
+	 * since they were listed are skipped.
+	 * <p>
+	 * The fetches count as background work against the {@link RiakSpec#maxInFlight(int) in-flight limit}; if one can't
+	 * be admitted the scan is cancelled and a {@link RiakOverloadedException} is published on its type. A key that fails
+	 * to fetch is skipped and the error is published as an {@link ErrorEvent} on {@code "/bucket/key"}.
+	 *
+	 * @param bucket           the bucket to scan
+	 * @param asType           the type to convert values to
+	 * @param conflictResolver optional sibling resolver
+	 * @param converter        optional converter
+	 * @param prefetch         the maximum number of values being fetched at a time
+	 * @param <T>              the type of the values
+	 * @return a {@link RiakStream} of keys and their values
+	 */
+	public <T> RiakStream<Tuple2<String, T>> scan(Bucket bucket,
+																								Class<T> asType,
+																								Function<Collection<T>, T> conflictResolver,
+																								Converter<T> converter,
+																								int prefetch) {
+		RiakStream<Tuple2<String, T>> stream = new RiakStream<>(this);
+		streams().execute(new BucketScan<>(this,
+																			 bucket,
+																			 bucket::keys,
+																			 asType,
+																			 conflictResolver,
+																			 converter,
+																			 prefetch,
+																			 stream));
+		return stream;
+	}
+
+	/**
+	 * Stream the keys whose secondary index entry lies between {@code from} and {@code to}, inclusive. If {@code from}
+	 * and {@code to} are equal, only exact matches are streamed. The query runs on a streaming thread, like {@link
+	 * #keys(Bucket)}; if it fails, the error is published on its type.
+	 *
+	 * @param bucket the bucket to query
+	 * @param index  the index to query, e.g. {@code BinIndex.named("email")}
+	 * @param from   the start of the range
+	 * @param to     the end of the range
+	 * @param <I>    the type of the index values
+	 * @return a {@link RiakStream} of matching keys
+	 */
+	public <I> RiakStream<String> query(Bucket bucket, RiakIndex<I> index, I from, I to) {
+		return streamKeys(indexQuery(bucket, index, from, to));
+	}
+
+	/**
+	 * Stream the keys and values of the objects whose secondary index entry lies between {@code from} and {@code to},
+	 * inclusive. Values are fetched like in {@link #scan(Bucket, Class, Function, Converter, int)}, through a sliding
+	 * window of at most {@code window} outstanding fetches: as soon as one finishes, the fetch for the next key starts.
+	 * Values are emitted as they're fetched.
+	 * <p>
+	 * Riak returns the full list of matching keys in one response, so the window bounds the number of values in flight
+	 * rather than the size of that list.
+	 *
+	 * @param bucket           the bucket to query
+	 * @param index            the index to query, e.g. {@code IntIndex.named("age")}
+	 * @param from             the start of the range
+	 * @param to               the end of the range
+	 * @param asType           the type to convert values to
+	 * @param conflictResolver optional sibling resolver
+	 * @param converter        optional converter
+	 * @param window           the maximum number of values being fetched at a time
+	 * @param <I>              the type of the index values
+	 * @param <T>              the type of the values
+	 * @return a {@link RiakStream} of keys and their values
+	 */
+	public <I, T> RiakStream<Tuple2<String, T>> query(Bucket bucket,
+																										RiakIndex<I> index,
+																										I from,
+																										I to,
+																										Class<T> asType,
+																										Function<Collection<T>, T> conflictResolver,
+																										Converter<T> converter,
+																										int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("window must be at least 1");
+		}
+		RiakStream<Tuple2<String, T>> stream = new RiakStream<>(this);
+		streams().execute(new BucketScan<>(this,
+																			 bucket,
+																			 indexQuery(bucket, index, from, to),
+																			 asType,
+																			 conflictResolver,
+																			 converter,
+																			 window,
+																			 stream));
+		return stream;
+	}
+
+	/**
+	 * Run a MapReduce job and stream its results.
+	 *
+	 * @param job        the job to run
+	 * @param resultType the type to convert each result to
+	 * @param maxResults the maximum number of results to emit
+	 * @param <T>        the type of the results
+	 * @return a {@link RiakStream} of results
+	 * @see #mapReduce(Function, Class, int)
+	 */
+	public <T> RiakStream<T> mapReduce(MapReduce job, Class<T> resultType, int maxResults) {
+		return mapReduce(client -> job, resultType, maxResults);
+	}
+
+	/**
+	 * Run a Riak Search query and stream the matching objects. With no phases the results are the {@code [bucket, key]}
+	 * pairs of the matches; use {@link #mapReduce(Function, Class, int)} to add phases to the query.
+	 *
+	 * @param bucket     the bucket or search index to query
+	 * @param query      the search query
+	 * @param resultType the type to convert each result to
+	 * @param maxResults the maximum number of results to emit
+	 * @param <T>        the type of the results
+	 * @return a {@link RiakStream} of results
+	 */
+	public <T> RiakStream<T> search(String bucket, String query, Class<T> resultType, int maxResults) {
+		return mapReduce(client -> client.mapReduce(bucket, query), resultType, maxResults);
+	}
+
+	/**
+	 * Run a MapReduce job built from this {@literal Riak}'s client and stream its results, e.g.
+	 * <p>
+	 * <pre>
+	 * riak.mapReduce(client -> client.mapReduce("users", "name:jon*").addMapPhase(...), User.class, 1000);
+	 * </pre>
+	 * <p>
+	 * The job runs on a streaming thread rather than an IO shard, so it doesn't hold up other operations, and counts as
+	 * background work against the {@link RiakSpec#maxInFlight(int) in-flight limit}. If a {@link RiakSpec#timeout
+	 * default timeout} is set it is passed on to Riak as the job's timeout. Results are emitted one at a time until the
+	 * stream is cancelled or {@code maxResults} have been emitted; the rest are dropped. If the job fails, the error is
+	 * published on its type.
+	 * <p>
+	 * riak-client hands over the results of a job only once it has finished, so results are streamed to consumers but
+	 * still held in memory while they're emitted.
+	 *
+	 * @param job        builds the job to run
+	 * @param resultType the type to convert each result to
+	 * @param maxResults the maximum number of results to emit
+	 * @param <T>        the type of the results
+	 * @return a {@link RiakStream} of results
+	 */
+	public <T> RiakStream<T> mapReduce(Function<IRiakClient, MapReduce> job, Class<T> resultType, int maxResults) {
+		if (maxResults < 1) {
+			throw new IllegalArgumentException("maxResults must be at least 1");
+		}
+		RiakStream<T> stream = new RiakStream<>(this);
+		long submittedAt = System.nanoTime();
+		streams().execute(() -> {
+			try {
+				admit(OperationType.MAP_REDUCE, null, true);
+			} catch (RiakOverloadedException e) {
+				notify(Fn.T(e.getClass()), Fn.event(e));
+				stream.failed(e);
+				stream.complete(0);
+				return;
+			}
+
+			Collection<T> results;
+			long startedAt = System.nanoTime();
+			try {
+				MapReduce mr = job.apply(riakClient);
+				if (timeoutNanos > 0) {
+					mr.timeout(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+				}
+				results = mr.execute().getResult(resultType);
+			} catch (RiakException | RuntimeException e) {
+				recordFailure(OperationType.MAP_REDUCE, e);
+				notify(Fn.T(e.getClass()), Fn.event(e));
+				stream.failed(e);
+				stream.complete(0);
+				return;
+			} finally {
+				recordExecution(OperationType.MAP_REDUCE, submittedAt, startedAt);
+				release(null);
+			}
+
+			long emitted = 0;
+			try {
+				for (T result : results) {
+					if (stream.isCancelled() || emitted == maxResults) {
+						break;
 					}
-					if (null != conflictResolver) {
-						op = op.withResolver(siblings -> {
-							T result = conflictResolver.apply(siblings);
-							notify("/" + bucket.getName() + "/" + key, new MergeEvent<T>(Tuple.of(siblings, result)));
-							return result;
-						});
+					stream.accept(result);
+					emitted++;
+				}
+				if (log.isDebugEnabled() && results.size() > emitted) {
+					log.debug("Dropped {} of {} MapReduce results", results.size() - emitted, results.size());
+				}
+			} finally {
+				stream.complete(emitted);
+			}
+		});
+		return stream;
+	}
+
+	public Promise<Void> delete(Bucket bucket,
+															String key,
+															Retrier retrier) {
+		Promise<Void> p = new Promise<>(this);
+		try {
+			admit(OperationType.DELETE, bucket.getName(), false);
+		} catch (RiakOverloadedException e) {
+			p.set(e);
+			return p;
+		}
+
+		BucketKey bk = new BucketKey(bucket.getName(), key);
+		inflightFetches.remove(bk);
+		if (null != cache) {
+			cache.beginWrite(bk);
+		}
+		if (null != transportOps && null == retrier) {
+			Promise<Void> op = transportOps.delete(bucket, key, bk);
+			return withTimeout(OperationType.DELETE, releasing(bucket.getName(), op), timeoutNanos);
+		}
+
+		new RetryingTask<>(
+				shard(bk),
+				OperationType.DELETE,
+				bucket.getName(),
+				p,
+				() -> {
+					checkCircuit();
+					DeleteObject op = bucket.delete(key);
+					if (null != retrier) {
+						op = op.withRetrier(retrier);
 					}
-					if (null != converter) {
-						op = op.withConverter(converter);
+					Void result = op.execute();
+					if (log.isTraceEnabled()) {
+						log.trace("deleted: /{}/{}", bucket.getName(), key);
 					}
+					publishDelete(bucket, key, bk);
+					return result;
+				},
+				null,
+				(null != cache ? () -> cache.abortWrite(bk) : null)
+		).schedule();
+
+		return withTimeout(OperationType.DELETE, p, timeoutNanos);
+	}
+
+	/**
+	 * Store a value on the calling thread. Must only be called from the IO shard responsible for the bucket and key, and
+	 * a {@link RiakCache#beginWrite} for the key must precede it when a cache is configured. A successful store ends the
+	 * pending write; if the store fails, however early, the caller must end it with {@link RiakCache#abortWrite} once it
+	 * gives up on the store.
+	 */
+	<T> T doStore(Bucket bucket,
+								String key,
+								BucketKey bk,
+								T value,
+								Function<Collection<T>, T> conflictResolver,
+								Converter<T> converter,
+								Mutation<T> mutation) throws RiakException {
+		checkCircuit();
+		StoreObject<T> op = (null == key ? bucket.store(value) : bucket.store(key, value));
+		if (log.isTraceEnabled()) {
+			log.trace("Preparing operation {}", op);
+		}
+		if (null != value) {
+			converter = converterFor(bucket, key, value.getClass(), converter);
+		}
+		SiblingResolution<T> sr = (null != value
+																? siblingResolution(bucket, key, value.getClass(), conflictResolver, converter, false)
+																: null);
+		if (null != sr) {
+			op = op.withResolver(sr).withConverter(sr);
+		} else {
+			if (null != conflictResolver) {
+				op = op.withResolver(siblings -> {
+					T result = conflictResolver.apply(siblings);
+					recordMerge(bucket, siblings);
+					publishMerge(bucket, key, bk, siblings, result);
+					return result;
+				});
+			}
+			if (null != converter) {
+				op = op.withConverter(converter);
+			}
+		}
+		if (null != mutation) {
+			op = op.withMutator(mutation);
+		}
+
+		T result = op.execute();
+		if (log.isTraceEnabled()) {
+			log.trace("/{}/{} stored: {}", bucket.getName(), key, result);
+		}
+		publishStore(bucket, key, bk, result);
+		return result;
+	}
+
+	/**
+	 * Fetch a value on the calling thread. Must only be called from the IO shard responsible for the bucket and key.
+	 */
+	<T> T doFetch(Bucket bucket,
+								String key,
+								Class<T> asType,
+								Function<Collection<T>, T> conflictResolver,
+								Converter<T> converter) throws RiakException {
+		return resolveFetched(bucket, key, asType, conflictResolver, converter, fetchSiblings(bucket, key));
+	}
+
+	/**
+	 * Fetch the siblings of a key without converting or resolving them, so that can be left to {@link #resolveFetched}
+	 * on the key's IO shard. Unlike the rest of a fetch, this may run on any thread.
+	 *
+	 * @return the siblings that aren't deleted, empty if the key doesn't exist
+	 */
+	List<IRiakObject> fetchSiblings(Bucket bucket, String key) throws RiakException {
+		checkCircuit();
+		List<IRiakObject> siblings = new ArrayList<>();
+		bucket.fetch(key).withResolver(fetched -> {
+			siblings.addAll(fetched);
+			return null;
+		}).execute();
+		return siblings;
+	}
+
+	/**
+	 * Convert and resolve the siblings of a key, picking the converter a fetch as {@code asType} would use. Resolving
+	 * may publish a merge and write the resolution back, so this must only be called from the key's IO shard.
+	 */
+	<T> T resolveFetched(Bucket bucket,
+											 String key,
+											 Class<T> asType,
+											 Function<Collection<T>, T> conflictResolver,
+											 Converter<T> converter,
+											 Iterable<IRiakObject> siblings) {
+		Class<?> type = (null != asType ? asType : IRiakObject.class);
+		converter = converterFor(bucket, key, type, converter);
+
+		T result = resolveSiblings(bucket, key, type, siblings, conflictResolver, converter, true);
+		if (log.isTraceEnabled()) {
+			log.trace("/{}/{} fetched: {}", bucket.getName(), key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Convert and resolve siblings the way riak-client's operations would: no value if there are none, the only one if
+	 * there is one, and otherwise the resolution of {@code conflictResolver}, which is recorded and published as a merge.
+	 *
+	 * @param writeBack whether a resolution may be written back by the {@link SiblingResolution}
+	 * @throws UnresolvedConflictException if there are siblings and no resolver
+	 */
+	<T> T resolveSiblings(Bucket bucket,
+												String key,
+												Class<?> type,
+												Iterable<IRiakObject> objects,
+												Function<Collection<T>, T> conflictResolver,
+												Converter<T> converter,
+												boolean writeBack) {
+		SiblingResolution<T> sr = siblingResolution(bucket, key, type, conflictResolver, converter, writeBack);
+		Converter<T> conv = (null != sr ? sr : converter);
+
+		List<T> siblings = new ArrayList<>();
+		for (IRiakObject o : objects) {
+			if (!o.isDeleted()) {
+				siblings.add(conv.toDomain(o));
+			}
+		}
+
+		if (null != sr) {
+			return sr.resolve(siblings);
+		}
+		if (siblings.isEmpty()) {
+			return null;
+		}
+		if (siblings.size() == 1) {
+			return siblings.get(0);
+		}
+		if (null == conflictResolver) {
+			throw new UnresolvedConflictException("Siblings found for /" + bucket.getName() + "/" + key, siblings);
+		}
+		T result = conflictResolver.apply(siblings);
+		recordMerge(bucket, siblings);
+		publishMerge(bucket, key, null, siblings, result);
+		return result;
+	}
+
+	/*
+	 * Events about an object are published on "/bucket/key". The cache is updated first so it changes in the same order
+	 * as the writes on the key's IO shard, and the event itself is only created when something is subscribed to it.
+	 */
 
+	void publishStore(Bucket bucket, String key, BucketKey bk, Object result) {
+		if (null != bk && null != cache) {
+			cache.stored(bk, result);
+		}
+		String path = listenerPath(bucket.getName(), key);
+		if (null != path) {
+			notify(path, new StoreEvent<>(result));
+		}
+	}
+
+	void publishDelete(Bucket bucket, String key, BucketKey bk) {
+		if (null != cache) {
+			cache.deleted(bk);
+		}
+		String path = listenerPath(bucket.getName(), key);
+		if (null != path) {
+			notify(path, new DeleteEvent(Tuple.of(bucket, key)));
+		}
+	}
+
+	<T> void publishMerge(Bucket bucket, String key, BucketKey bk, Collection<T> siblings, T result) {
+		if (null != key && null != cache) {
+			cache.merged((null != bk ? bk : new BucketKey(bucket.getName(), key)), result);
+		}
+		String path = listenerPath(bucket.getName(), key);
+		if (null != path) {
+			notify(path, new MergeEvent<T>(Tuple.of(siblings, result)));
+		}
+	}
+
+	/**
+	 * Store the resolution of a key's siblings in the background, so they don't keep accumulating. The key is stored with
+	 * whatever its current value resolves to, so a write that lands in the meantime isn't overwritten. Write-backs are
+	 * best effort: one that can't get an in-flight permit straight away is dropped, under every {@link OverflowPolicy}.
+	 */
+	<T> void writeBack(Bucket bucket,
+										 String key,
+										 T resolved,
+										 Function<Collection<T>, T> conflictResolver,
+										 Converter<T> converter) {
+		try {
+			// this runs on the IO shard resolving the fetch, so it must never wait for a permit
+			admit(OperationType.STORE, bucket.getName(), true);
+		} catch (RiakOverloadedException e) {
+			return;
+		}
+
+		BucketKey bk = new BucketKey(bucket.getName(), key);
+		if (null != cache) {
+			cache.beginWrite(bk);
+		}
+		schedule(
+				shard(bk),
+				OperationType.STORE,
+				(Void v) -> {
 					try {
-						T result = op.execute();
-						if (log.isTraceEnabled()) {
-							log.trace("/{}/{} fetched: {}", bucket.getName(), key, result);
+						doStore(bucket, key, bk, resolved, conflictResolver, converter, current -> current);
+					} catch (RiakException | RuntimeException e) {
+						if (null != cache) {
+							cache.abortWrite(bk);
 						}
-						if (String.class == asType && IRiakObject.class.isInstance(result)) {
-							p.set((T) ((IRiakObject) result).getValueAsString());
-						} else if (String.class == asType && IRiakObject.class.isInstance(result)) {
-							p.set((T) ((IRiakObject) result).getValue());
-						} else {
-							p.set(result);
+						recordFailure(OperationType.STORE, e);
+						if (log.isDebugEnabled()) {
+							log.debug("Failed to write back the resolved siblings of /{}/{}", bucket.getName(), key, e);
 						}
-					} catch (RiakRetryFailedException e) {
-						p.set(e);
+					} finally {
+						release(bucket.getName());
 					}
-				},
-				null,
-				ioReactor
+				}
 		);
+	}
+
+	void publishError(String bucket, String key, Throwable t) {
+		String path = listenerPath(bucket, key);
+		if (null != path) {
+			notify(path, new ErrorEvent(t));
+		}
+	}
+
+	/**
+	 * Get the path to publish an object's events on, or {@literal null} if nothing is subscribed to it. The path is built
+	 * from an interned {@code "/bucket/"} prefix, and not at all if nothing is subscribed to this {@literal Riak}.
+	 */
+	private String listenerPath(String bucket, String key) {
+		Registry<?> consumers = getConsumerRegistry();
+		if (!consumers.iterator().hasNext()) {
+			return null;
+		}
+		String prefix = pathPrefixes.get(bucket);
+		if (null == prefix) {
+			String newPrefix = "/" + bucket + "/";
+			prefix = pathPrefixes.putIfAbsent(bucket, newPrefix);
+			if (null == prefix) {
+				prefix = newPrefix;
+			}
+		}
+		String path = prefix.concat(String.valueOf(key));
+		return (consumers.select(path).iterator().hasNext() ? path : null);
+	}
+
+	/**
+	 * Find the IO shard responsible for the given bucket and key. Operations without a key (e.g. a store that lets Riak
+	 * generate the key) have no ordering to preserve and are distributed round-robin.
+	 *
+	 * @param bucket the bucket name
+	 * @param key    the key, may be {@literal null}
+	 * @return the index of the IO shard
+	 */
+	int shard(String bucket, String key) {
+		if (ioReactors.length == 1) {
+			return 0;
+		}
+		if (null == key) {
+			return nextShard();
+		}
+		return spread(31 * bucket.hashCode() + key.hashCode()) % ioReactors.length;
+	}
+
+	private int shard(BucketKey bk) {
+		return (ioReactors.length == 1 ? 0 : spread(bk.hashCode()) % ioReactors.length);
+	}
+
+	/**
+	 * Find the IO shard responsible for operations on the bucket itself, like fetching its properties.
+	 *
+	 * @param bucket the bucket name
+	 * @return the index of the IO shard
+	 */
+	int shard(String bucket) {
+		return (ioReactors.length == 1 ? 0 : spread(bucket.hashCode()) % ioReactors.length);
+	}
+
+	private int nextShard() {
+		return (ioReactors.length == 1 ? 0 : (nextShard.getAndIncrement() & Integer.MAX_VALUE) % ioReactors.length);
+	}
+
+	/**
+	 * Close the transport and stop the timer and the stream threads, if they were ever started. Delayed work already on
+	 * the timer, like retries and timeouts, still runs so the operations it belongs to complete.
+	 */
+	private synchronized void shutdown() {
+		if (null != transport) {
+			transport.close();
+		}
+		if (null != timer) {
+			timer.shutdown();
+		}
+		if (null != streams) {
+			streams.shutdown();
+		}
+	}
+
+	/**
+	 * Get the timer used for delayed work like write-behind flushes, timeouts and hedges, creating it on first use.
+	 */
+	ScheduledExecutorService timer() {
+		ScheduledExecutorService t = timer;
+		if (null == t) {
+			synchronized (this) {
+				if (null == (t = timer)) {
+					ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+						Thread thread = new Thread(r, "riak-timer");
+						thread.setDaemon(true);
+						return thread;
+					});
+					// timeouts and hedges are usually cancelled, don't let them pile up in the queue
+					executor.setRemoveOnCancelPolicy(true);
+					timer = t = executor;
+				}
+			}
+		}
+		return t;
+	}
+
+	private RiakStream<String> streamKeys(KeySource source) {
+		RiakStream<String> stream = new RiakStream<>(this);
+		streams().execute(() -> {
+			long listed = 0;
+			try {
+				// a key listing can't be aborted without closing the connection, so a cancelled stream drains it instead
+				for (String key : source.keys()) {
+					if (!stream.isCancelled()) {
+						stream.accept(key);
+						listed++;
+					}
+				}
+			} catch (RiakException | RuntimeException e) {
+				notify(Fn.T(e.getClass()), Fn.event(e));
+				stream.failed(e);
+			} finally {
+				stream.complete(listed);
+			}
+		});
+		return stream;
+	}
+
+	private static <I> KeySource indexQuery(Bucket bucket, RiakIndex<I> index, I from, I to) {
+		return () -> {
+			FetchIndex<I> op = bucket.fetchIndex(index);
+			return (from.equals(to) ? op.withValue(from) : op.from(from).to(to)).execute();
+		};
+	}
+
+	/**
+	 * Get the pool that runs long-lived streaming work like key listings, and the cluster round trips of multi-key
+	 * fetches, creating it on first use. This work never runs on an IO shard, where it would hold up every other
+	 * operation routed to that shard.
+	 */
+	ExecutorService streams() {
+		ExecutorService s = streams;
+		if (null == s) {
+			synchronized (this) {
+				if (null == (s = streams)) {
+					AtomicInteger threads = new AtomicInteger();
+					streams = s = Executors.newCachedThreadPool(r -> {
+						Thread thread = new Thread(r, "riak-stream-" + threads.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					});
+				}
+			}
+		}
+		return s;
+	}
+
+	RiakCache cache() {
+		return cache;
+	}
+
+	/**
+	 * Take an in-flight permit for an operation on the given bucket. Every successful call must be matched by a {@link
+	 * #release(String)} once the operation has finished.
+	 *
+	 * @param type       the type of operation
+	 * @param bucket     the bucket name, or {@literal null} for operations not bound to a bucket
+	 * @param background whether the operation is background work, which is never made to wait for a permit
+	 * @throws RiakOverloadedException if the operation can't be admitted
+	 */
+	void admit(OperationType type, String bucket, boolean background) throws RiakOverloadedException {
+		failFastIfOpen(type);
+		if (null != limiter) {
+			try {
+				limiter.acquire(bucket, background);
+			} catch (RiakOverloadedException e) {
+				recordFailure(type, e);
+				throw e;
+			}
+		}
+		// a half-open probe is only taken once the limiter has let the operation in, so a rejection can't use it up
+		if (null != breaker && !breaker.allow()) {
+			release(bucket);
+			RiakCircuitOpenException e = new RiakCircuitOpenException();
+			recordFailure(type, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Take up to {@code max} in-flight permits for background work on the given bucket.
+	 *
+	 * @return the number of permits taken, at least 1
+	 * @throws RiakOverloadedException if not even one permit could be taken
+	 */
+	int admitUpTo(String bucket, int max) throws RiakOverloadedException {
+		failFastIfOpen(OperationType.FETCH);
+		int acquired = max;
+		if (null != limiter) {
+			try {
+				acquired = limiter.acquireUpTo(bucket, max);
+			} catch (RiakOverloadedException e) {
+				recordFailure(OperationType.FETCH, e);
+				throw e;
+			}
+		}
+		if (null != breaker && !breaker.allow()) {
+			for (int i = 0; i < acquired; i++) {
+				release(bucket);
+			}
+			RiakCircuitOpenException e = new RiakCircuitOpenException();
+			recordFailure(OperationType.FETCH, e);
+			throw e;
+		}
+		return acquired;
+	}
+
+	void release(String bucket) {
+		if (null != limiter) {
+			limiter.release(bucket);
+		}
+	}
+
+	/**
+	 * Get a {@link Promise} that completes like {@code op} does, after giving back the operation's in-flight permit.
+	 */
+	private <T> Promise<T> releasing(String bucket, Promise<T> op) {
+		Promise<T> p = new Promise<>(this);
+		op.onSuccess(result -> {
+			release(bucket);
+			p.set(result);
+		});
+		op.when(Throwable.class, e -> {
+			release(bucket);
+			p.set(e);
+		});
 		return p;
 	}
 
-	public Promise<Void> delete(Bucket bucket,
-															String key,
-															Retrier retrier) {
-		Promise<Void> p = new Promise<>(this);
+	/**
+	 * Get a {@link Promise} that completes like {@code p} does, or with a {@link RiakTimeoutException} if {@code p}
+	 * hasn't completed within the timeout, whichever happens first.
+	 */
+	private <T> Promise<T> withTimeout(OperationType type, Promise<T> p, long timeoutNanos) {
+		if (timeoutNanos <= 0) {
+			return p;
+		}
+		Promise<T> timed = new Promise<>(this);
+		AtomicBoolean done = new AtomicBoolean();
+		ScheduledFuture<?> timeout = timer().schedule(
+				() -> {
+					if (done.compareAndSet(false, true)) {
+						RiakTimeoutException e = new RiakTimeoutException(timeoutNanos, TimeUnit.NANOSECONDS);
+						recordFailure(type, e);
+						timed.set(e);
+					}
+				},
+				timeoutNanos,
+				TimeUnit.NANOSECONDS
+		);
+		p.onSuccess(result -> {
+			if (done.compareAndSet(false, true)) {
+				timeout.cancel(false);
+				timed.set(result);
+			}
+		});
+		p.when(Throwable.class, error -> {
+			if (done.compareAndSet(false, true)) {
+				timeout.cancel(false);
+				timed.set(error);
+			}
+		});
+		return timed;
+	}
+
+	void schedule(int shard, Consumer<Void> task) {
+		schedule(shard, null, task);
+	}
+
+	/**
+	 * Schedule a task on an IO shard, reporting how long it waited and executed to the {@link RiakMetrics} as an
+	 * operation of the given type.
+	 *
+	 * @param type the type of operation, or {@literal null} if the task reports its own measurements
+	 */
+	void schedule(int shard, OperationType type, Consumer<Void> task) {
+		queueDepth.incrementAndGet();
+		if (null == type || (null == metrics && null == breaker && null == retryPolicy)) {
+			R.schedule(
+					(Void v) -> {
+						queueDepth.decrementAndGet();
+						task.accept(v);
+					},
+					null,
+					ioReactors[shard]
+			);
+			return;
+		}
 
+		long queuedAt = System.nanoTime();
 		R.schedule(
 				(Void v) -> {
-					DeleteObject op = bucket.delete(key);
-					if (null != retrier) {
-						op = op.withRetrier(retrier);
-					}
+					queueDepth.decrementAndGet();
+					long startedAt = System.nanoTime();
 					try {
-						Void result = op.execute();
-						if (log.isTraceEnabled()) {
-							log.trace("deleted: /{}/{}", bucket.getName(), key);
-						}
-						notify("/" + bucket.getName() + "/" + key, new DeleteEvent(Tuple.of(bucket, key)));
-						p.set(result);
-					} catch (RiakException e) {
-						p.set(e);
+						task.accept(v);
+					} finally {
+						recordExecution(type, queuedAt, startedAt);
 					}
 				},
 				null,
-				ioReactor
+				ioReactors[shard]
 		);
+	}
 
-		return p;
+	/**
+	 * Report an operation that was executed as part of a larger task, like one key of a multi-key fetch.
+	 */
+	void recordExecution(OperationType type, long queuedAt, long startedAt) {
+		if (null != metrics) {
+			metrics.executed(type, startedAt - queuedAt, System.nanoTime() - startedAt);
+		}
+		if (null != breaker) {
+			breaker.called();
+		}
+		if (null != retryPolicy) {
+			retryPolicy.called();
+		}
+	}
+
+	/**
+	 * Report an operation that was executed and failed. The failed call is counted, but never as a half-open circuit's
+	 * probe passing.
+	 */
+	void recordFailedExecution(OperationType type, long queuedAt, long startedAt, Throwable error) {
+		if (null != metrics) {
+			metrics.executed(type, startedAt - queuedAt, System.nanoTime() - startedAt);
+			metrics.failed(type, error);
+		}
+		if (null != breaker) {
+			breaker.called(error);
+		}
+		if (null != retryPolicy) {
+			retryPolicy.called();
+		}
+	}
+
+	void recordFailure(OperationType type, Throwable error) {
+		if (null != metrics) {
+			metrics.failed(type, error);
+		}
+		if (null != breaker) {
+			if (CircuitBreaker.isClusterFailure(error)) {
+				breaker.failed();
+			} else if (error instanceof RiakTimeoutException) {
+				breaker.timedOut();
+			}
+		}
+	}
+
+	/**
+	 * Pick the converter values of the given type are stored and fetched with: the one given, or else a {@link
+	 * RawConverter} for {@link String} and {@code byte[]}, the codec bound to the bucket, or riak-client's default, in
+	 * that order. Stores and fetches must agree on this, or a value won't come back as it went in.
+	 */
+	<T> Converter<T> converterFor(Bucket bucket, String key, Class<?> type, Converter<T> converter) {
+		if (null != converter) {
+			return converter;
+		}
+		if (RawConverter.isRaw(type)) {
+			return new RawConverter<>(type, bucket.getName(), key);
+		}
+		if (null != codecs) {
+			converter = codecs.converterFor(bucket.getName(), key, type);
+		}
+		return (null != converter ? converter : Riak.<T>defaultConverter(type, bucket.getName(), key));
+	}
+
+	/**
+	 * Get the converter riak-client would use for values of the given type if none was given.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> Converter<T> defaultConverter(Class<?> type, String bucket, String key) {
+		if (IRiakObject.class.isAssignableFrom(type)) {
+			return (Converter<T>) new PassThroughConverter();
+		}
+		return new JSONConverter<>((Class<T>) type, bucket, key);
+	}
+
+	/**
+	 * Create the resolver for the siblings of one operation, if sibling resolution is enabled.
+	 *
+	 * @return the resolver or {@literal null} if siblings are passed straight to {@code conflictResolver}
+	 */
+	<T> SiblingResolution<T> siblingResolution(Bucket bucket,
+																						 String key,
+																						 Class<?> type,
+																						 Function<Collection<T>, T> conflictResolver,
+																						 Converter<T> converter,
+																						 boolean writeBack) {
+		if (null == conflictResolver || null == resolutions || null == key) {
+			return null;
+		}
+		return new SiblingResolution<>(this,
+																	 resolutions,
+																	 bucket,
+																	 key,
+																	 type,
+																	 conflictResolver,
+																	 converter,
+																	 writeBack && writeBackResolutions);
+	}
+
+	/**
+	 * Fail an operation right away if the circuit is open, before it waits for an in-flight permit.
+	 */
+	private void failFastIfOpen(OperationType type) throws RiakCircuitOpenException {
+		if (null != breaker && breaker.isOpen()) {
+			RiakCircuitOpenException e = new RiakCircuitOpenException();
+			recordFailure(type, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Fail an operation that was queued before the circuit breaker opened, instead of sending it to the cluster.
+	 */
+	void checkCircuit() throws RiakCircuitOpenException {
+		if (null != breaker && breaker.isOpen()) {
+			throw new RiakCircuitOpenException();
+		}
+	}
+
+	/**
+	 * Try a failed operation again after the backoff, if the retry policy allows it. The operation keeps its in-flight
+	 * permit while it waits.
+	 *
+	 * @param attempt the attempt that failed, starting at {@literal 1}
+	 * @param retry   run on the timer thread when the operation should be tried again
+	 * @return whether the operation will be retried
+	 */
+	private boolean retryLater(OperationType type, int attempt, Throwable error, Runnable retry) {
+		if (null == retryPolicy || (null != breaker && breaker.isOpen())) {
+			return false;
+		}
+		long delay = retryPolicy.retryDelay(type, attempt, error);
+		if (delay < 0) {
+			return false;
+		}
+		timer().schedule(retry, delay, TimeUnit.NANOSECONDS);
+		return true;
+	}
+
+	void recordMerge(Bucket bucket, Collection<?> siblings) {
+		if (null != metrics) {
+			metrics.merged(bucket.getName(), siblings.size());
+		}
+	}
+
+	/**
+	 * Schedule a task that is passed its data as the event, so one consumer can be shared by many tasks. The consumer must
+	 * decrement the {@link #queueDepth} itself when it starts.
+	 */
+	private <T> void schedule(int shard, Consumer<T> task, T data) {
+		queueDepth.incrementAndGet();
+		R.schedule(task, data, ioReactors[shard]);
+	}
+
+	private static int spread(int h) {
+		return (h ^ (h >>> 16)) & Integer.MAX_VALUE;
+	}
+
+	static Dispatcher[] createIoDispatchers(int ioShards, int ioBacklog) {
+		if (ioShards < 1) {
+			throw new IllegalArgumentException("ioShards must be at least 1");
+		}
+		Dispatcher[] dispatchers = new Dispatcher[ioShards];
+		for (int i = 0; i < ioShards; i++) {
+			dispatchers[i] = new RingBufferDispatcher(
+					"riak-io-" + i,
+					1,
+					ioBacklog,
+					ProducerType.MULTI,
+					new BlockingWaitStrategy()
+			);
+		}
+		return dispatchers;
+	}
+
+	private class SendBatch implements Consumer<RiakOperation<?>> {
+		private final Promise<Void>  promise;
+		private final AtomicInteger remaining;
+		private final long          submittedAt;
+
+		private SendBatch(Promise<Void> promise, int size) {
+			this.promise = promise;
+			this.remaining = new AtomicInteger(size);
+			this.submittedAt = System.nanoTime();
+		}
+
+		@Override
+		public void accept(RiakOperation<?> op) {
+			queueDepth.decrementAndGet();
+			long startedAt = System.nanoTime();
+			try {
+				op.execute();
+			} catch (RiakException | RuntimeException e) {
+				recordFailure(OperationType.SEND, e);
+				Riak.this.notify(Fn.T(e.getClass()), Fn.event(e));
+			} finally {
+				recordExecution(OperationType.SEND, submittedAt, startedAt);
+				release(null);
+				countDown();
+			}
+		}
+
+		private void countDown() {
+			if (remaining.decrementAndGet() == 0) {
+				promise.set((Void) null);
+			}
+		}
+	}
+
+	/**
+	 * A fetch that concurrent callers can share. It succeeds with whichever of the fetch and its hedge succeeds first,
+	 * and only fails once every attempt has failed, so a failing hedge never fails a fetch that is still running.
+	 */
+	private class InflightFetch<T> implements Consumer<Void> {
+		private final Promise<T>                 promise = new Promise<>(Riak.this);
+		private final AtomicBoolean              done    = new AtomicBoolean();
+		private final AtomicInteger              running = new AtomicInteger(1);
+		private final Bucket                     bucket;
+		private final BucketKey                  bk;
+		private final Class<T>                   asType;
+		private final Function<Collection<T>, T> conflictResolver;
+		private final Converter<T>               converter;
+		private volatile ScheduledFuture<?> hedge;
+		private          int                attempts = 1;
+
+		private InflightFetch(Bucket bucket,
+													BucketKey bk,
+													Class<T> asType,
+													Function<Collection<T>, T> conflictResolver,
+													Converter<T> converter) {
+			this.bucket = bucket;
+			this.bk = bk;
+			this.asType = asType;
+			this.conflictResolver = conflictResolver;
+			this.converter = converter;
+		}
+
+		private boolean sameAs(Class<?> asType, Function<?, ?> conflictResolver, Converter<?> converter) {
+			return this.asType == asType && this.conflictResolver == conflictResolver && this.converter == converter;
+		}
+
+		@Override
+		public void accept(Void v) {
+			long start = System.nanoTime();
+			if (null != latencies) {
+				hedge = timer().schedule(this::hedge, latencies.getHedgeDelayNanos(), TimeUnit.NANOSECONDS);
+			}
+			if (attempt() && null != latencies) {
+				latencies.record(System.nanoTime() - start);
+			}
+		}
+
+		/**
+		 * Run the fetch on the key's IO shard and try to complete the {@link Promise} with its outcome.
+		 *
+		 * @return whether the fetch succeeded
+		 */
+		private boolean attempt() {
+			T result;
+			try {
+				result = doFetch(bucket, bk.getKey(), asType, conflictResolver, converter);
+			} catch (RiakException | RuntimeException e) {
+				recordFailure(OperationType.FETCH, e);
+				if (!done.get() && retryLater(OperationType.FETCH, attempts++, e, this::retry)) {
+					return false;
+				}
+				failed(e);
+				return false;
+			}
+			succeeded(result, true);
+			return true;
+		}
+
+		/**
+		 * Give back the attempt's in-flight permit and complete the {@link Promise} with its result, unless another attempt
+		 * got there first.
+		 */
+		private void succeeded(T result, boolean primary) {
+			release(bk.getBucket());
+			if (done.compareAndSet(false, true)) {
+				if (primary && null != cache) {
+					cache.put(bk, result);
+				}
+				finish();
+				promise.set(result);
+			}
+		}
+
+		/**
+		 * Give back the attempt's in-flight permit and, if it was the last attempt running, fail the {@link Promise}.
+		 */
+		private void failed(Throwable error) {
+			release(bk.getBucket());
+			if (running.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+				finish();
+				promise.set(error);
+			}
+		}
+
+		private void retry() {
+			ScheduledFuture<?> h = hedge;
+			if (null != h) {
+				h.cancel(false);
+			}
+			schedule(shard(bk), OperationType.FETCH, this);
+		}
+
+		private void finish() {
+			inflightFetches.remove(bk, this);
+			ScheduledFuture<?> h = hedge;
+			if (null != h) {
+				h.cancel(false);
+			}
+		}
+
+		private void hedge() {
+			// a hedge is never one of a half-open circuit's probes, whose outcome has to be reported
+			if (done.get() || getCircuitState() != CircuitState.CLOSED) {
+				return;
+			}
+			try {
+				// this runs on the shared timer, so as background work the hedge only takes a permit that's free right away
+				admit(OperationType.FETCH, bk.getBucket(), true);
+			} catch (RiakOverloadedException e) {
+				return;
+			}
+			if (!join()) {
+				// every attempt has already failed
+				release(bk.getBucket());
+				return;
+			}
+			schedule((shard(bk) + 1) % ioReactors.length, OperationType.FETCH, (Void v) -> hedged());
+		}
+
+		/**
+		 * Fetch the key for the hedge on the calling thread. Only the round trip runs off the key's own IO shard: siblings
+		 * that need resolving are handed back to it, so merges and write-backs of the key still only happen there.
+		 */
+		private void hedged() {
+			List<IRiakObject> siblings;
+			try {
+				siblings = fetchSiblings(bucket, bk.getKey());
+			} catch (RiakException | RuntimeException e) {
+				recordFailure(OperationType.FETCH, e);
+				failed(e);
+				return;
+			}
+			if (siblings.size() > 1) {
+				schedule(shard(bk), (Void v) -> resolveHedged(siblings));
+			} else {
+				resolveHedged(siblings);
+			}
+		}
+
+		private void resolveHedged(List<IRiakObject> siblings) {
+			if (done.get()) {
+				// the fetch got there first, don't resolve the same siblings twice
+				release(bk.getBucket());
+				return;
+			}
+			T result;
+			try {
+				result = resolveFetched(bucket, bk.getKey(), asType, conflictResolver, converter, siblings);
+			} catch (RuntimeException e) {
+				recordFailure(OperationType.FETCH, e);
+				failed(e);
+				return;
+			}
+			succeeded(result, false);
+		}
+
+		/**
+		 * Count another attempt as running, unless the fetch has already failed.
+		 */
+		private boolean join() {
+			for (; ; ) {
+				int r = running.get();
+				if (r == 0) {
+					return false;
+				}
+				if (running.compareAndSet(r, r + 1)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs an operation on an IO shard and completes a {@link Promise} with its outcome, giving back the operation's
+	 * in-flight permit first. An operation that fails in a way the {@link RetryPolicy} allows is queued on its shard
+	 * again after the backoff, keeping its permit.
+	 */
+	private class RetryingTask<T> implements Consumer<Void> {
+		private final int           shard;
+		private final OperationType type;
+		private final String        bucket;
+		private final Promise<T>    promise;
+		private final Callable<T>   operation;
+		private final Runnable      beforeRetry;
+		private final Runnable      onFailure;
+		private       int           attempts = 1;
+
+		/**
+		 * @param beforeRetry optional, run before the operation is queued again
+		 * @param onFailure   optional, run before the {@link Promise} fails
+		 */
+		private RetryingTask(int shard,
+												 OperationType type,
+												 String bucket,
+												 Promise<T> promise,
+												 Callable<T> operation,
+												 Runnable beforeRetry,
+												 Runnable onFailure) {
+			this.shard = shard;
+			this.type = type;
+			this.bucket = bucket;
+			this.promise = promise;
+			this.operation = operation;
+			this.beforeRetry = beforeRetry;
+			this.onFailure = onFailure;
+		}
+
+		private void schedule() {
+			Riak.this.schedule(shard, type, this);
+		}
+
+		@Override
+		public void accept(Void v) {
+			T result;
+			try {
+				result = operation.call();
+			} catch (Exception e) {
+				recordFailure(type, e);
+				if (retryLater(type, attempts++, e, this::retry)) {
+					return;
+				}
+				if (null != onFailure) {
+					onFailure.run();
+				}
+				release(bucket);
+				promise.set(e);
+				return;
+			}
+			release(bucket);
+			promise.set(result);
+		}
+
+		private void retry() {
+			if (null != beforeRetry) {
+				beforeRetry.run();
+			}
+			schedule();
+		}
 	}
 
 }
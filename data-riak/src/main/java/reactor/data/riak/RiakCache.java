@@ -0,0 +1,259 @@
+package reactor.data.riak;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, in-process cache of fetched values that {@link Riak#fetch} consults before going to the cluster. Entries
+ * are keyed by bucket and key, evicted least-recently-used first once the cache is full, and expire after a fixed time
+ * to live.
+ * <p>
+ * The cache is kept up to date by the same stores, merges and deletes that {@link Riak} publishes {@link StoreEvent
+ * StoreEvents}, {@link MergeEvent MergeEvents} and {@link DeleteEvent DeleteEvents} for. These are applied on the IO
+ * shard that owns the key, in the same order as the writes themselves, whether or not anything is subscribed to the
+ * events. While a write to a key is outstanding the key is never served from the cache.
+ * <p>
+ * Cached values are shared between callers, so they should be treated as immutable.
+ *
+ * @author Jon Brisbin
+ */
+public class RiakCache {
+
+	private static final int SEGMENTS = 16;
+
+	private final AtomicLong                         hits          = new AtomicLong();
+	private final AtomicLong                         misses        = new AtomicLong();
+	private final AtomicLong                         evictions     = new AtomicLong();
+	private final AtomicLong                         expirations   = new AtomicLong();
+	private final ConcurrentMap<BucketKey, Integer> pendingWrites = new ConcurrentHashMap<>();
+	private final Segment[] segments;
+	private final int       maxSize;
+	private final long      ttlNanos;
+
+	/**
+	 * Create a cache holding up to {@code maxSize} values for no longer than {@code ttl}.
+	 *
+	 * @param maxSize the maximum number of values to hold
+	 * @param ttl     how long a value may be served from the cache
+	 * @param unit    the unit of {@code ttl}
+	 */
+	public RiakCache(int maxSize, long ttl, TimeUnit unit) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		this.maxSize = maxSize;
+		this.ttlNanos = unit.toNanos(ttl);
+
+		int segmentCount = Math.min(SEGMENTS, maxSize);
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Get the number of lookups that were answered from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of lookups that had to go to the cluster.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of values that were evicted to make room for others.
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Get the number of values that were dropped because their time to live passed.
+	 *
+	 * @return the number of expirations
+	 */
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	/**
+	 * Get the number of values currently held.
+	 *
+	 * @return the current size
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Segment s : segments) {
+			synchronized (s) {
+				size += s.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Get the maximum number of values this cache will hold.
+	 *
+	 * @return the maximum size
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Drop the value cached for the given bucket and key, if any.
+	 *
+	 * @param bucket the bucket name
+	 * @param key    the key
+	 */
+	public void invalidate(String bucket, String key) {
+		BucketKey bk = new BucketKey(bucket, key);
+		Segment s = segmentFor(bk);
+		synchronized (s) {
+			s.remove(bk);
+		}
+	}
+
+	/**
+	 * Drop every cached value.
+	 */
+	public void invalidateAll() {
+		for (Segment s : segments) {
+			synchronized (s) {
+				s.clear();
+			}
+		}
+	}
+
+	/**
+	 * Look up a value that is an instance of {@code asType}.
+	 *
+	 * @return the cached value or {@literal null} on a miss
+	 */
+	Object get(BucketKey bk, Class<?> asType) {
+		Object value = null;
+		Segment s = segmentFor(bk);
+		synchronized (s) {
+			Entry e = s.get(bk);
+			if (null != e) {
+				if (e.expiresAt - System.nanoTime() <= 0) {
+					s.remove(bk);
+					expirations.incrementAndGet();
+				} else if (null == asType || asType.isInstance(e.value)) {
+					value = e.value;
+				}
+			}
+		}
+		(null != value ? hits : misses).incrementAndGet();
+		return value;
+	}
+
+	/**
+	 * Cache a value that was just fetched, unless a write to the key is outstanding.
+	 */
+	void put(BucketKey bk, Object value) {
+		if (null == value || pendingWrites.containsKey(bk)) {
+			return;
+		}
+		Segment s = segmentFor(bk);
+		synchronized (s) {
+			s.put(bk, new Entry(value, System.nanoTime() + ttlNanos));
+		}
+	}
+
+	/**
+	 * Called when a write to the key is submitted. The key isn't served from or added to the cache until every write
+	 * submitted for it has finished.
+	 */
+	void beginWrite(BucketKey bk) {
+		pendingWrites.merge(bk, 1, Integer::sum);
+		Segment s = segmentFor(bk);
+		synchronized (s) {
+			s.remove(bk);
+		}
+	}
+
+	/**
+	 * Finish a store started with {@link #beginWrite(BucketKey)}, caching the stored value if no other write to the key
+	 * is outstanding.
+	 */
+	void stored(BucketKey bk, Object value) {
+		if (endWrite(bk)) {
+			put(bk, value);
+		}
+	}
+
+	/**
+	 * Finish a delete started with {@link #beginWrite(BucketKey)}.
+	 */
+	void deleted(BucketKey bk) {
+		endWrite(bk);
+	}
+
+	/**
+	 * Refresh the cached value with the result of resolving siblings, if no write to the key is outstanding.
+	 */
+	void merged(BucketKey bk, Object resolved) {
+		put(bk, resolved);
+	}
+
+	/**
+	 * Finish a write that failed, leaving the key uncached.
+	 */
+	void abortWrite(BucketKey bk) {
+		endWrite(bk);
+	}
+
+	private boolean endWrite(BucketKey bk) {
+		return null == pendingWrites.computeIfPresent(bk, (k, pending) -> (pending > 1 ? pending - 1 : null));
+	}
+
+	private Segment segmentFor(BucketKey bk) {
+		int h = bk.hashCode();
+		return segments[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % segments.length];
+	}
+
+	private static class Entry {
+		private final Object value;
+		private final long   expiresAt;
+
+		private Entry(Object value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private class Segment extends LinkedHashMap<BucketKey, Entry> {
+		private final int capacity;
+
+		private Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<BucketKey, Entry> eldest) {
+			if (size() > capacity) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+}
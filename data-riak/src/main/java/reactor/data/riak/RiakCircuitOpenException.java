@@ -0,0 +1,18 @@
+package reactor.data.riak;
+
+/**
+ * Thrown, or used to fail a {@link reactor.core.Promise}, when an operation isn't sent to the cluster because the
+ * circuit breaker is open.
+ *
+ * @author Jon Brisbin
+ * @see RiakSpec#circuitBreaker(double, int, long, long, java.util.concurrent.TimeUnit)
+ */
+public class RiakCircuitOpenException extends RiakOverloadedException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RiakCircuitOpenException() {
+		super(null, "Circuit breaker is open, Riak is failing too many operations");
+	}
+
+}
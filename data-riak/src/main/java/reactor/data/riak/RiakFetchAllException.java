@@ -0,0 +1,49 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.RiakException;
+
+import java.util.Map;
+
+/**
+ * Used to fail the {@link reactor.core.Promise} of a multi-key fetch when some of its keys couldn't be fetched. The
+ * values of the keys that were fetched are kept, so a failed key can be told apart from one that doesn't exist.
+ *
+ * @author Jon Brisbin
+ * @see Riak#fetchAll(com.basho.riak.client.bucket.Bucket, java.util.Collection, Class, reactor.fn.Function,
+ * com.basho.riak.client.convert.Converter)
+ */
+public class RiakFetchAllException extends RiakException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, ?>         values;
+	private final Map<String, Throwable> failures;
+
+	public RiakFetchAllException(Map<String, ?> values, Map<String, Throwable> failures) {
+		super(failures.size() + " of " + (values.size() + failures.size()) + " keys could not be fetched");
+		this.values = values;
+		this.failures = failures;
+	}
+
+	/**
+	 * Get the values of the keys that were fetched, in the order of the requested keys. Keys that don't exist map to
+	 * {@literal null}.
+	 *
+	 * @param <T> the type of the values
+	 * @return the fetched values, keyed by their key
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Map<String, T> getValues() {
+		return (Map<String, T>) values;
+	}
+
+	/**
+	 * Get the error each key that couldn't be fetched failed with, in the order of the requested keys.
+	 *
+	 * @return the errors, keyed by their key
+	 */
+	public Map<String, Throwable> getFailures() {
+		return failures;
+	}
+
+}
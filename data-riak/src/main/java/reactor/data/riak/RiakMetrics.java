@@ -0,0 +1,61 @@
+package reactor.data.riak;
+
+/**
+ * Receives measurements of the operations a {@link Riak} executes. Methods are called on the IO threads as operations
+ * run, so implementations must be thread-safe and cheap.
+ *
+ * @author Jon Brisbin
+ * @see JmxRiakMetrics
+ * @see RiakSpec#metrics(RiakMetrics)
+ */
+public interface RiakMetrics {
+
+	/**
+	 * Called when an operation has been executed, whether it succeeded or not.
+	 *
+	 * @param type           the type of operation
+	 * @param queueNanos     how long the operation waited on its IO shard before it started executing
+	 * @param executionNanos how long the operation took to execute
+	 */
+	void executed(OperationType type, long queueNanos, long executionNanos);
+
+	/**
+	 * Called when an operation fails, including when it is rejected by the in-flight limit or times out.
+	 *
+	 * @param type  the type of operation
+	 * @param error the cause of the failure
+	 */
+	void failed(OperationType type, Throwable error);
+
+	/**
+	 * Called when siblings have been passed through a conflict resolver.
+	 *
+	 * @param bucket   the bucket of the object
+	 * @param siblings the number of siblings that were resolved
+	 */
+	void merged(String bucket, int siblings);
+
+	/**
+	 * Called when a failed operation is going to be tried again.
+	 *
+	 * @param type       the type of operation
+	 * @param attempt    the attempt that failed, starting at {@literal 1}
+	 * @param delayNanos how long the operation waits before it is tried again
+	 */
+	void retried(OperationType type, int attempt, long delayNanos);
+
+	/**
+	 * Called when a failed operation would have been tried again but the retry budget had run out.
+	 *
+	 * @param type the type of operation
+	 */
+	void retryBudgetExhausted(OperationType type);
+
+	/**
+	 * Called when the circuit breaker changes state.
+	 *
+	 * @param state the new state
+	 */
+	void circuitChanged(CircuitState state);
+
+}
@@ -0,0 +1,32 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.RiakException;
+
+/**
+ * Thrown, or used to fail a {@link reactor.core.Promise}, when an operation can't be admitted because {@link Riak}
+ * already has as many operations in flight as it was configured to allow.
+ *
+ * @author Jon Brisbin
+ * @see RiakSpec#maxInFlight(int)
+ */
+public class RiakOverloadedException extends RiakException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String bucket;
+
+	public RiakOverloadedException(String bucket, String message) {
+		super(message);
+		this.bucket = bucket;
+	}
+
+	/**
+	 * Get the bucket whose limit was reached.
+	 *
+	 * @return the bucket name, or {@literal null} if the limit for the whole {@link Riak} was reached
+	 */
+	public String getBucket() {
+		return bucket;
+	}
+
+}
@@ -0,0 +1,516 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.IRiakClient;
+import com.basho.riak.client.RiakException;
+import com.basho.riak.client.RiakFactory;
+import reactor.data.riak.codec.CodecRegistry;
+import reactor.data.riak.pb.PbTransport;
+import reactor.fn.dispatch.Dispatcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static reactor.core.Context.rootDispatcher;
+
+/**
+ * A builder for {@link Riak} instances that need more than the defaults provided by {@link Riak}'s constructors.
+ * <p>
+ * <pre>
+ * Riak riak = new RiakSpec()
+ *     .client(RiakFactory.pbcClient())
+ *     .ioShards(4)
+ *     .ioBacklog(2048)
+ *     .cache(10000, 5, TimeUnit.MINUTES)
+ *     .maxInFlight(512)
+ *     .overflow(OverflowPolicy.WAIT, 100, TimeUnit.MILLISECONDS)
+ *     .build();
+ * </pre>
+ *
+ * @author Jon Brisbin
+ */
+public class RiakSpec {
+
+	private final Map<String, Integer> bucketMaxInFlight = new HashMap<>();
+	private IRiakClient       riakClient;
+	private Dispatcher        dispatcher;
+	private RiakCache         cache;
+	private RiakMetrics       metrics;
+	private CodecRegistry     codecs;
+	private InetSocketAddress transportAddress;
+	private int               transportConnections;
+	private int               transportPipelineDepth;
+	private int            ioShards              = 1;
+	private int            ioBacklog             = Riak.DEFAULT_IO_BACKLOG;
+	private long           writeBehindWindow     = 0;
+	private int            writeBehindMaxPending = 0;
+	private int            maxInFlight           = 0;
+	private OverflowPolicy overflowPolicy        = OverflowPolicy.REJECT;
+	private long           overflowWaitNanos     = 0;
+	private long           timeoutNanos          = 0;
+	private double         hedgePercentile       = 0;
+	private long           hedgeMinDelayNanos    = 0;
+	private long           bucketIdleNanos       = 0;
+	private long           bucketRefreshNanos    = 0;
+	private int            resolutionCacheSize   = 0;
+	private boolean        writeBackResolutions  = false;
+	private int            retryMaxAttempts      = 0;
+	private long           retryBaseDelayNanos   = 0;
+	private long           retryMaxDelayNanos    = 0;
+	private boolean        retryWrites           = false;
+	private double         retryBudgetRatio      = 0.1;
+	private int            retryBudgetBurst      = 10;
+	private double         breakerFailureRate    = 0;
+	private int            breakerMinCalls       = 0;
+	private long           breakerWindowNanos    = 0;
+	private long           breakerOpenNanos      = 0;
+
+	/**
+	 * Use the given {@link IRiakClient}. If none is set, a default protocol buffers client is created.
+	 *
+	 * @param riakClient the client to use
+	 * @return {@literal this}
+	 */
+	public RiakSpec client(IRiakClient riakClient) {
+		this.riakClient = riakClient;
+		return this;
+	}
+
+	/**
+	 * Use the given {@link Dispatcher} to notify consumers and complete {@link reactor.core.Promise Promises}. If none is
+	 * set, the root dispatcher is used.
+	 *
+	 * @param dispatcher the dispatcher to use
+	 * @return {@literal this}
+	 */
+	public RiakSpec dispatcher(Dispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+		return this;
+	}
+
+	/**
+	 * Spread IO over the given number of single-threaded dispatchers. Operations on the same bucket and key always run on
+	 * the same shard.
+	 *
+	 * @param ioShards the number of IO shards, must be at least 1
+	 * @return {@literal this}
+	 */
+	public RiakSpec ioShards(int ioShards) {
+		if (ioShards < 1) {
+			throw new IllegalArgumentException("ioShards must be at least 1");
+		}
+		this.ioShards = ioShards;
+		return this;
+	}
+
+	/**
+	 * Set the size of each IO shard's queue.
+	 *
+	 * @param ioBacklog the per-shard queue depth, must be a power of 2
+	 * @return {@literal this}
+	 */
+	public RiakSpec ioBacklog(int ioBacklog) {
+		if (Integer.bitCount(ioBacklog) != 1) {
+			throw new IllegalArgumentException("ioBacklog must be a power of 2");
+		}
+		this.ioBacklog = ioBacklog;
+		return this;
+	}
+
+	/**
+	 * Read values through a bounded cache that holds up to {@code maxSize} values for no longer than {@code ttl}.
+	 *
+	 * @param maxSize the maximum number of values to cache
+	 * @param ttl     how long a value may be served from the cache
+	 * @param unit    the unit of {@code ttl}
+	 * @return {@literal this}
+	 * @see RiakCache
+	 */
+	public RiakSpec cache(int maxSize, long ttl, TimeUnit unit) {
+		return cache(new RiakCache(maxSize, ttl, unit));
+	}
+
+	/**
+	 * Read values through the given cache.
+	 *
+	 * @param cache the cache to use
+	 * @return {@literal this}
+	 */
+	public RiakSpec cache(RiakCache cache) {
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * Coalesce stores to the same key and write them out in batches every {@code window}. The {@link
+	 * reactor.core.Promise} returned by {@link Riak#store} completes once the coalesced write has finished. Use {@link
+	 * Riak#flush()} or {@link Riak#close()} to write out pending stores early.
+	 *
+	 * @param window     how long to collect stores before writing them out
+	 * @param unit       the unit of {@code window}
+	 * @param maxPending flush early once this many keys are pending, or {@literal 0} to only flush every {@code window}
+	 * @return {@literal this}
+	 */
+	public RiakSpec writeBehind(long window, TimeUnit unit, int maxPending) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("window must be positive");
+		}
+		this.writeBehindWindow = Math.max(1, unit.toMillis(window));
+		this.writeBehindMaxPending = maxPending;
+		return this;
+	}
+
+	/**
+	 * Allow at most {@code maxInFlight} operations to be submitted and not yet finished at any time. What happens to an
+	 * operation over the limit is decided by the {@link #overflow overflow policy}.
+	 *
+	 * @param maxInFlight the maximum number of operations in flight, or {@literal 0} for no limit
+	 * @return {@literal this}
+	 */
+	public RiakSpec maxInFlight(int maxInFlight) {
+		if (maxInFlight < 0) {
+			throw new IllegalArgumentException("maxInFlight must not be negative");
+		}
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	/**
+	 * Allow at most {@code maxInFlight} operations on the given bucket to be in flight at any time, in addition to the
+	 * overall limit.
+	 *
+	 * @param bucket      the bucket name
+	 * @param maxInFlight the maximum number of operations in flight on {@code bucket}
+	 * @return {@literal this}
+	 */
+	public RiakSpec maxInFlight(String bucket, int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		}
+		this.bucketMaxInFlight.put(bucket, maxInFlight);
+		return this;
+	}
+
+	/**
+	 * Set what happens to operations submitted while the in-flight limit is reached. Defaults to {@link
+	 * OverflowPolicy#REJECT}. Background work, like hedged fetches, sibling write-backs and multi-key fetches, is never
+	 * made to wait and fails right away under every policy.
+	 *
+	 * @param policy the overflow policy
+	 * @param wait   how long {@link OverflowPolicy#WAIT} and {@link OverflowPolicy#SHED} block a submitting thread
+	 * @param unit   the unit of {@code wait}
+	 * @return {@literal this}
+	 */
+	public RiakSpec overflow(OverflowPolicy policy, long wait, TimeUnit unit) {
+		this.overflowPolicy = policy;
+		this.overflowWaitNanos = unit.toNanos(wait);
+		return this;
+	}
+
+	/**
+	 * Fail the {@link reactor.core.Promise} of a fetch, store, delete, bucket fetch or single {@link Riak#send sent}
+	 * operation with a {@link RiakTimeoutException} if the operation hasn't finished within {@code timeout}. Fetches can
+	 * override this per call.
+	 *
+	 * @param timeout the default timeout, or {@literal 0} to wait indefinitely
+	 * @param unit    the unit of {@code timeout}
+	 * @return {@literal this}
+	 */
+	public RiakSpec timeout(long timeout, TimeUnit unit) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout must not be negative");
+		}
+		this.timeoutNanos = unit.toNanos(timeout);
+		return this;
+	}
+
+	/**
+	 * Hedge fetches that are slower than most: once a fetch has been executing for longer than the given percentile of
+	 * recent fetches, and at least {@code minDelay}, the same fetch is issued again on the next IO shard and whichever
+	 * succeeds first completes the {@link reactor.core.Promise}. The other result is ignored, and the fetch only fails
+	 * once both have failed.
+	 * <p>
+	 * A fetch is only hedged once it has started executing, so it never overtakes writes to the same key that were
+	 * submitted before it. Hedges count as background work against the {@link #maxInFlight(int) in-flight limit}, and
+	 * nothing is hedged with a single IO shard.
+	 *
+	 * @param percentile the latency percentile to hedge after, e.g. {@literal 95}
+	 * @param minDelay   the minimum time to wait before hedging
+	 * @param unit       the unit of {@code minDelay}
+	 * @return {@literal this}
+	 */
+	public RiakSpec hedgedReads(double percentile, long minDelay, TimeUnit unit) {
+		if (percentile <= 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be greater than 0 and at most 100");
+		}
+		this.hedgePercentile = percentile;
+		this.hedgeMinDelayNanos = unit.toNanos(minDelay);
+		return this;
+	}
+
+	/**
+	 * Report the queue wait and execution time of every operation, errors and sibling merges to the given metrics.
+	 *
+	 * @param metrics the metrics to report to
+	 * @return {@literal this}
+	 * @see JmxRiakMetrics
+	 */
+	public RiakSpec metrics(RiakMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	/**
+	 * Convert values with the {@link reactor.data.riak.codec.Codec Codecs} bound to their buckets, unless an operation is
+	 * passed a {@link com.basho.riak.client.convert.Converter} of its own.
+	 *
+	 * @param codecs the codecs to use
+	 * @return {@literal this}
+	 */
+	public RiakSpec codecs(CodecRegistry codecs) {
+		this.codecs = codecs;
+		return this;
+	}
+
+	/**
+	 * Set how long fetched buckets are cached. By default buckets are cached for the life of the {@link Riak} and their
+	 * properties are never fetched again.
+	 *
+	 * @param idleTimeout  evict buckets that haven't been fetched for this long, or {@literal 0} to never evict them
+	 * @param refreshAfter fetch the properties of buckets cached for longer than this again, in the background, or
+	 *                     {@literal 0} to never refresh them
+	 * @param unit         the unit of {@code idleTimeout} and {@code refreshAfter}
+	 * @return {@literal this}
+	 */
+	public RiakSpec bucketCache(long idleTimeout, long refreshAfter, TimeUnit unit) {
+		if (idleTimeout < 0 || refreshAfter < 0) {
+			throw new IllegalArgumentException("idleTimeout and refreshAfter must not be negative");
+		}
+		this.bucketIdleNanos = unit.toNanos(idleTimeout);
+		this.bucketRefreshNanos = unit.toNanos(refreshAfter);
+		return this;
+	}
+
+	/**
+	 * Resolve siblings more cheaply when a conflict resolver is given. A response with a single sibling is returned
+	 * without calling the resolver or publishing a {@link MergeEvent}, and the resolution of each key's siblings is
+	 * cached by vector clock, so fetching the same siblings again doesn't convert or resolve them again. Cached
+	 * resolutions are shared between callers and should be treated as immutable.
+	 *
+	 * @param cacheSize the maximum number of keys to remember resolutions for
+	 * @param writeBack whether to store the resolution of siblings found by a fetch back to Riak in the background, so
+	 *                  they stop accumulating
+	 * @return {@literal this}
+	 */
+	public RiakSpec siblingResolution(int cacheSize, boolean writeBack) {
+		if (cacheSize < 1) {
+			throw new IllegalArgumentException("cacheSize must be at least 1");
+		}
+		this.resolutionCacheSize = cacheSize;
+		this.writeBackResolutions = writeBack;
+		return this;
+	}
+
+	/**
+	 * Try single-key operations that failed to reach the cluster again, up to {@code maxAttempts} attempts in all. Attempt
+	 * {@code n} waits a random time of up to {@code baseDelay * 2^(n - 1)}, capped at {@code maxDelay}, and is then
+	 * queued on its IO shard again, so the shard isn't held up while it waits. Fetches and bucket fetches are retried;
+	 * stores and deletes only if {@link #retryWrites(boolean)} is set. Retries are limited by the {@link
+	 * #retryBudget(double, int) retry budget}.
+	 *
+	 * @param maxAttempts the maximum number of attempts, including the first
+	 * @param baseDelay   the maximum delay before the first retry
+	 * @param maxDelay    the maximum delay before any retry
+	 * @param unit        the unit of {@code baseDelay} and {@code maxDelay}
+	 * @return {@literal this}
+	 */
+	public RiakSpec retry(int maxAttempts, long baseDelay, long maxDelay, TimeUnit unit) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be at least 1");
+		}
+		if (baseDelay <= 0 || maxDelay < baseDelay) {
+			throw new IllegalArgumentException("baseDelay must be positive and maxDelay at least baseDelay");
+		}
+		this.retryMaxAttempts = maxAttempts;
+		this.retryBaseDelayNanos = unit.toNanos(baseDelay);
+		this.retryMaxDelayNanos = unit.toNanos(maxDelay);
+		return this;
+	}
+
+	/**
+	 * Also retry stores and deletes. A retried write is queued behind writes to the same key submitted after it, so it
+	 * may overwrite them.
+	 *
+	 * @param retryWrites whether to retry writes
+	 * @return {@literal this}
+	 */
+	public RiakSpec retryWrites(boolean retryWrites) {
+		this.retryWrites = retryWrites;
+		return this;
+	}
+
+	/**
+	 * Limit retries to a share of the calls made to the cluster, so they can't multiply the load on it. Every call earns
+	 * {@code ratio} of a retry, up to {@code maxBurst} saved retries. By default retries are limited to 10% of calls
+	 * with a burst of 10.
+	 *
+	 * @param ratio    the number of retries earned by each call, e.g. {@literal 0.1}
+	 * @param maxBurst the maximum number of retries that can be saved up
+	 * @return {@literal this}
+	 */
+	public RiakSpec retryBudget(double ratio, int maxBurst) {
+		if (ratio < 0 || maxBurst < 1) {
+			throw new IllegalArgumentException("ratio must not be negative and maxBurst must be at least 1");
+		}
+		this.retryBudgetRatio = ratio;
+		this.retryBudgetBurst = maxBurst;
+		return this;
+	}
+
+	/**
+	 * Fail operations fast while the cluster is failing. Once at least {@code minCalls} calls have been made within a
+	 * {@code window} and {@code failureRate} of them failed to reach the cluster, the circuit opens: new operations fail
+	 * with a {@link RiakCircuitOpenException}, as do queued operations when their turn comes. After {@code openFor} a few
+	 * probes are let through, and the circuit closes again once they succeed.
+	 *
+	 * @param failureRate the share of failed calls that opens the circuit, e.g. {@literal 0.5}
+	 * @param minCalls    the minimum number of calls in a window before the circuit can open
+	 * @param window      the length of the window calls and failures are counted over
+	 * @param openFor     how long the circuit stays open before probing
+	 * @param unit        the unit of {@code window} and {@code openFor}
+	 * @return {@literal this}
+	 * @see Riak#getCircuitState()
+	 */
+	public RiakSpec circuitBreaker(double failureRate, int minCalls, long window, long openFor, TimeUnit unit) {
+		if (failureRate <= 0 || failureRate > 1) {
+			throw new IllegalArgumentException("failureRate must be greater than 0 and at most 1");
+		}
+		if (minCalls < 1 || window <= 0 || openFor <= 0) {
+			throw new IllegalArgumentException("minCalls, window and openFor must be positive");
+		}
+		this.breakerFailureRate = failureRate;
+		this.breakerMinCalls = minCalls;
+		this.breakerWindowNanos = unit.toNanos(window);
+		this.breakerOpenNanos = unit.toNanos(openFor);
+		return this;
+	}
+
+	/**
+	 * Send single-key fetches, stores and deletes over a non-blocking {@link PbTransport} instead of running them on the
+	 * IO shards. A handful of connections and a single event loop thread then serve any number of concurrent operations.
+	 * Bucket properties, streaming, queries, MapReduce, stores with a {@link com.basho.riak.client.cap.Mutation} and
+	 * deletes with a {@link com.basho.riak.client.cap.Retrier} still go through the {@link IRiakClient}, as do
+	 * write-behind stores. Operations sent over the transport are not retried or hedged.
+	 *
+	 * @param address       the address of Riak's protocol buffers listener
+	 * @param connections   the number of connections to open
+	 * @param pipelineDepth the maximum number of requests sent over a connection before their responses have arrived
+	 * @return {@literal this}
+	 */
+	public RiakSpec transport(InetSocketAddress address, int connections, int pipelineDepth) {
+		if (connections < 1 || pipelineDepth < 1) {
+			throw new IllegalArgumentException("connections and pipelineDepth must be at least 1");
+		}
+		this.transportAddress = address;
+		this.transportConnections = connections;
+		this.transportPipelineDepth = pipelineDepth;
+		return this;
+	}
+
+	/**
+	 * Create the {@link Riak} described by this spec.
+	 *
+	 * @return a new {@link Riak}
+	 * @throws RiakException if no client was set and the default client can't be created
+	 */
+	public Riak build() throws RiakException {
+		IRiakClient client = (null != riakClient ? riakClient : RiakFactory.pbcClient());
+		Dispatcher d = (null != dispatcher ? dispatcher : rootDispatcher());
+		return new Riak(client, d, Riak.createIoDispatchers(ioShards, ioBacklog), this);
+	}
+
+	int getIoBacklog() {
+		return ioBacklog;
+	}
+
+	RiakCache getCache() {
+		return cache;
+	}
+
+	long getWriteBehindWindow() {
+		return writeBehindWindow;
+	}
+
+	int getWriteBehindMaxPending() {
+		return writeBehindMaxPending;
+	}
+
+	PbTransport getTransport(Riak riak) {
+		if (null == transportAddress) {
+			return null;
+		}
+		try {
+			return new PbTransport(riak, transportAddress, transportConnections, transportPipelineDepth).start();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not start the transport to " + transportAddress, e);
+		}
+	}
+
+	RetryPolicy getRetryPolicy() {
+		if (retryMaxAttempts < 2) {
+			return null;
+		}
+		return new RetryPolicy(retryMaxAttempts,
+													 retryBaseDelayNanos,
+													 retryMaxDelayNanos,
+													 retryWrites,
+													 retryBudgetRatio,
+													 retryBudgetBurst,
+													 metrics);
+	}
+
+	CircuitBreaker getCircuitBreaker() {
+		if (breakerFailureRate == 0) {
+			return null;
+		}
+		return new CircuitBreaker(breakerFailureRate, breakerMinCalls, breakerWindowNanos, breakerOpenNanos, metrics);
+	}
+
+	ResolutionCache getResolutionCache() {
+		return (resolutionCacheSize > 0 ? new ResolutionCache(resolutionCacheSize) : null);
+	}
+
+	boolean isWriteBackResolutions() {
+		return writeBackResolutions;
+	}
+
+	BucketCache getBucketCache() {
+		return new BucketCache(bucketIdleNanos, bucketRefreshNanos);
+	}
+
+	CodecRegistry getCodecs() {
+		return codecs;
+	}
+
+	RiakMetrics getMetrics() {
+		return metrics;
+	}
+
+	long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+
+	LatencyTracker getLatencyTracker() {
+		return (hedgePercentile > 0 ? new LatencyTracker(hedgePercentile, hedgeMinDelayNanos) : null);
+	}
+
+	InflightLimiter getInflightLimiter() {
+		if (maxInFlight == 0 && bucketMaxInFlight.isEmpty()) {
+			return null;
+		}
+		return new InflightLimiter(maxInFlight, bucketMaxInFlight, overflowPolicy, overflowWaitNanos);
+	}
+
+}
@@ -0,0 +1,74 @@
+package reactor.data.riak;
+
+import reactor.core.Composable;
+import reactor.core.Promise;
+import reactor.core.Reactor;
+
+/**
+ * A {@link Composable} fed by a long-running {@link Riak} operation, like a key listing or a bucket scan, that can be
+ * cancelled once the consumer has seen enough. Once every value has been emitted the expected accept count is set, so
+ * the stream can be reduced or awaited like any other {@link Composable}, and its {@link #completion() completion} is
+ * fulfilled.
+ *
+ * @author Jon Brisbin
+ */
+public class RiakStream<T> extends Composable<T> {
+
+	private final    Promise<Long> completion;
+	private volatile Throwable     error;
+	private volatile boolean       cancelled;
+
+	RiakStream(Reactor reactor) {
+		super(reactor);
+		this.completion = new Promise<>(reactor);
+	}
+
+	/**
+	 * Stop emitting values. Work already handed to Riak is allowed to finish, but its results are dropped.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Whether {@link #cancel()} has been called.
+	 *
+	 * @return {@literal true} if the stream was cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Get a {@link Promise} of the number of values emitted, fulfilled once the operation feeding this stream has
+	 * finished, without waiting for consumers to see those values. If the operation failed part way, like a key listing
+	 * that broke off, it's failed with the error instead, so a partial result can't be taken for a whole one.
+	 *
+	 * @return a {@link Promise} of the number of values emitted
+	 */
+	public Promise<Long> completion() {
+		return completion;
+	}
+
+	/**
+	 * Record that the operation feeding this stream failed. The stream still completes with whatever it emitted.
+	 */
+	void failed(Throwable error) {
+		if (null == this.error) {
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Set the expected accept count once the last value has been emitted and settle the completion.
+	 */
+	void complete(long emitted) {
+		setExpectedAcceptCount(emitted);
+		if (null != error) {
+			completion.set(error);
+		} else {
+			completion.set(emitted);
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.RiakException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Used to fail a {@link reactor.core.Promise} returned by {@link Riak} when the operation didn't finish within its
+ * timeout. The operation itself may still complete later, but its result is discarded.
+ *
+ * @author Jon Brisbin
+ * @see RiakSpec#timeout(long, TimeUnit)
+ */
+public class RiakTimeoutException extends RiakException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long timeoutMillis;
+
+	public RiakTimeoutException(long timeout, TimeUnit unit) {
+		super("Operation did not finish within " + unit.toMillis(timeout) + "ms");
+		this.timeoutMillis = unit.toMillis(timeout);
+	}
+
+	/**
+	 * Get the timeout that passed.
+	 *
+	 * @return the timeout in milliseconds
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+}
@@ -0,0 +1,102 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.bucket.Bucket;
+import com.basho.riak.client.cap.ConflictResolver;
+import com.basho.riak.client.cap.VClock;
+import com.basho.riak.client.convert.ConversionException;
+import com.basho.riak.client.convert.Converter;
+import reactor.fn.Function;
+
+import java.util.Collection;
+
+/**
+ * Resolves the siblings of a single fetch or store when a {@link ResolutionCache} is configured. It is both the
+ * operation's {@link Converter}, which lets it see the vector clock the siblings were fetched with, and its {@link
+ * ConflictResolver}:
+ * <ul>
+ * <li>A response with a single sibling is returned as is, without calling the resolver or publishing a {@link
+ * MergeEvent}.</li>
+ * <li>Siblings that were resolved before are not converted again, and the earlier resolution is returned.</li>
+ * <li>Otherwise the siblings are resolved, the resolution is cached and, when fetching, optionally written back to
+ * Riak so the siblings don't keep accumulating.</li>
+ * </ul>
+ * A new instance is created for every operation.
+ *
+ * @author Jon Brisbin
+ */
+class SiblingResolution<T> implements Converter<T>, ConflictResolver<T> {
+
+	private final Riak                       riak;
+	private final ResolutionCache            resolutions;
+	private final Bucket                     bucket;
+	private final String                     key;
+	private final BucketKey                  bk;
+	private final Class<?>                   type;
+	private final Function<Collection<T>, T> conflictResolver;
+	private final Converter<T>               converter;
+	private final Converter<T>               writeBackConverter;
+	private final boolean                    writeBack;
+	private       VClock                     vclock;
+	private       T                          resolved;
+
+	SiblingResolution(Riak riak,
+										ResolutionCache resolutions,
+										Bucket bucket,
+										String key,
+										Class<?> type,
+										Function<Collection<T>, T> conflictResolver,
+										Converter<T> converter,
+										boolean writeBack) {
+		this.riak = riak;
+		this.resolutions = resolutions;
+		this.bucket = bucket;
+		this.key = key;
+		this.bk = new BucketKey(bucket.getName(), key);
+		this.type = type;
+		this.conflictResolver = conflictResolver;
+		this.writeBackConverter = converter;
+		this.writeBack = writeBack;
+		this.converter = (null != converter ? converter : Riak.<T>defaultConverter(type, bucket.getName(), key));
+	}
+
+	@Override
+	public IRiakObject fromDomain(T domainObject, VClock vclock) throws ConversionException {
+		return converter.fromDomain(domainObject, vclock);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T toDomain(IRiakObject riakObject) throws ConversionException {
+		if (null == vclock && null != riakObject.getVClock()) {
+			vclock = riakObject.getVClock();
+			resolved = (T) resolutions.get(bk, vclock, type);
+		}
+		return (null != resolved ? resolved : converter.toDomain(riakObject));
+	}
+
+	@Override
+	public T resolve(Collection<T> siblings) {
+		if (siblings.isEmpty()) {
+			return null;
+		}
+		if (siblings.size() == 1) {
+			return siblings.iterator().next();
+		}
+		if (null != resolved) {
+			return resolved;
+		}
+
+		T result = conflictResolver.apply(siblings);
+		if (null != vclock) {
+			resolutions.put(bk, vclock, type, result);
+		}
+		riak.recordMerge(bucket, siblings);
+		riak.publishMerge(bucket, key, bk, siblings, result);
+		if (writeBack && null != result) {
+			riak.writeBack(bucket, key, result, conflictResolver, writeBackConverter);
+		}
+		return result;
+	}
+
+}
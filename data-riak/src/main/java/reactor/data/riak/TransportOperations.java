@@ -0,0 +1,144 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.bucket.Bucket;
+import com.basho.riak.client.builders.RiakObjectBuilder;
+import com.basho.riak.client.convert.Converter;
+import com.basho.riak.client.raw.RiakResponse;
+import reactor.core.Promise;
+import reactor.data.riak.pb.PbTransport;
+import reactor.fn.Function;
+
+import java.util.Collection;
+
+/**
+ * Runs {@link Riak}'s single-key operations over a {@link PbTransport} instead of blocking an IO shard. Values are
+ * converted, siblings resolved and events published the same way as on the IO shards, but on the thread that
+ * completes the transport's {@link Promise}.
+ * <p>
+ * A store is a single round trip: the value is written without a vector clock and Riak sends back the key's siblings.
+ * Only if there is more than one are they resolved and the resolution written back with the returned vector clock.
+ * {@link Riak} only sends a store to a bucket that keeps siblings here if a conflict resolver is given, since the blind
+ * write adds a sibling that nothing else could resolve.
+ * The returned {@link Promise Promises} don't give back in-flight permits; the caller does.
+ *
+ * @author Jon Brisbin
+ */
+class TransportOperations {
+
+	private final Riak        riak;
+	private final PbTransport transport;
+
+	TransportOperations(Riak riak, PbTransport transport) {
+		this.riak = riak;
+		this.transport = transport;
+	}
+
+	<T> Promise<T> fetch(Bucket bucket,
+											 String key,
+											 Class<T> asType,
+											 Function<Collection<T>, T> conflictResolver,
+											 Converter<T> converter) {
+		Promise<T> p = new Promise<>(riak);
+		long startedAt = System.nanoTime();
+
+		Promise<RiakResponse> op = transport.fetch(bucket.getName(), key);
+		op.onSuccess(resp -> {
+			riak.recordExecution(OperationType.FETCH, startedAt, startedAt);
+			try {
+				p.set(riak.resolveFetched(bucket, key, asType, conflictResolver, converter, resp));
+			} catch (RuntimeException e) {
+				riak.recordFailure(OperationType.FETCH, e);
+				p.set(e);
+			}
+		});
+		op.when(Throwable.class, e -> {
+			riak.recordFailedExecution(OperationType.FETCH, startedAt, startedAt, e);
+			p.set(e);
+		});
+		return p;
+	}
+
+	<T> Promise<T> store(Bucket bucket,
+											 String key,
+											 BucketKey bk,
+											 T value,
+											 Function<Collection<T>, T> conflictResolver,
+											 Converter<T> converter) {
+		Promise<T> p = new Promise<>(riak);
+		long startedAt = System.nanoTime();
+		Converter<T> conv;
+		Promise<RiakResponse> op;
+		try {
+			conv = riak.converterFor(bucket, key, value.getClass(), converter);
+			op = transport.store(conv.fromDomain(value, null), true);
+		} catch (Exception e) {
+			storeFailed(bk, startedAt, e, p);
+			return p;
+		}
+
+		op.onSuccess(resp -> {
+			T result;
+			try {
+				result = riak.resolveSiblings(bucket, key, value.getClass(), resp, conflictResolver, conv, false);
+			} catch (RuntimeException e) {
+				storeFailed(bk, startedAt, e, p);
+				return;
+			}
+			if (!resp.hasSiblings()) {
+				stored(bucket, resp, bk, (null != result ? result : value), startedAt, p);
+				return;
+			}
+			// write the resolution back so the siblings don't outlive this store
+			Promise<RiakResponse> writeBack;
+			try {
+				// not every converter sets the vector clock it is given
+				IRiakObject converted = conv.fromDomain(result, resp.getVclock());
+				IRiakObject resolved = RiakObjectBuilder.from(converted).withVClock(resp.getVclock()).build();
+				writeBack = transport.store(resolved, false);
+			} catch (RuntimeException e) {
+				storeFailed(bk, startedAt, e, p);
+				return;
+			}
+			writeBack.onSuccess(ignored -> stored(bucket, resp, bk, result, startedAt, p));
+			writeBack.when(Throwable.class, e -> storeFailed(bk, startedAt, e, p));
+		});
+		op.when(Throwable.class, e -> storeFailed(bk, startedAt, e, p));
+		return p;
+	}
+
+	Promise<Void> delete(Bucket bucket, String key, BucketKey bk) {
+		Promise<Void> p = new Promise<>(riak);
+		long startedAt = System.nanoTime();
+		Promise<Void> op = transport.delete(bucket.getName(), key);
+		op.onSuccess(v -> {
+			riak.recordExecution(OperationType.DELETE, startedAt, startedAt);
+			riak.publishDelete(bucket, key, bk);
+			p.set((Void) null);
+		});
+		op.when(Throwable.class, e -> {
+			riak.recordFailedExecution(OperationType.DELETE, startedAt, startedAt, e);
+			if (null != riak.cache()) {
+				riak.cache().abortWrite(bk);
+			}
+			p.set(e);
+		});
+		return p;
+	}
+
+	private <T> void stored(Bucket bucket, RiakResponse resp, BucketKey bk, T result, long startedAt, Promise<T> p) {
+		riak.recordExecution(OperationType.STORE, startedAt, startedAt);
+		String key = (resp.hasValue() ? resp.getRiakObjects()[0].getKey() : (null != bk ? bk.getKey() : null));
+		riak.publishStore(bucket, key, bk, result);
+		p.set(result);
+	}
+
+	private <T> void storeFailed(BucketKey bk, long startedAt, Throwable error, Promise<T> p) {
+		riak.recordFailedExecution(OperationType.STORE, startedAt, startedAt, error);
+		if (null != bk && null != riak.cache()) {
+			riak.cache().abortWrite(bk);
+		}
+		p.set(error);
+	}
+
+}
@@ -0,0 +1,198 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.RiakException;
+import com.basho.riak.client.bucket.Bucket;
+import com.basho.riak.client.cap.Mutation;
+import com.basho.riak.client.convert.Converter;
+import reactor.core.Promise;
+import reactor.fn.Function;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces stores to the same bucket and key and writes them out in batches. Within a flush window the last value
+ * stored for a key wins; {@link Mutation Mutations} stored after it are applied to it in order, and a key that only saw
+ * mutations has them applied to the value already in Riak. Each flush writes the pending keys with one task per IO
+ * shard. A coalesced store gives back its in-flight permit as soon as it's queued, so the number of keys waiting is
+ * bounded by {@code maxPending} rather than the in-flight limit. Every store began a write to the key in the {@link
+ * RiakCache}, and the write it's folded into ends each of them, so the key isn't cached until it has been written.
+ *
+ * @author Jon Brisbin
+ */
+class WriteBehind {
+
+	private final ConcurrentMap<BucketKey, PendingWrite<?>> pending = new ConcurrentHashMap<>();
+	private final Riak               riak;
+	private final int                maxPending;
+	private final ScheduledFuture<?> flushTask;
+	private volatile boolean closed;
+
+	WriteBehind(Riak riak, long windowMillis, int maxPending) {
+		this.riak = riak;
+		this.maxPending = maxPending;
+		this.flushTask = riak.timer().scheduleWithFixedDelay(
+				() -> flush(),
+				windowMillis,
+				windowMillis,
+				TimeUnit.MILLISECONDS
+		);
+	}
+
+	boolean isOpen() {
+		return !closed;
+	}
+
+	@SuppressWarnings("unchecked")
+	<T> Promise<T> store(Bucket bucket,
+											 BucketKey bk,
+											 T value,
+											 Function<Collection<T>, T> conflictResolver,
+											 Converter<T> converter,
+											 Mutation<T> mutation) {
+		Promise<T> p = new Promise<>(riak);
+		pending.compute(bk, (k, pw) -> {
+			PendingWrite<T> w = (PendingWrite<T>) pw;
+			if (null == w) {
+				w = new PendingWrite<>(bucket, bk);
+			}
+			w.add(value, conflictResolver, converter, mutation, p);
+			return w;
+		});
+
+		if (closed || (maxPending > 0 && pending.size() >= maxPending)) {
+			flush();
+		}
+		return p;
+	}
+
+	/**
+	 * Write out everything that's pending. A task is scheduled on every IO shard, so the returned {@link Promise} also
+	 * waits for writes drained by earlier flushes.
+	 */
+	synchronized Promise<Void> flush() {
+		Promise<Void> done = new Promise<>(riak);
+
+		int shards = riak.getIoShards();
+		List<List<PendingWrite<?>>> groups = new ArrayList<>(shards);
+		for (int i = 0; i < shards; i++) {
+			groups.add(new ArrayList<>());
+		}
+		for (BucketKey bk : pending.keySet()) {
+			PendingWrite<?> w = pending.remove(bk);
+			if (null != w) {
+				groups.get(riak.shard(bk.getBucket(), bk.getKey())).add(w);
+			}
+		}
+
+		AtomicInteger remaining = new AtomicInteger(shards);
+		long flushedAt = System.nanoTime();
+		for (int i = 0; i < shards; i++) {
+			List<PendingWrite<?>> group = groups.get(i);
+			riak.schedule(
+					i,
+					(Void v) -> {
+						for (PendingWrite<?> w : group) {
+							w.write(flushedAt);
+						}
+						if (remaining.decrementAndGet() == 0) {
+							done.set((Void) null);
+						}
+					}
+			);
+		}
+
+		return done;
+	}
+
+	Promise<Void> close() {
+		closed = true;
+		flushTask.cancel(false);
+		return flush();
+	}
+
+	private class PendingWrite<T> {
+		private final List<Mutation<T>>          mutations = new ArrayList<>();
+		private final List<Promise<T>>           promises  = new ArrayList<>(1);
+		private final Bucket                     bucket;
+		private final BucketKey                  bk;
+		private       T                          value;
+		private       boolean                    hasValue;
+		private       Function<Collection<T>, T> conflictResolver;
+		private       Converter<T>               converter;
+
+		private PendingWrite(Bucket bucket, BucketKey bk) {
+			this.bucket = bucket;
+			this.bk = bk;
+		}
+
+		private void add(T value,
+										 Function<Collection<T>, T> conflictResolver,
+										 Converter<T> converter,
+										 Mutation<T> mutation,
+										 Promise<T> p) {
+			if (null != mutation) {
+				mutations.add(mutation);
+				if (!hasValue) {
+					// the StoreObject still needs a value to pick its default converter from
+					this.value = value;
+				}
+			} else {
+				this.value = value;
+				this.hasValue = true;
+				mutations.clear();
+			}
+			if (null != conflictResolver) {
+				this.conflictResolver = conflictResolver;
+			}
+			if (null != converter) {
+				this.converter = converter;
+			}
+			promises.add(p);
+		}
+
+		private void write(long flushedAt) {
+			long startedAt = System.nanoTime();
+			Mutation<T> mutation = null;
+			if (!mutations.isEmpty()) {
+				mutation = original -> {
+					T current = (hasValue ? value : original);
+					for (Mutation<T> m : mutations) {
+						current = m.apply(current);
+					}
+					return current;
+				};
+			}
+
+			if (null != riak.cache()) {
+				// end the writes begun by the stores folded into this one; the last is ended by the store itself
+				for (int i = 1; i < promises.size(); i++) {
+					riak.cache().abortWrite(bk);
+				}
+			}
+			try {
+				T result = riak.doStore(bucket, bk.getKey(), bk, value, conflictResolver, converter, mutation);
+				riak.recordExecution(OperationType.STORE, flushedAt, startedAt);
+				for (Promise<T> p : promises) {
+					p.set(result);
+				}
+			} catch (RiakException | RuntimeException e) {
+				if (null != riak.cache()) {
+					riak.cache().abortWrite(bk);
+				}
+				riak.recordExecution(OperationType.STORE, flushedAt, startedAt);
+				riak.recordFailure(OperationType.STORE, e);
+				for (Promise<T> p : promises) {
+					p.set(e);
+				}
+			}
+		}
+	}
+
+}
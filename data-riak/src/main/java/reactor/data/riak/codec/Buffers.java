@@ -0,0 +1,127 @@
+package reactor.data.riak.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-thread buffers, {@link Deflater} and {@link Inflater} reused by {@link CodecConverter}, so encoding a value
+ * allocates nothing but the final {@code byte[]} handed to Riak. Buffers that grew beyond {@link #MAX_RETAINED} for a
+ * large value are replaced the next time they're used rather than kept for the life of the thread.
+ *
+ * @author Jon Brisbin
+ */
+final class Buffers {
+
+	static final int MAX_RETAINED = 1024 * 1024;
+
+	private static final ThreadLocal<Buffers> LOCAL = ThreadLocal.withInitial(Buffers::new);
+
+	private final Buffer   encoded  = new Buffer();
+	private final Buffer   scratch  = new Buffer();
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+
+	private Buffers() {
+	}
+
+	static Buffers get() {
+		return LOCAL.get();
+	}
+
+	/**
+	 * Get the emptied buffer to encode into.
+	 */
+	Buffer encoded() {
+		encoded.reset();
+		return encoded;
+	}
+
+	/**
+	 * Deflate the contents of {@code in} into a reused buffer.
+	 */
+	Buffer deflate(Buffer in) {
+		scratch.reset();
+		deflater.reset();
+		deflater.setInput(in.bytes, 0, in.count);
+		deflater.finish();
+		while (!deflater.finished()) {
+			scratch.ensureCapacity(scratch.count + 4096);
+			int n = deflater.deflate(scratch.bytes, scratch.count, scratch.bytes.length - scratch.count);
+			scratch.count += n;
+		}
+		return scratch;
+	}
+
+	/**
+	 * Inflate the given bytes into a reused buffer.
+	 */
+	Buffer inflate(byte[] bytes) throws IOException {
+		scratch.reset();
+		inflater.reset();
+		inflater.setInput(bytes);
+		try {
+			while (!inflater.finished()) {
+				scratch.ensureCapacity(scratch.count + Math.max(4096, bytes.length));
+				int n = inflater.inflate(scratch.bytes, scratch.count, scratch.bytes.length - scratch.count);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Truncated compressed value");
+				}
+				scratch.count += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		}
+		return scratch;
+	}
+
+	/**
+	 * A growable byte buffer that exposes its backing array.
+	 */
+	static final class Buffer extends OutputStream {
+		private byte[] bytes = new byte[4096];
+		private int    count;
+
+		byte[] bytes() {
+			return bytes;
+		}
+
+		int size() {
+			return count;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, count);
+		}
+
+		@Override
+		public void write(int b) {
+			ensureCapacity(count + 1);
+			bytes[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			ensureCapacity(count + len);
+			System.arraycopy(b, off, bytes, count, len);
+			count += len;
+		}
+
+		private void reset() {
+			if (bytes.length > MAX_RETAINED) {
+				bytes = new byte[4096];
+			}
+			count = 0;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length << 1));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package reactor.data.riak.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Turns values of one type into the bytes stored in Riak and back. Codecs are shared between threads and must be
+ * thread-safe.
+ *
+ * @param <T> the type of value
+ * @author Jon Brisbin
+ * @see CodecConverter
+ * @see CodecRegistry
+ */
+public interface Codec<T> {
+
+	/**
+	 * Get the type of value this codec handles.
+	 *
+	 * @return the value type
+	 */
+	Class<T> getType();
+
+	/**
+	 * Get the content type to store encoded values with.
+	 *
+	 * @return the content type
+	 */
+	String getContentType();
+
+	/**
+	 * Write the encoded value to the given stream. The stream is a reused buffer, so implementations should write to it
+	 * directly rather than building their own {@code byte[]}.
+	 *
+	 * @param value the value to encode
+	 * @param out   the stream to write to
+	 * @throws IOException if the value can't be encoded
+	 */
+	void encode(T value, OutputStream out) throws IOException;
+
+	/**
+	 * Read a value from a region of a byte array.
+	 *
+	 * @param bytes  the array holding the encoded value
+	 * @param offset where the encoded value starts
+	 * @param length the length of the encoded value
+	 * @return the decoded value
+	 * @throws IOException if the value can't be decoded
+	 */
+	T decode(byte[] bytes, int offset, int length) throws IOException;
+
+}
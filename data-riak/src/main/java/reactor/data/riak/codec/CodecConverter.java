@@ -0,0 +1,92 @@
+package reactor.data.riak.codec;
+
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.builders.RiakObjectBuilder;
+import com.basho.riak.client.cap.VClock;
+import com.basho.riak.client.convert.ConversionException;
+import com.basho.riak.client.convert.Converter;
+
+import java.io.IOException;
+
+/**
+ * Adapts a {@link Codec} to the {@link Converter} riak-client stores and fetches values with. Values are encoded into
+ * a reused per-thread buffer and, if they're larger than the compression threshold and deflating them makes them
+ * smaller, stored deflated with a {@value #ENCODING_META} user metadata entry of {@value #DEFLATE}. Values are read
+ * either way, so the threshold can be changed without rewriting existing data.
+ * <p>
+ * Unlike riak-client's own JSON converter, this doesn't look at {@code @RiakKey}, {@code @RiakIndex} or {@code
+ * @RiakUsermeta} annotations on the value.
+ *
+ * @param <T> the type of value
+ * @author Jon Brisbin
+ */
+public class CodecConverter<T> implements Converter<T> {
+
+	public static final String ENCODING_META = "codec-encoding";
+	public static final String DEFLATE       = "deflate";
+
+	private final Codec<T> codec;
+	private final String   bucket;
+	private final String   key;
+	private final int      compressAbove;
+
+	/**
+	 * Create a converter for a single bucket and key.
+	 *
+	 * @param codec         the codec to encode and decode values with
+	 * @param bucket        the bucket the value is stored in
+	 * @param key           the key the value is stored under, or {@literal null} to let Riak generate one
+	 * @param compressAbove deflate values larger than this many bytes, or {@literal 0} to never compress
+	 */
+	public CodecConverter(Codec<T> codec, String bucket, String key, int compressAbove) {
+		this.codec = codec;
+		this.bucket = bucket;
+		this.key = key;
+		this.compressAbove = compressAbove;
+	}
+
+	@Override
+	public IRiakObject fromDomain(T domainObject, VClock vclock) throws ConversionException {
+		Buffers buffers = Buffers.get();
+		Buffers.Buffer encoded = buffers.encoded();
+		try {
+			codec.encode(domainObject, encoded);
+		} catch (IOException e) {
+			throw new ConversionException(e);
+		}
+
+		RiakObjectBuilder builder = RiakObjectBuilder.newBuilder(bucket, key)
+																								 .withContentType(codec.getContentType())
+																								 .withVClock(vclock);
+		if (compressAbove > 0 && encoded.size() > compressAbove) {
+			Buffers.Buffer deflated = buffers.deflate(encoded);
+			if (deflated.size() < encoded.size()) {
+				return builder.withValue(deflated.toByteArray())
+											.addUsermeta(ENCODING_META, DEFLATE)
+											.build();
+			}
+		}
+		return builder.withValue(encoded.toByteArray()).build();
+	}
+
+	@Override
+	public T toDomain(IRiakObject riakObject) throws ConversionException {
+		if (null == riakObject) {
+			return null;
+		}
+		byte[] value = riakObject.getValue();
+		if (null == value || value.length == 0) {
+			return null;
+		}
+		try {
+			if (DEFLATE.equals(riakObject.getUsermeta(ENCODING_META))) {
+				Buffers.Buffer inflated = Buffers.get().inflate(value);
+				return codec.decode(inflated.bytes(), 0, inflated.size());
+			}
+			return codec.decode(value, 0, value.length);
+		} catch (IOException e) {
+			throw new ConversionException(e);
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package reactor.data.riak.codec;
+
+import com.basho.riak.client.convert.Converter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Binds {@link Codec Codecs} to buckets, so values stored in and fetched from a bucket go through its codec without a
+ * {@link Converter} being passed on every call.
+ * <p>
+ * <pre>
+ * CodecRegistry codecs = new CodecRegistry()
+ *     .register("users", JacksonCodec.smile(User.class))
+ *     .compressAbove(4096);
+ * Riak riak = new RiakSpec().codecs(codecs).build();
+ * </pre>
+ *
+ * @author Jon Brisbin
+ */
+public class CodecRegistry {
+
+	private final ConcurrentMap<String, Codec<?>> codecs = new ConcurrentHashMap<>();
+	private volatile Codec<?> defaultCodec;
+	private volatile int      compressAbove;
+
+	/**
+	 * Use the given codec for values in the named bucket.
+	 *
+	 * @param bucket the bucket name
+	 * @param codec  the codec to use
+	 * @return {@literal this}
+	 */
+	public CodecRegistry register(String bucket, Codec<?> codec) {
+		codecs.put(bucket, codec);
+		return this;
+	}
+
+	/**
+	 * Use the given codec for values in buckets that have no codec of their own.
+	 *
+	 * @param codec the codec to use
+	 * @return {@literal this}
+	 */
+	public CodecRegistry registerDefault(Codec<?> codec) {
+		this.defaultCodec = codec;
+		return this;
+	}
+
+	/**
+	 * Deflate encoded values larger than the given size.
+	 *
+	 * @param bytes the size in bytes above which values are compressed, or {@literal 0} to never compress
+	 * @return {@literal this}
+	 */
+	public CodecRegistry compressAbove(int bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("bytes must not be negative");
+		}
+		this.compressAbove = bytes;
+		return this;
+	}
+
+	/**
+	 * Get the codec bound to the named bucket.
+	 *
+	 * @param bucket the bucket name
+	 * @return the codec or {@literal null} if there is none
+	 */
+	public Codec<?> get(String bucket) {
+		Codec<?> codec = codecs.get(bucket);
+		return (null != codec ? codec : defaultCodec);
+	}
+
+	/**
+	 * Get a {@link Converter} for a value of the given type in the named bucket.
+	 *
+	 * @param bucket the bucket name
+	 * @param key    the key, or {@literal null} if Riak generates it
+	 * @param type   the type of value being stored or fetched
+	 * @param <T>    the type of value
+	 * @return a converter or {@literal null} if the bucket has no codec for values of {@code type}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Converter<T> converterFor(String bucket, String key, Class<?> type) {
+		Codec<?> codec = get(bucket);
+		if (null == codec || !(type.isAssignableFrom(codec.getType()) || codec.getType().isAssignableFrom(type))) {
+			return null;
+		}
+		return new CodecConverter<>((Codec<T>) codec, bucket, key, compressAbove);
+	}
+
+}
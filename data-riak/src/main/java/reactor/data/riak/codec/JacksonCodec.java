@@ -0,0 +1,86 @@
+package reactor.data.riak.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link Codec} that streams values to and from JSON, or its binary equivalent Smile, with Jackson. The reader and
+ * writer for the value type are resolved once, when the codec is created, instead of on every call.
+ * <p>
+ * Smile needs {@code jackson-dataformat-smile} on the classpath.
+ *
+ * @param <T> the type of value
+ * @author Jon Brisbin
+ */
+public class JacksonCodec<T> implements Codec<T> {
+
+	public static final String JSON_CONTENT_TYPE  = "application/json";
+	public static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+
+	private final Class<T>     type;
+	private final String       contentType;
+	private final ObjectReader reader;
+	private final ObjectWriter writer;
+
+	/**
+	 * Create a codec for the given type that uses the given {@link ObjectMapper}.
+	 *
+	 * @param type        the type of value
+	 * @param mapper      the mapper to read and write values with
+	 * @param contentType the content type to store encoded values with
+	 */
+	public JacksonCodec(Class<T> type, ObjectMapper mapper, String contentType) {
+		this.type = type;
+		this.contentType = contentType;
+		this.reader = mapper.reader(type);
+		this.writer = mapper.writerWithType(type);
+	}
+
+	/**
+	 * Create a codec that stores values as JSON.
+	 *
+	 * @param type the type of value
+	 * @param <T>  the type of value
+	 * @return a new codec
+	 */
+	public static <T> JacksonCodec<T> json(Class<T> type) {
+		return new JacksonCodec<>(type, new ObjectMapper(), JSON_CONTENT_TYPE);
+	}
+
+	/**
+	 * Create a codec that stores values as Smile, a binary JSON format that is more compact and quicker to parse.
+	 *
+	 * @param type the type of value
+	 * @param <T>  the type of value
+	 * @return a new codec
+	 */
+	public static <T> JacksonCodec<T> smile(Class<T> type) {
+		return new JacksonCodec<>(type, new ObjectMapper(new SmileFactory()), SMILE_CONTENT_TYPE);
+	}
+
+	@Override
+	public Class<T> getType() {
+		return type;
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public void encode(T value, OutputStream out) throws IOException {
+		writer.writeValue(out, value);
+	}
+
+	@Override
+	public T decode(byte[] bytes, int offset, int length) throws IOException {
+		return reader.readValue(bytes, offset, length);
+	}
+
+}
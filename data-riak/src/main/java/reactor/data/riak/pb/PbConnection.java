@@ -0,0 +1,197 @@
+package reactor.data.riak.pb;
+
+import com.basho.riak.client.RiakRetryFailedException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * One connection of a {@link PbTransport}. Only ever touched by the transport's event loop. Requests are written in the
+ * order they were submitted and, since Riak answers the requests on a connection in order, each response completes the
+ * oldest request that is still waiting for one. Up to {@code pipelineDepth} requests are sent before their responses
+ * have arrived.
+ *
+ * @author Jon Brisbin
+ */
+class PbConnection {
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_FRAME_SIZE   = 64 * 1024 * 1024;
+
+	private final Queue<PbRequest<?>> outbound = new ArrayDeque<>();
+	private final Queue<PbRequest<?>> awaiting = new ArrayDeque<>();
+	private final InetSocketAddress address;
+	private final int               pipelineDepth;
+	private final long              reconnectDelayNanos;
+	private SocketChannel channel;
+	private SelectionKey  key;
+	private ByteBuffer    readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	private PbRequest<?>  writing;
+	private long          reconnectAt;
+
+	PbConnection(InetSocketAddress address, int pipelineDepth, long reconnectDelayNanos) {
+		this.address = address;
+		this.pipelineDepth = pipelineDepth;
+		this.reconnectDelayNanos = reconnectDelayNanos;
+	}
+
+	/**
+	 * Queue a request, connecting first if necessary. A request for a connection that failed recently fails straight away.
+	 *
+	 * @return the number of requests that completed or failed
+	 */
+	int submit(Selector selector, PbRequest<?> request) {
+		if (null == channel) {
+			if (System.nanoTime() - reconnectAt < 0) {
+				request.fail(new RiakRetryFailedException(new IOException("Not connected to " + address)));
+				return 1;
+			}
+			try {
+				connect(selector);
+			} catch (IOException e) {
+				request.fail(new RiakRetryFailedException(e));
+				return 1 + fail(e);
+			}
+		}
+		outbound.add(request);
+		return (key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0 ? write() : 0);
+	}
+
+	/**
+	 * Handle the channel becoming ready.
+	 *
+	 * @return the number of requests that completed or failed
+	 */
+	int ready() {
+		try {
+			if (key.isConnectable()) {
+				channel.finishConnect();
+				key.interestOps(SelectionKey.OP_READ);
+			}
+			int done = 0;
+			if (key.isReadable()) {
+				done += read();
+			}
+			if (null != channel) {
+				done += write();
+			}
+			return done;
+		} catch (IOException e) {
+			return fail(e);
+		}
+	}
+
+	/**
+	 * Close the connection and fail every request on it.
+	 *
+	 * @return the number of requests that failed
+	 */
+	int fail(Throwable cause) {
+		if (null != channel) {
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+			}
+		}
+		channel = null;
+		key = null;
+		writing = null;
+		readBuffer.clear();
+		reconnectAt = System.nanoTime() + reconnectDelayNanos;
+
+		RiakRetryFailedException error = new RiakRetryFailedException(
+				(cause instanceof Exception ? (Exception) cause : new IOException(cause))
+		);
+		int failed = 0;
+		PbRequest<?> r;
+		while (null != (r = awaiting.poll())) {
+			r.fail(error);
+			failed++;
+		}
+		while (null != (r = outbound.poll())) {
+			r.fail(error);
+			failed++;
+		}
+		return failed;
+	}
+
+	private void connect(Selector selector) throws IOException {
+		channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+		if (channel.connect(address)) {
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+		} else {
+			key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+		}
+	}
+
+	private int write() {
+		try {
+			while (true) {
+				if (null == writing) {
+					if (awaiting.size() >= pipelineDepth || outbound.isEmpty()) {
+						break;
+					}
+					writing = outbound.poll();
+					awaiting.add(writing);
+				}
+				channel.write(writing.frame);
+				if (writing.frame.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return 0;
+				}
+				writing = null;
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			return 0;
+		} catch (IOException e) {
+			return fail(e);
+		}
+	}
+
+	private int read() throws IOException {
+		if (channel.read(readBuffer) < 0) {
+			throw new IOException("Connection to " + address + " closed by Riak");
+		}
+		readBuffer.flip();
+		int done = 0;
+		while (readBuffer.remaining() >= 4) {
+			int length = readBuffer.getInt(readBuffer.position());
+			if (length < 1 || length > MAX_FRAME_SIZE) {
+				throw new IOException("Invalid frame length " + length + " from " + address);
+			}
+			if (readBuffer.remaining() < 4 + length) {
+				if (4 + length > readBuffer.capacity()) {
+					ByteBuffer larger = ByteBuffer.allocate(4 + length);
+					larger.put(readBuffer);
+					readBuffer = larger;
+					return done;
+				}
+				break;
+			}
+			readBuffer.getInt();
+			byte code = readBuffer.get();
+			byte[] message = new byte[length - 1];
+			readBuffer.get(message);
+
+			PbRequest<?> r = awaiting.poll();
+			if (null == r) {
+				throw new IOException("Unexpected response from " + address);
+			}
+			r.complete(code, message);
+			done++;
+		}
+		readBuffer.compact();
+		return done;
+	}
+
+}
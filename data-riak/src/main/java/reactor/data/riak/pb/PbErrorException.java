@@ -0,0 +1,31 @@
+package reactor.data.riak.pb;
+
+import com.basho.riak.client.RiakException;
+
+/**
+ * Used to fail a {@link reactor.core.Promise} returned by a {@link PbTransport} when Riak answers a request with an
+ * error response.
+ *
+ * @author Jon Brisbin
+ */
+public class PbErrorException extends RiakException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int errorCode;
+
+	public PbErrorException(String message, int errorCode) {
+		super(message);
+		this.errorCode = errorCode;
+	}
+
+	/**
+	 * Get the error code Riak sent with the error.
+	 *
+	 * @return the error code
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+}
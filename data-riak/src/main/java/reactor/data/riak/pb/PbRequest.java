@@ -0,0 +1,183 @@
+package reactor.data.riak.pb;
+
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.RiakException;
+import com.basho.riak.client.builders.RiakObjectBuilder;
+import com.basho.riak.client.raw.RiakResponse;
+import com.basho.riak.protobuf.RiakKvPB;
+import com.basho.riak.protobuf.RiakPB;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import reactor.core.Promise;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A request sent over a {@link PbTransport}. The request is encoded into its frame when it is created, on the calling
+ * thread, so the event loop only has to write it out; the response is decoded on the event loop and completes the
+ * {@link Promise}.
+ * <p>
+ * A frame is a 4-byte big-endian length, the 1-byte message code and the protocol buffers encoded message. The length
+ * covers the code and the message.
+ *
+ * @author Jon Brisbin
+ */
+abstract class PbRequest<T> {
+
+	static final byte ERROR_RESP = 0;
+	static final byte PING_REQ   = 1;
+	static final byte PING_RESP  = 2;
+	static final byte GET_REQ    = 9;
+	static final byte GET_RESP   = 10;
+	static final byte PUT_REQ    = 11;
+	static final byte PUT_RESP   = 12;
+	static final byte DEL_REQ    = 13;
+	static final byte DEL_RESP   = 14;
+
+	final Promise<T> promise;
+	final ByteBuffer frame;
+	final int        connection;
+	private final byte responseCode;
+
+	private PbRequest(Promise<T> promise, int connection, byte requestCode, byte[] message, byte responseCode) {
+		this.promise = promise;
+		this.connection = connection;
+		this.responseCode = responseCode;
+		this.frame = ByteBuffer.allocate(5 + message.length);
+		frame.putInt(message.length + 1).put(requestCode).put(message).flip();
+	}
+
+	/**
+	 * Decode the message of a successful response.
+	 */
+	abstract T decode(byte[] message) throws InvalidProtocolBufferException;
+
+	/**
+	 * Complete the {@link Promise} with the response Riak sent.
+	 */
+	void complete(byte code, byte[] message) {
+		try {
+			if (code == responseCode) {
+				promise.set(decode(message));
+			} else if (code == ERROR_RESP) {
+				RiakPB.RpbErrorResp err = RiakPB.RpbErrorResp.parseFrom(message);
+				promise.set(new PbErrorException(err.getErrmsg().toStringUtf8(), err.getErrcode()));
+			} else {
+				promise.set(new RiakException("Expected a response with code " + responseCode + " but got " + code));
+			}
+		} catch (InvalidProtocolBufferException e) {
+			promise.set(new RiakException("Could not decode response", e));
+		}
+	}
+
+	void fail(Throwable error) {
+		promise.set(error);
+	}
+
+	static PbRequest<Void> ping(Promise<Void> promise, int connection) {
+		return new PbRequest<Void>(promise, connection, PING_REQ, new byte[0], PING_RESP) {
+			@Override
+			Void decode(byte[] message) {
+				return null;
+			}
+		};
+	}
+
+	static PbRequest<RiakResponse> get(Promise<RiakResponse> promise, int connection, String bucket, String key) {
+		byte[] message = RiakKvPB.RpbGetReq.newBuilder()
+																			 .setBucket(ByteString.copyFromUtf8(bucket))
+																			 .setKey(ByteString.copyFromUtf8(key))
+																			 .build()
+																			 .toByteArray();
+		return new PbRequest<RiakResponse>(promise, connection, GET_REQ, message, GET_RESP) {
+			@Override
+			RiakResponse decode(byte[] message) throws InvalidProtocolBufferException {
+				RiakKvPB.RpbGetResp resp = RiakKvPB.RpbGetResp.parseFrom(message);
+				return response(bucket, key, resp.getVclock(), resp.getContentList());
+			}
+		};
+	}
+
+	static PbRequest<RiakResponse> put(Promise<RiakResponse> promise,
+																		 int connection,
+																		 IRiakObject object,
+																		 boolean returnBody) {
+		RiakKvPB.RpbContent.Builder content = RiakKvPB.RpbContent.newBuilder()
+																													 .setValue(ByteString.copyFrom(object.getValue()));
+		if (null != object.getContentType()) {
+			content.setContentType(ByteString.copyFromUtf8(object.getContentType()));
+		}
+		for (Map.Entry<String, String> meta : object.userMetaEntries()) {
+			content.addUsermeta(RiakPB.RpbPair.newBuilder()
+																				.setKey(ByteString.copyFromUtf8(meta.getKey()))
+																				.setValue(ByteString.copyFromUtf8(meta.getValue())));
+		}
+		RiakKvPB.RpbPutReq.Builder req = RiakKvPB.RpbPutReq.newBuilder()
+																											 .setBucket(ByteString.copyFromUtf8(object.getBucket()))
+																											 .setContent(content)
+																											 .setReturnBody(returnBody);
+		if (null != object.getKey()) {
+			req.setKey(ByteString.copyFromUtf8(object.getKey()));
+		}
+		if (null != object.getVClock()) {
+			req.setVclock(ByteString.copyFrom(object.getVClock().getBytes()));
+		}
+		return new PbRequest<RiakResponse>(promise, connection, PUT_REQ, req.build().toByteArray(), PUT_RESP) {
+			@Override
+			RiakResponse decode(byte[] message) throws InvalidProtocolBufferException {
+				RiakKvPB.RpbPutResp resp = RiakKvPB.RpbPutResp.parseFrom(message);
+				String key = (resp.hasKey() ? resp.getKey().toStringUtf8() : object.getKey());
+				return response(object.getBucket(), key, resp.getVclock(), resp.getContentList());
+			}
+		};
+	}
+
+	static PbRequest<Void> delete(Promise<Void> promise, int connection, String bucket, String key) {
+		byte[] message = RiakKvPB.RpbDelReq.newBuilder()
+																			 .setBucket(ByteString.copyFromUtf8(bucket))
+																			 .setKey(ByteString.copyFromUtf8(key))
+																			 .build()
+																			 .toByteArray();
+		return new PbRequest<Void>(promise, connection, DEL_REQ, message, DEL_RESP) {
+			@Override
+			Void decode(byte[] message) {
+				return null;
+			}
+		};
+	}
+
+	private static RiakResponse response(String bucket,
+																			 String key,
+																			 ByteString vclock,
+																			 List<RiakKvPB.RpbContent> contents) {
+		byte[] vclockBytes = vclock.toByteArray();
+		if (contents.isEmpty()) {
+			return (vclockBytes.length > 0 ? new RiakResponse(vclockBytes) : RiakResponse.empty());
+		}
+		IRiakObject[] objects = new IRiakObject[contents.size()];
+		for (int i = 0; i < objects.length; i++) {
+			RiakKvPB.RpbContent c = contents.get(i);
+			RiakObjectBuilder b = RiakObjectBuilder.newBuilder(bucket, key)
+																						 .withValue(c.getValue().toByteArray())
+																						 .withVClock(vclockBytes)
+																						 .withDeleted(c.getDeleted());
+			if (c.hasContentType()) {
+				b.withContentType(c.getContentType().toStringUtf8());
+			}
+			if (c.hasVtag()) {
+				b.withVtag(c.getVtag().toStringUtf8());
+			}
+			if (c.hasLastMod()) {
+				b.withLastModified(c.getLastMod() * 1000L + c.getLastModUsecs() / 1000);
+			}
+			for (RiakPB.RpbPair meta : c.getUsermetaList()) {
+				b.addUsermeta(meta.getKey().toStringUtf8(), meta.getValue().toStringUtf8());
+			}
+			objects[i] = b.build();
+		}
+		return new RiakResponse(vclockBytes, objects);
+	}
+
+}
@@ -0,0 +1,241 @@
+package reactor.data.riak.pb;
+
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.RiakException;
+import com.basho.riak.client.RiakRetryFailedException;
+import com.basho.riak.client.raw.RiakResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Promise;
+import reactor.core.Reactor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking client for Riak's protocol buffers API. Requests from any number of threads are multiplexed over a
+ * small pool of connections by a single event loop thread, which also completes their {@link Promise Promises}, so
+ * thousands of operations can be in flight without a thread per operation.
+ * <p>
+ * Requests for the same bucket and key always go over the same connection, and Riak answers the requests on a
+ * connection in order, so operations on a key complete in the order they were submitted. Each connection pipelines up
+ * to {@code pipelineDepth} requests. Connections are opened on first use; when one fails, the requests on it fail with a
+ * {@link com.basho.riak.client.RiakRetryFailedException} and it is reopened by the first request after a short delay.
+ * <p>
+ * Requests carry no timeouts of their own; the {@link reactor.data.riak.Riak} using the transport applies its own.
+ *
+ * <pre>
+ * PbTransport transport = new PbTransport(reactor, new InetSocketAddress("localhost", 8087), 4, 16).start();
+ * transport.fetch("bucket", "key").onSuccess(response -&gt; ...);
+ * </pre>
+ *
+ * @author Jon Brisbin
+ */
+public class PbTransport {
+
+	private static final long RECONNECT_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Logger                   log            = LoggerFactory.getLogger(PbTransport.class);
+	private final Queue<PbRequest<?>>      submissions    = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean            wakeupPending  = new AtomicBoolean();
+	private final AtomicInteger            pending        = new AtomicInteger();
+	private final AtomicInteger            nextConnection = new AtomicInteger();
+	private final Reactor                  reactor;
+	private final InetSocketAddress        address;
+	private final PbConnection[]           connections;
+	private volatile Selector selector;
+	private volatile Thread   eventLoop;
+	private volatile boolean  closed;
+
+	/**
+	 * @param reactor       the {@link Reactor} the returned {@link Promise Promises} notify their consumers with
+	 * @param address       the address of Riak's protocol buffers listener
+	 * @param connections   the number of connections to open
+	 * @param pipelineDepth the maximum number of requests sent over a connection before their responses have arrived
+	 */
+	public PbTransport(Reactor reactor, InetSocketAddress address, int connections, int pipelineDepth) {
+		if (connections < 1 || pipelineDepth < 1) {
+			throw new IllegalArgumentException("connections and pipelineDepth must be at least 1");
+		}
+		this.reactor = reactor;
+		this.address = address;
+		this.connections = new PbConnection[connections];
+		for (int i = 0; i < connections; i++) {
+			this.connections[i] = new PbConnection(address, pipelineDepth, RECONNECT_DELAY_NANOS);
+		}
+	}
+
+	/**
+	 * Start the event loop. Connections are opened when they're first used.
+	 *
+	 * @return {@literal this}
+	 * @throws IOException if the selector can't be opened
+	 */
+	public synchronized PbTransport start() throws IOException {
+		if (null != eventLoop) {
+			return this;
+		}
+		selector = Selector.open();
+		Thread t = new Thread(this::run, "riak-pb-io");
+		t.setDaemon(true);
+		eventLoop = t;
+		t.start();
+		return this;
+	}
+
+	/**
+	 * Get the address this transport connects to.
+	 *
+	 * @return the address
+	 */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Get the number of requests that have been submitted but not completed yet.
+	 *
+	 * @return the number of pending requests
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * Check that Riak is reachable.
+	 *
+	 * @return a {@link Promise} that completes when Riak answers
+	 */
+	public Promise<Void> ping() {
+		Promise<Void> p = new Promise<>(reactor);
+		return submit(PbRequest.ping(p, (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length));
+	}
+
+	/**
+	 * Fetch every sibling of a key.
+	 *
+	 * @param bucket the bucket name
+	 * @param key    the key
+	 * @return a {@link Promise} of the response, which is empty if the key doesn't exist
+	 */
+	public Promise<RiakResponse> fetch(String bucket, String key) {
+		Promise<RiakResponse> p = new Promise<>(reactor);
+		return submit(PbRequest.get(p, connection(bucket, key), bucket, key));
+	}
+
+	/**
+	 * Store an object. The object's value, content type, user metadata and vector clock are sent. If the object has no
+	 * key Riak generates one, which is set on the objects in the response.
+	 *
+	 * @param object     the object to store
+	 * @param returnBody whether Riak should send back the siblings of the key after the store
+	 * @return a {@link Promise} of the response
+	 */
+	public Promise<RiakResponse> store(IRiakObject object, boolean returnBody) {
+		Promise<RiakResponse> p = new Promise<>(reactor);
+		int conn = (null != object.getKey()
+								? connection(object.getBucket(), object.getKey())
+								: (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length);
+		return submit(PbRequest.put(p, conn, object, returnBody));
+	}
+
+	/**
+	 * Delete a key.
+	 *
+	 * @param bucket the bucket name
+	 * @param key    the key
+	 * @return a {@link Promise} that completes once the key has been deleted
+	 */
+	public Promise<Void> delete(String bucket, String key) {
+		Promise<Void> p = new Promise<>(reactor);
+		return submit(PbRequest.delete(p, connection(bucket, key), bucket, key));
+	}
+
+	/**
+	 * Stop the event loop, close every connection and fail the requests that haven't completed.
+	 */
+	public void close() {
+		closed = true;
+		Selector s = selector;
+		if (null != s) {
+			s.wakeup();
+		}
+	}
+
+	private int connection(String bucket, String key) {
+		int h = 31 * bucket.hashCode() + key.hashCode();
+		return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % connections.length;
+	}
+
+	private <T> Promise<T> submit(PbRequest<T> request) {
+		if (closed || null == selector) {
+			request.fail(new RiakRetryFailedException(new IOException("Transport to " + address + " is not running")));
+			return request.promise;
+		}
+		pending.incrementAndGet();
+		submissions.add(request);
+		if (closed) {
+			// the event loop may have drained the submissions before this one was added, so fail it unless it got to it
+			if (submissions.remove(request)) {
+				request.fail(new RiakRetryFailedException(new IOException("Transport to " + address + " was closed")));
+				pending.decrementAndGet();
+			}
+			return request.promise;
+		}
+		// a single wakeup is enough until the event loop has drained the submissions
+		if (wakeupPending.compareAndSet(false, true)) {
+			selector.wakeup();
+		}
+		return request.promise;
+	}
+
+	private void run() {
+		Selector s = selector;
+		try {
+			while (!closed) {
+				s.select();
+				wakeupPending.set(false);
+
+				PbRequest<?> r;
+				while (null != (r = submissions.poll())) {
+					pending.addAndGet(-connections[r.connection].submit(s, r));
+				}
+
+				Iterator<SelectionKey> keys = s.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid()) {
+						pending.addAndGet(-((PbConnection) key.attachment()).ready());
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			log.error("Event loop for " + address + " failed", e);
+		} finally {
+			closed = true;
+			RiakException error = new RiakRetryFailedException(new IOException("Transport to " + address + " was closed"));
+			for (PbConnection conn : connections) {
+				pending.addAndGet(-conn.fail(error));
+			}
+			PbRequest<?> r;
+			while (null != (r = submissions.poll())) {
+				r.fail(error);
+				pending.decrementAndGet();
+			}
+			try {
+				s.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+}
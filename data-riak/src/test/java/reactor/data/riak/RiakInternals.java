@@ -0,0 +1,65 @@
+package reactor.data.riak;
+
+import com.basho.riak.client.bucket.Bucket;
+
+/**
+ * Gives benchmarks and tests outside {@code reactor.data.riak} access to the package-private parts of {@link Riak}
+ * they measure. Not part of the API.
+ *
+ * @author Jon Brisbin
+ */
+public final class RiakInternals {
+
+	private RiakInternals() {
+	}
+
+	/**
+	 * Publish the events of a finished store, as {@link Riak#store} does once the value has been written.
+	 */
+	public static void publishStore(Riak riak, Bucket bucket, String key, Object result) {
+		riak.publishStore(bucket, key, new BucketKey(bucket.getName(), key), result);
+	}
+
+	/**
+	 * Create a {@link BucketCache} like the one {@link Riak#fetchBucket(String)} serves cached buckets from.
+	 *
+	 * @param idleNanos    evict buckets that haven't been looked up for this long, or {@literal 0} to keep them forever
+	 * @param refreshNanos refresh bucket properties older than this, or {@literal 0} to never refresh them
+	 */
+	public static Buckets bucketCache(long idleNanos, long refreshNanos) {
+		return new Buckets(new BucketCache(idleNanos, refreshNanos));
+	}
+
+	/**
+	 * Publish the events of a finished delete, as {@link Riak#delete} does once the key has been deleted.
+	 */
+	public static void publishDelete(Riak riak, Bucket bucket, String key) {
+		riak.publishDelete(bucket, key, new BucketKey(bucket.getName(), key));
+	}
+
+	/**
+	 * A {@link BucketCache} that can be used outside {@code reactor.data.riak}.
+	 */
+	public static final class Buckets {
+		private final BucketCache cache;
+
+		private Buckets(BucketCache cache) {
+			this.cache = cache;
+		}
+
+		public void put(Bucket bucket) {
+			cache.put(bucket);
+		}
+
+		/**
+		 * Look up a bucket as {@link Riak#fetchBucket(String)} does.
+		 *
+		 * @return the bucket or {@literal null} if it isn't cached
+		 */
+		public Bucket get(String name) {
+			BucketCache.Entry e = cache.get(name);
+			return (null != e ? e.getBucket() : null);
+		}
+	}
+
+}
@@ -2,23 +2,47 @@ package reactor.data.riak;
 
 import com.basho.riak.client.IRiakObject;
 import com.basho.riak.client.RiakException;
+import com.basho.riak.client.RiakRetryFailedException;
 import com.basho.riak.client.bucket.Bucket;
+import com.basho.riak.client.builders.RiakObjectBuilder;
+import com.basho.riak.client.cap.Mutation;
+import com.basho.riak.client.convert.ConversionException;
 import com.basho.riak.client.operations.DeleteObject;
+import com.basho.riak.client.operations.RiakOperation;
 import com.basho.riak.client.operations.StoreObject;
+import com.basho.riak.client.query.indexes.IntIndex;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.Composable;
 import reactor.core.Promise;
+import reactor.data.riak.codec.Codec;
+import reactor.data.riak.codec.CodecConverter;
+import reactor.data.riak.codec.CodecRegistry;
+import reactor.data.riak.codec.JacksonCodec;
+import reactor.data.riak.test.InMemoryRiakClient;
+import reactor.data.riak.test.PbStubServer;
 import reactor.fn.Deferred;
 import reactor.fn.Event;
+import reactor.fn.Function;
+import reactor.fn.Tuple2;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
 import static reactor.Fn.U;
 
 /**
@@ -44,6 +68,70 @@ public class RiakTests {
 		return result;
 	}
 
+	/**
+	 * Build a plain text object, which is fetched back as the same {@link String}, as a {@link String} passed to {@link
+	 * Riak#store} would be.
+	 */
+	static IRiakObject text(String bucket, String key, String value) {
+		return RiakObjectBuilder.newBuilder(bucket, key).withContentType("text/plain").withValue(value).build();
+	}
+
+	static IRiakObject counter(String bucket, String key, int value) {
+		return RiakObjectBuilder.newBuilder(bucket, key)
+														.withContentType("application/json")
+														.withValue("{\"value\":" + value + "}")
+														.build();
+	}
+
+	/**
+	 * Build a client that counts fetches of bucket properties, failing them while {@code failing} is set.
+	 */
+	static InMemoryRiakClient bucketFetchCounting(AtomicInteger fetches, AtomicBoolean failing) {
+		return new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("fetchBucket".equals(method)) {
+					fetches.incrementAndGet();
+					if (failing.get()) {
+						throw new IOException("Injected failure");
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Store users {@code user0} to {@code user(n-1)} in the {@code "users"} bucket, indexed by an {@code age} ten times
+	 * their number.
+	 */
+	static Bucket indexedUsers(Riak riak, int n) throws InterruptedException {
+		Bucket b = riak.fetchBucket("users").await(1, TimeUnit.SECONDS);
+		for (int i = 0; i < n; i++) {
+			IRiakObject user = RiakObjectBuilder.newBuilder("users", "user" + i)
+																					.withContentType("text/plain")
+																					.withValue("User " + i)
+																					.addIndex("age", i * 10)
+																					.build();
+			riak.store(b, "user" + i, user, null, null, null).await(1, TimeUnit.SECONDS);
+		}
+		return b;
+	}
+
+	static Counter highest(Collection<Counter> siblings) {
+		Counter highest = null;
+		for (Counter c : siblings) {
+			if (null == highest || c.value > highest.value) {
+				highest = c;
+			}
+		}
+		return highest;
+	}
+
+	static Mutation<IRiakObject> append(String suffix) {
+		return original -> RiakObjectBuilder.from(original).withValue(original.getValueAsString() + suffix).build();
+	}
+
 	private void startTimer() {
 		start = System.currentTimeMillis();
 	}
@@ -72,6 +160,74 @@ public class RiakTests {
 		assertThat("latch was counted down", latch.getCount(), is(0L));
 	}
 
+	@Test
+	public void evictsIdleBuckets() throws InterruptedException {
+		AtomicInteger fetches = new AtomicInteger();
+		Riak idle = new RiakSpec()
+				.client(bucketFetchCounting(fetches, new AtomicBoolean()).getClient())
+				.bucketCache(50, 0, TimeUnit.MILLISECONDS)
+				.build();
+
+		Bucket b1 = idle.fetchBucket("idle").await(1, TimeUnit.SECONDS);
+		Bucket b2 = idle.fetchBucket("idle").await(1, TimeUnit.SECONDS);
+		assertThat("the bucket was cached", b2, is(sameInstance(b1)));
+		assertThat("the bucket was fetched once", fetches.get(), is(1));
+
+		Thread.sleep(200);
+		Bucket b3 = idle.fetchBucket("idle").await(1, TimeUnit.SECONDS);
+		assertThat("the idle bucket was evicted and fetched again", b3, is(not(sameInstance(b1))));
+		assertThat("the idle bucket was evicted and fetched again", fetches.get(), is(2));
+	}
+
+	@Test
+	public void refreshesBucketsInTheBackground() throws InterruptedException {
+		AtomicInteger fetches = new AtomicInteger();
+		Riak refreshing = new RiakSpec()
+				.client(bucketFetchCounting(fetches, new AtomicBoolean()).getClient())
+				.bucketCache(0, 50, TimeUnit.MILLISECONDS)
+				.build();
+
+		Bucket b1 = refreshing.fetchBucket("refreshed").await(1, TimeUnit.SECONDS);
+		Thread.sleep(100);
+		Bucket b2 = refreshing.fetchBucket("refreshed").await(1, TimeUnit.SECONDS);
+		assertThat("the stale bucket was served while it was refreshed", b2, is(sameInstance(b1)));
+
+		Bucket b3 = b2;
+		long deadline = System.currentTimeMillis() + 1000;
+		while (b3 == b1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			b3 = refreshing.fetchBucket("refreshed").await(1, TimeUnit.SECONDS);
+		}
+		assertThat("the refreshed bucket replaced the stale one", b3, is(not(sameInstance(b1))));
+		assertThat("the bucket was fetched again", fetches.get(), is(2));
+	}
+
+	@Test
+	public void failedRefreshKeepsTheCachedBucket() throws InterruptedException {
+		AtomicInteger fetches = new AtomicInteger();
+		AtomicBoolean failing = new AtomicBoolean();
+		Riak refreshing = new RiakSpec()
+				.client(bucketFetchCounting(fetches, failing).getClient())
+				.bucketCache(0, 50, TimeUnit.MILLISECONDS)
+				.build();
+
+		Bucket b1 = refreshing.fetchBucket("kept").await(1, TimeUnit.SECONDS);
+		failing.set(true);
+		Thread.sleep(100);
+		Bucket b2 = refreshing.fetchBucket("kept").await(1, TimeUnit.SECONDS);
+
+		long deadline = System.currentTimeMillis() + 1000;
+		while (fetches.get() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		Bucket b3 = refreshing.fetchBucket("kept").await(1, TimeUnit.SECONDS);
+
+		assertThat("the refresh was attempted", fetches.get(), greaterThanOrEqualTo(2));
+		assertThat("the cached bucket was served during the refresh", b2, is(sameInstance(b1)));
+		assertThat("the cached bucket was kept after the refresh failed", b3, is(sameInstance(b1)));
+	}
+
 	@Test
 	public void canSendOperationsToRiak() throws InterruptedException {
 		Promise<Bucket> p = riak.fetchBucket("test");
@@ -137,6 +293,868 @@ public class RiakTests {
 		assertThat("latch is counted down", latch.getCount(), is(0L));
 	}
 
+	@Test
+	public void canFetchManyKeysAtOnce() throws InterruptedException {
+		Bucket b = riak.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		assertThat("bucket was retrieved", b, is(notNullValue()));
+
+		riak.store(b, "test1", text("test", "test1", "Hello World!"), null, null, null).await(1, TimeUnit.SECONDS);
+		riak.store(b, "test2", text("test", "test2", "Hello World!"), null, null, null).await(1, TimeUnit.SECONDS);
+		riak.delete(b, "missing", null).await(1, TimeUnit.SECONDS);
+
+		Map<String, String> values = riak.fetchAll(b, Arrays.asList("test2", "missing", "test1"), String.class, null, null)
+																		 .await(5, TimeUnit.SECONDS);
+
+		assertThat("all keys were fetched in order", values.keySet(), contains("test2", "missing", "test1"));
+		assertThat("value was fetched", values.get("test1"), is("Hello World!"));
+		assertThat("missing key has no value", values.get("missing"), is(nullValue()));
+	}
+
+	@Test
+	public void fetchesManyKeysInParallelOnOneShard() throws InterruptedException {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger mostActive = new AtomicInteger();
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				if (!"fetch".equals(method)) {
+					super.beforeCall(method);
+					return;
+				}
+				int a = active.incrementAndGet();
+				mostActive.accumulateAndGet(a, Math::max);
+				try {
+					super.beforeCall(method);
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		};
+		Riak parallel = new RiakSpec().client(client.getClient()).build();
+		Bucket b = parallel.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		client.withLatency(50, TimeUnit.MILLISECONDS);
+
+		List<String> keys = Arrays.asList("k1", "k2", "k3", "k4", "k5", "k6", "k7", "k8");
+		Map<String, Counter> values = parallel.fetchAll(b, keys, Counter.class, null, null, 4).await(5, TimeUnit.SECONDS);
+
+		assertThat("every key was fetched", values.keySet(), contains(keys.toArray()));
+		assertThat("fetches ran in parallel on a single IO shard", mostActive.get(), greaterThan(1));
+	}
+
+	@Test
+	public void failsFetchAllWithTheKeysThatFailed() throws InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak batching = new RiakSpec().client(client.getClient()).build();
+		Bucket b = batching.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		batching.store(b, "counted", counter("test", "counted", 1), null, null, null).await(1, TimeUnit.SECONDS);
+		batching.store(b, "broken", text("test", "broken", "not a counter"), null, null, null).await(1, TimeUnit.SECONDS);
+
+		AtomicReference<RiakFetchAllException> failed = new AtomicReference<>();
+		CountDownLatch latch = new CountDownLatch(1);
+		batching.fetchAll(b, Arrays.asList("counted", "missing", "broken"), Counter.class, null, null)
+						.when(RiakFetchAllException.class, e -> {
+							failed.set(e);
+							latch.countDown();
+						});
+		latch.await(5, TimeUnit.SECONDS);
+
+		RiakFetchAllException e = failed.get();
+		assertThat("the batch failed", e, is(notNullValue()));
+		Map<String, Counter> values = e.getValues();
+		assertThat("the other keys were fetched", values.keySet(), contains("counted", "missing"));
+		assertThat("the value was fetched", values.get("counted").value, is(1));
+		assertThat("the missing key has no value", values.get("missing"), is(nullValue()));
+		assertThat("the failed key is reported", e.getFailures().keySet(), contains("broken"));
+	}
+
+	@Test
+	public void completesStreamOfManyKeysOnceEveryKeyIsFetched() throws InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak streaming = new RiakSpec().client(client.getClient()).build();
+		Bucket b = streaming.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		streaming.store(b, "test1", text("test", "test1", "Hello World!"), null, null, null).await(1, TimeUnit.SECONDS);
+		streaming.store(b, "test2", text("test", "test2", "Hello World!"), null, null, null).await(1, TimeUnit.SECONDS);
+
+		List<String> keys = new CopyOnWriteArrayList<>();
+		Composable<Tuple2<String, String>> values = streaming.fetchStream(b,
+																																	 Arrays.asList("test1", "missing", "test2", "test1"),
+																																	 String.class,
+																																	 null,
+																																	 null,
+																																	 2);
+		values.consume(kv -> keys.add(kv.getT1()));
+		values.await(5, TimeUnit.SECONDS);
+
+		assertThat("every distinct key was emitted once before the stream completed",
+							 keys,
+							 containsInAnyOrder("test1", "missing", "test2"));
+	}
+
+	@Test
+	public void sharesConcurrentFetchesOfAKey() throws InterruptedException, RiakException {
+		AtomicInteger fetches = new AtomicInteger();
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("fetch".equals(method)) {
+					fetches.incrementAndGet();
+				}
+			}
+		};
+		Riak sharing = new RiakSpec().client(client.getClient()).build();
+		Bucket b = sharing.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		sharing.store(b, "shared", text("test", "shared", "first"), null, null, null).await(1, TimeUnit.SECONDS);
+		client.withLatency(100, TimeUnit.MILLISECONDS);
+
+		int before = fetches.get();
+		Promise<String> p1 = sharing.fetch(b, "shared", String.class, null, null);
+		Promise<String> p2 = sharing.fetch(b, "shared", String.class, null, null);
+		assertThat("the fetches share a promise", p2, is(sameInstance(p1)));
+		assertThat("value was fetched", p2.await(1, TimeUnit.SECONDS), is("first"));
+		assertThat("the fetches shared one operation", fetches.get() - before, is(1));
+
+		Promise<String> p3 = sharing.fetch(b, "shared", String.class, null, null);
+		sharing.store(b, "shared", text("test", "shared", "second"), null, null, null);
+		Promise<String> p4 = sharing.fetch(b, "shared", String.class, null, null);
+		assertThat("the store ended the sharing", p4, is(not(sameInstance(p3))));
+		assertThat("the fetch before the store saw the old value", p3.await(1, TimeUnit.SECONDS), is("first"));
+		assertThat("the fetch after the store saw the new value", p4.await(1, TimeUnit.SECONDS), is("second"));
+	}
+
+	@Test
+	public void canReadThroughCache() throws InterruptedException, RiakException {
+		Riak cached = new RiakSpec().cache(100, 1, TimeUnit.MINUTES).build();
+		Bucket b = cached.fetchBucket("test").await(1, TimeUnit.SECONDS);
+
+		cached.store(b, "cached", "Hello World!", null, null, null).await(1, TimeUnit.SECONDS);
+		String s1 = cached.fetch(b, "cached", String.class, null, null).await(1, TimeUnit.SECONDS);
+		String s2 = cached.fetch(b, "cached", String.class, null, null).await(1, TimeUnit.SECONDS);
+
+		assertThat("values are the same", s2, is(s1));
+		assertThat("second fetch was a hit", cached.getCache().getHits(), is(1L));
+
+		cached.delete(b, "cached", null).await(1, TimeUnit.SECONDS);
+		assertThat("delete invalidated the cache", cached.getCache().getSize(), is(0));
+	}
+
+	@Test
+	public void rejectsOperationsOverTheInFlightLimit() throws InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak limited = new RiakSpec().client(client.getClient()).maxInFlight(1).build();
+		Bucket b = limited.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		client.withLatency(500, TimeUnit.MILLISECONDS);
+
+		CountDownLatch latch = new CountDownLatch(1);
+		Promise<String> first = limited.store(b, "limited", "Hello World!", null, null, null);
+		limited.store(b, "limited", "Hello World!", null, null, null)
+					 .when(RiakOverloadedException.class, e -> latch.countDown());
+
+		latch.await(1, TimeUnit.SECONDS);
+		assertThat("second store was rejected", latch.getCount(), is(0L));
+
+		first.await(5, TimeUnit.SECONDS);
+		assertThat("permit was given back", limited.getInFlight(), is(0));
+	}
+
+	@Test
+	public void givesBackPermitWhenAnOperationThrows() throws InterruptedException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak limited = new RiakSpec().client(client.getClient()).maxInFlight(1).build();
+		RiakOperation<String> failing = () -> {
+			throw new IllegalStateException("Injected failure");
+		};
+
+		CountDownLatch failed = new CountDownLatch(1);
+		limited.send(failing).when(IllegalStateException.class, e -> failed.countDown());
+		failed.await(1, TimeUnit.SECONDS);
+		assertThat("the operation failed", failed.getCount(), is(0L));
+		assertThat("permit was given back", limited.getInFlight(), is(0));
+
+		RiakOperation<String> succeeding = () -> "Hello World!";
+		assertThat("the next operation was admitted",
+							 limited.send(succeeding).await(1, TimeUnit.SECONDS),
+							 is("Hello World!"));
+	}
+
+	@Test
+	public void failsFetchesThatTimeOut() throws InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak slow = new RiakSpec().client(client.getClient()).build();
+		Bucket b = slow.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		client.withLatency(1, TimeUnit.SECONDS);
+
+		CountDownLatch latch = new CountDownLatch(1);
+		slow.fetch(b, "slow", String.class, null, null, 100, TimeUnit.MILLISECONDS)
+				.when(RiakTimeoutException.class, e -> latch.countDown());
+
+		latch.await(500, TimeUnit.MILLISECONDS);
+		assertThat("fetch timed out", latch.getCount(), is(0L));
+	}
+
+	@Test
+	public void failedHedgeLeavesFetchRunning() throws InterruptedException, RiakException {
+		AtomicBoolean hedging = new AtomicBoolean();
+		AtomicInteger fetches = new AtomicInteger();
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("fetch".equals(method) && hedging.get()) {
+					if (fetches.getAndIncrement() == 0) {
+						// the primary is slow enough to be hedged, and then succeeds
+						Thread.sleep(300);
+					} else {
+						throw new IOException("Injected failure");
+					}
+				}
+			}
+		};
+		Riak hedged = new RiakSpec()
+				.client(client.getClient())
+				.ioShards(2)
+				.hedgedReads(99, 50, TimeUnit.MILLISECONDS)
+				.build();
+		Bucket b = hedged.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		hedged.store(b, "hedged", text("test", "hedged", "Hello World!"), null, null, null).await(1, TimeUnit.SECONDS);
+
+		hedging.set(true);
+		String value = hedged.fetch(b, "hedged", String.class, null, null).await(1, TimeUnit.SECONDS);
+		assertThat("the hedge was sent and failed", fetches.get(), is(2));
+		assertThat("the primary's value was returned", value, is("Hello World!"));
+	}
+
+	@Test
+	public void hedgesResolveSiblingsOnTheKeysOwnShard() throws InterruptedException {
+		AtomicBoolean hedging = new AtomicBoolean();
+		AtomicInteger fetches = new AtomicInteger();
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("fetch".equals(method) && hedging.get() && fetches.getAndIncrement() == 0) {
+					// the primary is slow enough to be hedged
+					Thread.sleep(300);
+				}
+			}
+		};
+		Riak hedged = new RiakSpec()
+				.client(client.getClient())
+				.ioShards(2)
+				.hedgedReads(99, 50, TimeUnit.MILLISECONDS)
+				.build();
+		Bucket b = hedged.fetchBucket("siblings").await(1, TimeUnit.SECONDS);
+		client.withSiblings(counter("siblings", "hedged", 1), counter("siblings", "hedged", 2));
+
+		List<Thread> resolvedOn = new CopyOnWriteArrayList<>();
+		Function<Collection<Counter>, Counter> resolver = siblings -> {
+			resolvedOn.add(Thread.currentThread());
+			return highest(siblings);
+		};
+		hedging.set(true);
+		Counter c = hedged.fetch(b, "hedged", Counter.class, resolver, null).await(1, TimeUnit.SECONDS);
+
+		AtomicReference<Thread> owner = new AtomicReference<>();
+		CountDownLatch latch = new CountDownLatch(1);
+		hedged.schedule(hedged.shard("siblings", "hedged"), (Void v) -> {
+			owner.set(Thread.currentThread());
+			latch.countDown();
+		});
+		latch.await(1, TimeUnit.SECONDS);
+
+		assertThat("siblings were resolved", c.value, is(2));
+		assertThat("the fetch was hedged", fetches.get(), is(2));
+		assertThat("siblings were only resolved on the key's shard", resolvedOn, everyItem(is(owner.get())));
+	}
+
+	@Test
+	public void canMeasureOperations() throws InterruptedException, RiakException {
+		JmxRiakMetrics metrics = new JmxRiakMetrics();
+		Riak measured = new RiakSpec().client(new InMemoryRiakClient().getClient()).metrics(metrics).build();
+		Bucket b = measured.fetchBucket("test").await(1, TimeUnit.SECONDS);
+
+		measured.store(b, "measured", "Hello World!", null, null, null).await(1, TimeUnit.SECONDS);
+		measured.fetch(b, "measured", String.class, null, null).await(1, TimeUnit.SECONDS);
+
+		// operations on the single IO shard are measured before the next one starts
+		assertThat("bucket fetch was counted", metrics.getOperationCounts().get("FETCH_BUCKET"), is(1L));
+		assertThat("store was counted", metrics.getOperationCounts().get("STORE"), is(1L));
+		assertThat("nothing failed", metrics.getErrorCounts().isEmpty(), is(true));
+	}
+
+	@Test
+	public void canScanBucket() throws InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak scanning = new RiakSpec().client(client.getClient()).ioShards(2).build();
+		Bucket b = scanning.fetchBucket("scan").await(1, TimeUnit.SECONDS);
+		for (int i = 0; i < 10; i++) {
+			scanning.store(b, "scan" + i, text("scan", "scan" + i, "Hello World!"), null, null, null)
+							.await(1, TimeUnit.SECONDS);
+		}
+		client.withLatency(10, TimeUnit.MILLISECONDS);
+
+		CountDownLatch latch = new CountDownLatch(10);
+		scanning.scan(b, String.class).consume(kv -> {
+			if ("Hello World!".equals(kv.getT2())) {
+				latch.countDown();
+			}
+		});
+
+		latch.await(5, TimeUnit.SECONDS);
+		assertThat("every value was scanned", latch.getCount(), is(0L));
+	}
+
+	@Test
+	public void queriesIndexes() throws InterruptedException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak querying = new RiakSpec().client(client.getClient()).ioShards(2).build();
+		Bucket b = indexedUsers(querying, 6);
+
+		List<String> keys = new CopyOnWriteArrayList<>();
+		RiakStream<String> matches = querying.query(b, IntIndex.named("age"), 10, 30);
+		matches.consume(keys::add);
+		matches.await(5, TimeUnit.SECONDS);
+		assertThat("the keys in the range were streamed", keys, containsInAnyOrder("user1", "user2", "user3"));
+
+		List<String> exact = new CopyOnWriteArrayList<>();
+		RiakStream<String> match = querying.query(b, IntIndex.named("age"), 40, 40);
+		match.consume(exact::add);
+		match.await(5, TimeUnit.SECONDS);
+		assertThat("only the exact match was streamed", exact, contains("user4"));
+
+		List<String> values = new CopyOnWriteArrayList<>();
+		RiakStream<Tuple2<String, String>> users = querying.query(b, IntIndex.named("age"), 0, 20, String.class, null, null, 2);
+		users.consume(kv -> values.add(kv.getT1() + "=" + kv.getT2()));
+		users.await(5, TimeUnit.SECONDS);
+		assertThat("the values in the range were streamed",
+							 values,
+							 containsInAnyOrder("user0=User 0", "user1=User 1", "user2=User 2"));
+	}
+
+	@Test
+	public void queryKeepsAtMostWindowFetchesInFlight() throws InterruptedException {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger mostActive = new AtomicInteger();
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				if (!"fetch".equals(method)) {
+					super.beforeCall(method);
+					return;
+				}
+				mostActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+				try {
+					super.beforeCall(method);
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		};
+		Riak querying = new RiakSpec().client(client.getClient()).ioShards(4).build();
+		Bucket b = indexedUsers(querying, 8);
+		client.withLatency(20, TimeUnit.MILLISECONDS);
+
+		List<String> keys = new CopyOnWriteArrayList<>();
+		RiakStream<Tuple2<String, String>> users = querying.query(b, IntIndex.named("age"), 0, 70, String.class, null, null, 2);
+		users.consume(kv -> keys.add(kv.getT1()));
+		users.await(5, TimeUnit.SECONDS);
+
+		assertThat("every match was streamed", keys, hasSize(8));
+		assertThat("no more than the window was fetched at a time", mostActive.get(), lessThanOrEqualTo(2));
+	}
+
+	@Test
+	public void cancelledQueryStopsEmitting() throws InterruptedException {
+		AtomicBoolean querying = new AtomicBoolean();
+		AtomicInteger fetches = new AtomicInteger();
+		CountDownLatch resume = new CountDownLatch(1);
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("fetch".equals(method) && querying.get() && fetches.incrementAndGet() == 3) {
+					// hold the third fetch until the stream has been cancelled
+					resume.await(1, TimeUnit.SECONDS);
+				}
+			}
+		};
+		Riak limited = new RiakSpec().client(client.getClient()).maxInFlight(10).build();
+		Bucket b = indexedUsers(limited, 8);
+		querying.set(true);
+
+		List<String> keys = new CopyOnWriteArrayList<>();
+		CountDownLatch consumed = new CountDownLatch(2);
+		RiakStream<Tuple2<String, String>> users = limited.query(b, IntIndex.named("age"), 0, 70, String.class, null, null, 1);
+		users.consume(kv -> {
+			keys.add(kv.getT1());
+			consumed.countDown();
+		});
+		consumed.await(1, TimeUnit.SECONDS);
+		users.cancel();
+		resume.countDown();
+		users.await(5, TimeUnit.SECONDS);
+
+		assertThat("nothing was emitted once the stream was cancelled", keys, hasSize(2));
+		assertThat("the rest of the keys weren't fetched", fetches.get(), is(3));
+		assertThat("every permit was given back", limited.getInFlight(), is(0));
+	}
+
+	@Test
+	public void streamsMapReduceResults() throws InterruptedException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak mapping = new RiakSpec().client(client.getClient()).build();
+		indexedUsers(mapping, 3);
+
+		List<String> keys = new CopyOnWriteArrayList<>();
+		RiakStream<String[]> results = mapping.mapReduce(c -> c.mapReduce("users"), String[].class, 100);
+		results.consume(bk -> keys.add(bk[1]));
+		results.await(5, TimeUnit.SECONDS);
+		assertThat("every result was streamed", keys, contains("user0", "user1", "user2"));
+
+		List<String> limited = new CopyOnWriteArrayList<>();
+		RiakStream<String[]> first = mapping.mapReduce(client.getClient().mapReduce("users"), String[].class, 2);
+		first.consume(bk -> limited.add(bk[1]));
+		first.await(5, TimeUnit.SECONDS);
+		assertThat("no more than maxResults were streamed", limited, contains("user0", "user1"));
+	}
+
+	@Test
+	public void streamCompletionCountsTheValuesEmitted() throws InterruptedException {
+		Riak listing = new RiakSpec().client(new InMemoryRiakClient().getClient()).build();
+		Bucket b = indexedUsers(listing, 3);
+
+		assertThat("every key was counted", listing.keys(b).completion().await(5, TimeUnit.SECONDS), is(3L));
+		assertThat("only the results emitted were counted",
+							 listing.mapReduce(c -> c.mapReduce("users"), String[].class, 2).completion().await(5, TimeUnit.SECONDS),
+							 is(2L));
+	}
+
+	@Test
+	public void streamsSearchMatches() throws InterruptedException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak searching = new RiakSpec().client(client.getClient()).build();
+		Bucket b = searching.fetchBucket("people").await(1, TimeUnit.SECONDS);
+		for (String name : Arrays.asList("ann", "joe", "jon")) {
+			IRiakObject person = RiakObjectBuilder.newBuilder("people", name)
+																						.withContentType("application/json")
+																						.withValue("{\"name\":\"" + name + "\"}")
+																						.build();
+			searching.store(b, name, person, null, null, null).await(1, TimeUnit.SECONDS);
+		}
+
+		List<String> keys = new CopyOnWriteArrayList<>();
+		RiakStream<String[]> matches = searching.search("people", "name:jo*", String[].class, 100);
+		matches.consume(bk -> keys.add(bk[1]));
+		matches.await(5, TimeUnit.SECONDS);
+		assertThat("the matches were streamed", keys, contains("joe", "jon"));
+	}
+
+	@Test
+	public void cancelledMapReduceStopsEmitting() throws InterruptedException {
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch resume = new CountDownLatch(1);
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("mapReduce".equals(method)) {
+					running.countDown();
+					resume.await(1, TimeUnit.SECONDS);
+				}
+			}
+		};
+		Riak mapping = new RiakSpec().client(client.getClient()).maxInFlight(10).build();
+		indexedUsers(mapping, 3);
+
+		List<String> keys = new CopyOnWriteArrayList<>();
+		RiakStream<String[]> results = mapping.search("users", "*:*", String[].class, 100);
+		results.consume(bk -> keys.add(bk[1]));
+		running.await(1, TimeUnit.SECONDS);
+		results.cancel();
+		resume.countDown();
+		results.await(5, TimeUnit.SECONDS);
+
+		assertThat("the job ran", running.getCount(), is(0L));
+		assertThat("nothing was emitted once the stream was cancelled", keys, is(empty()));
+		assertThat("the job's permit was given back", mapping.getInFlight(), is(0));
+	}
+
+	@Test
+	public void retriesAndFailsFastWhileClusterIsDown() throws InterruptedException, RiakException {
+		AtomicBoolean down = new AtomicBoolean();
+		AtomicInteger failures = new AtomicInteger();
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("fetch".equals(method) && (down.get() || failures.getAndDecrement() > 0)) {
+					throw new IOException("Injected failure");
+				}
+			}
+		};
+		JmxRiakMetrics metrics = new JmxRiakMetrics();
+		Riak resilient = new RiakSpec()
+				.client(client.getClient())
+				.metrics(metrics)
+				.retry(5, 1, 10, TimeUnit.MILLISECONDS)
+				.circuitBreaker(0.5, 10, 10, 10, TimeUnit.SECONDS)
+				.build();
+		Bucket b = resilient.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		resilient.store(b, "flaky", text("test", "flaky", "Hello World!"), null, null, null).await(1, TimeUnit.SECONDS);
+
+		failures.set(3);
+		String value = resilient.fetch(b, "flaky", String.class, null, null).await(1, TimeUnit.SECONDS);
+		assertThat("fetch succeeded once the failures stopped", value, is("Hello World!"));
+		assertThat("fetch was retried", metrics.getRetries(), greaterThan(0L));
+
+		down.set(true);
+		for (int i = 0; i < 20 && resilient.getCircuitState() == CircuitState.CLOSED; i++) {
+			CountDownLatch failed = new CountDownLatch(1);
+			resilient.fetch(b, "flaky", String.class, null, null).when(RiakException.class, e -> failed.countDown());
+			failed.await(1, TimeUnit.SECONDS);
+		}
+		assertThat("circuit opened", resilient.getCircuitState(), is(CircuitState.OPEN));
+
+		long calls = client.getCalls();
+		CountDownLatch rejected = new CountDownLatch(1);
+		resilient.fetch(b, "flaky", String.class, null, null)
+						 .when(RiakCircuitOpenException.class, e -> rejected.countDown());
+		rejected.await(1, TimeUnit.SECONDS);
+		assertThat("fetch failed fast", rejected.getCount(), is(0L));
+		assertThat("cluster wasn't called", client.getCalls(), is(calls));
+	}
+
+	@Test
+	public void recoversWhenAHalfOpenProbeIsRejected() throws InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak resilient = new RiakSpec()
+				.client(client.getClient())
+				.maxInFlight(1)
+				.circuitBreaker(0.1, 1, 10000, 200, TimeUnit.MILLISECONDS)
+				.build();
+		Bucket b = resilient.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		resilient.store(b, "probe", text("test", "probe", "Hello World!"), null, null, null).await(1, TimeUnit.SECONDS);
+
+		// hold the only permit, then open the circuit
+		resilient.admit(OperationType.FETCH, null, false);
+		resilient.recordFailure(OperationType.FETCH, new RiakRetryFailedException(new IOException("Injected failure")));
+		assertThat("circuit opened", resilient.getCircuitState(), is(CircuitState.OPEN));
+
+		Thread.sleep(250);
+		try {
+			resilient.admit(OperationType.FETCH, null, false);
+			fail("the probe was admitted over the in-flight limit");
+		} catch (RiakOverloadedException e) {
+			assertThat("the probe was rejected by the limiter", e, is(not(instanceOf(RiakCircuitOpenException.class))));
+		}
+		resilient.release(null);
+
+		String value = resilient.fetch(b, "probe", String.class, null, null).await(1, TimeUnit.SECONDS);
+		assertThat("the probe went through", value, is("Hello World!"));
+		assertThat("circuit closed", resilient.getCircuitState(), is(CircuitState.CLOSED));
+	}
+
+	@Test
+	public void coalescesStoresBehindTheWindow() throws IOException, InterruptedException, RiakException {
+		AtomicInteger stores = new AtomicInteger();
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("store".equals(method)) {
+					stores.incrementAndGet();
+				}
+			}
+		};
+		Riak behind = new RiakSpec().client(client.getClient()).writeBehind(1, TimeUnit.MINUTES, 0).build();
+		Bucket b = behind.fetchBucket("behind").await(1, TimeUnit.SECONDS);
+
+		Promise<IRiakObject> first = behind.store(b, "coalesced", text("behind", "coalesced", "first"), null, null, null);
+		Promise<IRiakObject> second = behind.store(b, "coalesced", text("behind", "coalesced", "second"), null, null, null);
+		Promise<IRiakObject> third = behind.store(b, "coalesced", text("behind", "coalesced", "third"), null, null, null);
+		assertThat("nothing was written before the flush", stores.get(), is(0));
+
+		behind.flush().await(1, TimeUnit.SECONDS);
+		assertThat("the stores were written once", stores.get(), is(1));
+		assertThat("every store saw the last value", first.await(1, TimeUnit.SECONDS).getValueAsString(), is("third"));
+		assertThat("every store saw the last value", second.await(1, TimeUnit.SECONDS).getValueAsString(), is("third"));
+		assertThat("every store saw the last value", third.await(1, TimeUnit.SECONDS).getValueAsString(), is("third"));
+		assertThat("the last value was stored",
+							 client.getRawClient().fetch("behind", "coalesced").getRiakObjects()[0].getValueAsString(),
+							 is("third"));
+	}
+
+	@Test
+	public void appliesCoalescedStoresInOrder() throws IOException, InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak behind = new RiakSpec().client(client.getClient()).writeBehind(1, TimeUnit.MINUTES, 0).build();
+		Bucket b = behind.fetchBucket("behind").await(1, TimeUnit.SECONDS);
+		IRiakObject value = text("behind", "ordered", "a");
+
+		behind.store(b, "ordered", value, null, null, null);
+		behind.store(b, "ordered", value, null, null, append("b"));
+		behind.store(b, "ordered", value, null, null, append("c"));
+		behind.flush().await(1, TimeUnit.SECONDS);
+		behind.store(b, "ordered", value, null, null, append("d"));
+		behind.flush().await(1, TimeUnit.SECONDS);
+
+		assertThat("stores were applied in the order they were made",
+							 client.getRawClient().fetch("behind", "ordered").getRiakObjects()[0].getValueAsString(),
+							 is("abcd"));
+	}
+
+	@Test
+	public void queuedStoresGiveBackTheirPermitsAndEndTheirCachedWrites() throws InterruptedException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak behind = new RiakSpec()
+				.client(client.getClient())
+				.maxInFlight(1)
+				.cache(100, 1, TimeUnit.MINUTES)
+				.writeBehind(1, TimeUnit.MINUTES, 0)
+				.build();
+		Bucket b = behind.fetchBucket("behind").await(1, TimeUnit.SECONDS);
+
+		Promise<IRiakObject> first = behind.store(b, "queued", text("behind", "queued", "first"), null, null, null);
+		Promise<IRiakObject> second = behind.store(b, "queued", text("behind", "queued", "second"), null, null, null);
+		Promise<IRiakObject> other = behind.store(b, "other", text("behind", "other", "other"), null, null, null);
+		String unflushed = behind.fetch(b, "queued", String.class, null, null).await(1, TimeUnit.SECONDS);
+		assertThat("queued stores don't hold the only permit", unflushed, is(nullValue()));
+
+		behind.flush().await(1, TimeUnit.SECONDS);
+		assertThat("every store was written", first.await(1, TimeUnit.SECONDS), is(notNullValue()));
+		assertThat("every store was written", second.await(1, TimeUnit.SECONDS), is(notNullValue()));
+		assertThat("every store was written", other.await(1, TimeUnit.SECONDS), is(notNullValue()));
+
+		assertThat("the flushed value is fetched",
+							 behind.fetch(b, "queued", String.class, null, null).await(1, TimeUnit.SECONDS),
+							 is("second"));
+		long calls = client.getCalls();
+		assertThat("the key is cached once its writes have ended",
+							 behind.fetch(b, "queued", String.class, null, null).await(1, TimeUnit.SECONDS),
+							 is("second"));
+		assertThat("the key is cached once its writes have ended", client.getCalls(), is(calls));
+	}
+
+	@Test
+	public void closeFlushesPendingStores() throws IOException, InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak behind = new RiakSpec().client(client.getClient()).writeBehind(1, TimeUnit.MINUTES, 0).build();
+		Bucket b = behind.fetchBucket("behind").await(1, TimeUnit.SECONDS);
+
+		Promise<IRiakObject> pending = behind.store(b, "closed", text("behind", "closed", "pending"), null, null, null);
+		behind.close().await(1, TimeUnit.SECONDS);
+		assertThat("the pending store was written", pending.await(1, TimeUnit.SECONDS), is(notNullValue()));
+		assertThat("the pending store was written",
+							 client.getRawClient().fetch("behind", "closed").getRiakObjects()[0].getValueAsString(),
+							 is("pending"));
+		assertThat("the timer was stopped", behind.timer().isShutdown(), is(true));
+	}
+
+	@Test
+	public void storeStoppedByOpenCircuitLeavesKeyCacheable() throws InterruptedException, RiakException {
+		AtomicBoolean down = new AtomicBoolean();
+		CountDownLatch failing = new CountDownLatch(1);
+		InMemoryRiakClient client = new InMemoryRiakClient() {
+			@Override
+			protected void beforeCall(String method) throws Exception {
+				super.beforeCall(method);
+				if ("fetch".equals(method) && down.get()) {
+					failing.await(1, TimeUnit.SECONDS);
+					throw new IOException("Injected failure");
+				}
+			}
+		};
+		Riak cached = new RiakSpec()
+				.client(client.getClient())
+				.cache(100, 1, TimeUnit.MINUTES)
+				.circuitBreaker(0.1, 1, 10000, 200, TimeUnit.MILLISECONDS)
+				.build();
+		Bucket b = cached.fetchBucket("test").await(1, TimeUnit.SECONDS);
+		cached.store(b, "breaker", text("test", "breaker", "Hello World!"), null, null, null).await(1, TimeUnit.SECONDS);
+
+		// the failing fetch holds the only IO shard, so the store is admitted and queued before the circuit opens
+		down.set(true);
+		cached.fetch(b, "other", String.class, null, null);
+		CountDownLatch rejected = new CountDownLatch(1);
+		cached.store(b, "breaker", text("test", "breaker", "Goodbye World!"), null, null, null)
+					.when(RiakCircuitOpenException.class, e -> rejected.countDown());
+		failing.countDown();
+		rejected.await(1, TimeUnit.SECONDS);
+		assertThat("store failed on the open circuit", rejected.getCount(), is(0L));
+
+		down.set(false);
+		Thread.sleep(250);
+		String s1 = cached.fetch(b, "breaker", String.class, null, null).await(1, TimeUnit.SECONDS);
+		String s2 = cached.fetch(b, "breaker", String.class, null, null).await(1, TimeUnit.SECONDS);
+		assertThat("the first value was kept", s1, is("Hello World!"));
+		assertThat("values are the same", s2, is(s1));
+		assertThat("the key was cached again", cached.getCache().getHits(), is(1L));
+	}
+
+	@Test
+	public void resolvesSiblingsOncePerVClock() throws IOException, InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		AtomicInteger resolutions = new AtomicInteger();
+		Function<Collection<Counter>, Counter> resolver = siblings -> {
+			resolutions.incrementAndGet();
+			return highest(siblings);
+		};
+		client.withSiblings(counter("siblings", "resolved", 1), counter("siblings", "resolved", 2));
+
+		Riak cached = new RiakSpec().client(client.getClient()).siblingResolution(100, false).build();
+		Bucket b = cached.fetchBucket("siblings").await(1, TimeUnit.SECONDS);
+		Counter c1 = cached.fetch(b, "resolved", Counter.class, resolver, null).await(1, TimeUnit.SECONDS);
+		Counter c2 = cached.fetch(b, "resolved", Counter.class, resolver, null).await(1, TimeUnit.SECONDS);
+		assertThat("siblings were resolved", c1.value, is(2));
+		assertThat("the resolution was reused", c2, is(sameInstance(c1)));
+		assertThat("the resolver ran once", resolutions.get(), is(1));
+		assertThat("nothing was written back", client.getRawClient().fetch("siblings", "resolved").getRiakObjects().length, is(2));
+
+		Riak writing = new RiakSpec().client(client.getClient()).siblingResolution(100, true).build();
+		b = writing.fetchBucket("siblings").await(1, TimeUnit.SECONDS);
+		Counter c3 = writing.fetch(b, "resolved", Counter.class, resolver, null).await(1, TimeUnit.SECONDS);
+		assertThat("siblings were resolved", c3.value, is(2));
+
+		// a fetch of the same key runs after the write-back the first one queued on its IO shard
+		Counter c4 = writing.fetch(b, "resolved", Counter.class, resolver, null).await(1, TimeUnit.SECONDS);
+		IRiakObject[] stored = client.getRawClient().fetch("siblings", "resolved").getRiakObjects();
+		assertThat("the resolution was written back", stored.length, is(1));
+		assertThat("the written value is the resolution", c4.value, is(2));
+		assertThat("the resolver ran once more, for the new cache only", resolutions.get(), is(2));
+	}
+
+	@Test
+	public void dropsWriteBackWithoutAPermit() throws IOException, InterruptedException, RiakException {
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak limited = new RiakSpec()
+				.client(client.getClient())
+				.maxInFlight(1)
+				.overflow(OverflowPolicy.WAIT, 5, TimeUnit.SECONDS)
+				.siblingResolution(100, true)
+				.build();
+		Bucket b = limited.fetchBucket("siblings").await(1, TimeUnit.SECONDS);
+		client.withSiblings(counter("siblings", "dropped", 1), counter("siblings", "dropped", 2));
+
+		// the fetch holds the only permit while its siblings are resolved
+		Counter c = limited.fetch(b, "dropped", Counter.class, RiakTests::highest, null).await(1, TimeUnit.SECONDS);
+		assertThat("siblings were resolved without waiting for a permit", c.value, is(2));
+
+		// a fetch of the same key runs after anything the first one queued on its IO shard
+		limited.fetch(b, "dropped", Counter.class, RiakTests::highest, null).await(1, TimeUnit.SECONDS);
+		assertThat("write-back was dropped", client.getRawClient().fetch("siblings", "dropped").getRiakObjects().length, is(2));
+		assertThat("every permit was given back", limited.getInFlight(), is(0));
+	}
+
+	@Test
+	public void canUseNonBlockingTransport() throws IOException, InterruptedException {
+		PbStubServer server = new PbStubServer();
+		try {
+			Riak pb = new RiakSpec().client(new InMemoryRiakClient().getClient())
+															.transport(server.getAddress(), 2, 16)
+															.build();
+			Bucket b = pb.fetchBucket("pb").await(1, TimeUnit.SECONDS);
+
+			int count = 500;
+			CountDownLatch stored = new CountDownLatch(count);
+			for (int i = 0; i < count; i++) {
+				IRiakObject obj = RiakObjectBuilder.newBuilder("pb", "key" + i)
+																					 .withContentType("text/plain")
+																					 .withValue("value" + i)
+																					 .build();
+				pb.store(b, "key" + i, obj, null, null, null).onSuccess(v -> stored.countDown());
+			}
+			stored.await(5, TimeUnit.SECONDS);
+			assertThat("all values were stored", stored.getCount(), is(0L));
+
+			CountDownLatch fetched = new CountDownLatch(count);
+			for (int i = 0; i < count; i++) {
+				String expected = "value" + i;
+				pb.fetch(b, "key" + i, String.class, null, null).onSuccess(v -> {
+					if (expected.equals(v)) {
+						fetched.countDown();
+					}
+				});
+			}
+			fetched.await(5, TimeUnit.SECONDS);
+			assertThat("all values were fetched", fetched.getCount(), is(0L));
+			assertThat("requests were pipelined over the pool", server.getConnections(), lessThanOrEqualTo(2));
+			assertThat("every request reached the server", server.getRequests(), greaterThanOrEqualTo(2L * count));
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void codecsRoundTripValues() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("round trip ");
+		}
+		String value = sb.toString();
+
+		for (Codec<String> codec : Arrays.asList(JacksonCodec.json(String.class), JacksonCodec.smile(String.class))) {
+			IRiakObject plain = new CodecConverter<>(codec, "codecs", "plain", 0).fromDomain(value, null);
+			assertThat("values are stored uncompressed", plain.getUsermeta(CodecConverter.ENCODING_META), is(nullValue()));
+			assertThat("the content type is the codec's", plain.getContentType(), is(codec.getContentType()));
+
+			CodecConverter<String> compressing = new CodecConverter<>(codec, "codecs", "compressed", 64);
+			IRiakObject compressed = compressing.fromDomain(value, null);
+			assertThat("values above the threshold are compressed",
+								 compressed.getUsermeta(CodecConverter.ENCODING_META),
+								 is(CodecConverter.DEFLATE));
+			assertThat("compressed values are smaller", compressed.getValue().length, lessThan(plain.getValue().length));
+
+			assertThat("uncompressed values are read back", compressing.toDomain(plain), is(value));
+			assertThat("compressed values are read back", compressing.toDomain(compressed), is(value));
+			assertThat("compressed values are read back with compression turned off",
+								 new CodecConverter<>(codec, "codecs", "compressed", 0).toDomain(compressed),
+								 is(value));
+		}
+	}
+
+	@Test
+	public void storesStringsAsTheyAreWhateverTheBucketsCodec() throws InterruptedException, RiakException {
+		CodecRegistry codecs = new CodecRegistry().registerDefault(JacksonCodec.json(Object.class));
+		InMemoryRiakClient client = new InMemoryRiakClient();
+		Riak coded = new RiakSpec().client(client.getClient()).codecs(codecs).build();
+		Bucket b = coded.fetchBucket("test").await(1, TimeUnit.SECONDS);
+
+		String stored = coded.store(b, "text", "Hello World!", null, null, null).await(1, TimeUnit.SECONDS);
+		String fetched = coded.fetch(b, "text", String.class, null, null).await(1, TimeUnit.SECONDS);
+		byte[] bytes = {1, 2, 3};
+		coded.store(b, "bytes", bytes, null, null, null).await(1, TimeUnit.SECONDS);
+
+		assertThat("the stored value is returned", stored, is("Hello World!"));
+		assertThat("the value is fetched back unchanged", fetched, is("Hello World!"));
+		assertThat("the value is stored as plain text",
+							 b.fetch("text").execute().getContentType(),
+							 is(RawConverter.TEXT));
+		assertThat("bytes are fetched back unchanged",
+							 coded.fetch(b, "bytes", byte[].class, null, null).await(1, TimeUnit.SECONDS),
+							 is(bytes));
+	}
+
+	@Test
+	public void codecsRejectTruncatedCompressedValues() {
+		Codec<String> codec = JacksonCodec.json(String.class);
+		CodecConverter<String> converter = new CodecConverter<>(codec, "codecs", "truncated", 1);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			sb.append("truncated ");
+		}
+		IRiakObject compressed = converter.fromDomain(sb.toString(), null);
+		IRiakObject truncated = RiakObjectBuilder.from(compressed)
+																						 .withValue(Arrays.copyOf(compressed.getValue(),
+																																			compressed.getValue().length / 2))
+																						 .build();
+		try {
+			converter.toDomain(truncated);
+			fail("a truncated value was read");
+		} catch (ConversionException e) {
+			assertThat("the error says what was truncated", e.getCause().getMessage(), is("Truncated compressed value"));
+		}
+	}
+
 	@Test
 	public void canMap() throws InterruptedException {
 		CountDownLatch latch = new CountDownLatch(1);
@@ -190,4 +1208,11 @@ public class RiakTests {
 		assertThat("document was stored", s, is("Hello World!"));
 	}
 
+	/**
+	 * A value stored as JSON, whose siblings resolve to the highest.
+	 */
+	public static class Counter {
+		public int value;
+	}
+
 }
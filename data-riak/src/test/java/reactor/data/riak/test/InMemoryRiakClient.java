@@ -0,0 +1,401 @@
+package reactor.data.riak.test;
+
+import com.basho.riak.client.IRiakClient;
+import com.basho.riak.client.IRiakObject;
+import com.basho.riak.client.bucket.Bucket;
+import com.basho.riak.client.bucket.FetchBucket;
+import com.basho.riak.client.bucket.WriteBucket;
+import com.basho.riak.client.builders.BucketPropertiesBuilder;
+import com.basho.riak.client.builders.RiakObjectBuilder;
+import com.basho.riak.client.cap.DefaultRetrier;
+import com.basho.riak.client.cap.Retrier;
+import com.basho.riak.client.convert.ConversionException;
+import com.basho.riak.client.query.BucketMapReduce;
+import com.basho.riak.client.query.MapReduceResult;
+import com.basho.riak.client.query.SearchMapReduce;
+import com.basho.riak.client.query.indexes.BinIndex;
+import com.basho.riak.client.query.indexes.IntIndex;
+import com.basho.riak.client.raw.RawClient;
+import com.basho.riak.client.raw.RiakResponse;
+import com.basho.riak.client.raw.Transport;
+import com.basho.riak.client.raw.query.MapReduceSpec;
+import com.basho.riak.client.raw.query.indexes.IndexQuery;
+import com.basho.riak.client.raw.query.indexes.IndexWriter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process stand-in for a Riak cluster. It hands out a real {@link IRiakClient} whose buckets and operations are
+ * the client's own classes, backed by a {@link RawClient} that keeps objects in memory. A fixed latency can be injected
+ * into every round trip to approximate a network hop.
+ * <p>
+ * Secondary index queries match the indexes stored with each object. MapReduce jobs and searches only select their
+ * inputs: phases aren't run, so a job's results are the {@code [bucket, key]} pairs of the objects it was given, in key
+ * order, as a search with no phases would return. A search query is a single {@code field:value} term, matched against
+ * the fields of JSON values; a value ending in {@code *} matches by prefix and {@code *:*} matches every object.
+ *
+ * @author Jon Brisbin
+ */
+public class InMemoryRiakClient {
+
+	private final ConcurrentMap<String, ConcurrentMap<String, IRiakObject>> buckets   = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, IRiakObject[]>                     siblings  = new ConcurrentHashMap<>();
+	private final AtomicLong                                               vclocks   = new AtomicLong();
+	private final AtomicLong                                               calls     = new AtomicLong();
+	private final ObjectMapper                                             mapper    = new ObjectMapper();
+	private final Retrier                                                  retrier   = DefaultRetrier.attempts(1);
+	private final RawClient                                                rawClient = proxy(RawClient.class, this::invokeRaw);
+	private final IRiakClient                                              client    = proxy(IRiakClient.class, this::invokeClient);
+	private volatile long   latencyNanos;
+	private volatile byte[] clientId = new byte[4];
+
+	/**
+	 * Delay every round trip by the given amount.
+	 *
+	 * @param latency the latency to inject
+	 * @param unit    the unit of {@code latency}
+	 * @return {@literal this}
+	 */
+	public InMemoryRiakClient withLatency(long latency, TimeUnit unit) {
+		this.latencyNanos = unit.toNanos(latency);
+		return this;
+	}
+
+	/**
+	 * Give a key several siblings, as concurrent writes to a bucket that allows them would. The siblings share one vector
+	 * clock and are all returned by fetches of the key until it is stored or deleted.
+	 *
+	 * @param objects the siblings, all with the same bucket and key
+	 * @return {@literal this}
+	 */
+	public InMemoryRiakClient withSiblings(IRiakObject... objects) {
+		byte[] vclock = nextVClock();
+		IRiakObject[] stored = new IRiakObject[objects.length];
+		for (int i = 0; i < objects.length; i++) {
+			stored[i] = RiakObjectBuilder.from(objects[i]).withVClock(vclock).build();
+		}
+		String bucket = objects[0].getBucket();
+		String key = objects[0].getKey();
+		bucket(bucket).put(key, stored[0]);
+		siblings.put(bucket + "/" + key, stored);
+		return this;
+	}
+
+	/**
+	 * Get the {@link IRiakClient} to hand to a {@link reactor.data.riak.Riak}.
+	 *
+	 * @return the client
+	 */
+	public IRiakClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Get the {@link RawClient} the buckets and operations are executed against.
+	 *
+	 * @return the raw client
+	 */
+	public RawClient getRawClient() {
+		return rawClient;
+	}
+
+	/**
+	 * Get the number of round trips made to this stand-in.
+	 *
+	 * @return the number of calls
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * Drop every stored object.
+	 */
+	public void clear() {
+		buckets.clear();
+		siblings.clear();
+	}
+
+	/**
+	 * Called at the start of every round trip. Subclasses can override this to inject faults.
+	 *
+	 * @param method the {@link RawClient} method being called
+	 * @throws Exception to fail the call
+	 */
+	protected void beforeCall(String method) throws Exception {
+		calls.incrementAndGet();
+		long latency = latencyNanos;
+		if (latency > 0) {
+			LockSupport.parkNanos(latency);
+		}
+	}
+
+	private Object invokeClient(Method method, Object[] args) throws Exception {
+		switch (method.getName()) {
+			case "fetchBucket":
+				return new FetchBucket(rawClient, (String) args[0], retrier);
+			case "createBucket":
+				return new WriteBucket(rawClient, (String) args[0], retrier);
+			case "updateBucket":
+				return new WriteBucket(rawClient, (Bucket) args[0], retrier);
+			case "listBuckets":
+				return rawClient.listBuckets();
+			case "setClientId":
+				clientId = (byte[]) args[0];
+				return client;
+			case "generateAndSetClientId":
+				return rawClient.generateAndSetClientId();
+			case "getClientId":
+				return clientId;
+			case "getTransport":
+				return Transport.PB;
+			case "mapReduce":
+				if (args.length == 1 && args[0] instanceof String) {
+					return new BucketMapReduce(rawClient, (String) args[0]);
+				}
+				if (args.length == 2) {
+					return new SearchMapReduce(rawClient, (String) args[0], (String) args[1]);
+				}
+				throw new UnsupportedOperationException("Only bucket and search MapReduce jobs are supported by " + getClass().getName());
+			case "ping":
+			case "shutdown":
+				return null;
+			default:
+				throw new UnsupportedOperationException(method.getName() + " is not supported by " + getClass().getName());
+		}
+	}
+
+	private Object invokeRaw(Method method, Object[] args) throws Exception {
+		switch (method.getName()) {
+			case "head":
+			case "fetch": {
+				beforeCall(method.getName());
+				IRiakObject[] objs = siblings.get(args[0] + "/" + args[1]);
+				if (null != objs) {
+					return new RiakResponse(objs[0].getVClock().getBytes(), objs);
+				}
+				IRiakObject obj = bucket((String) args[0]).get((String) args[1]);
+				return (null != obj ? new RiakResponse(obj.getVClock().getBytes(), new IRiakObject[]{obj}) : RiakResponse.empty());
+			}
+			case "store": {
+				beforeCall(method.getName());
+				IRiakObject obj = (IRiakObject) args[0];
+				byte[] vclock = nextVClock();
+				IRiakObject stored = RiakObjectBuilder.from(obj).withVClock(vclock).build();
+				siblings.remove(obj.getBucket() + "/" + obj.getKey());
+				bucket(obj.getBucket()).put(obj.getKey(), stored);
+				return (void.class == method.getReturnType() ? null : new RiakResponse(vclock, new IRiakObject[]{stored}));
+			}
+			case "delete":
+				beforeCall(method.getName());
+				siblings.remove(args[0] + "/" + args[1]);
+				bucket((String) args[0]).remove((String) args[1]);
+				return null;
+			case "fetchBucket":
+				beforeCall(method.getName());
+				return new BucketPropertiesBuilder().allowSiblings(false).lastWriteWins(true).build();
+			case "updateBucket":
+				beforeCall(method.getName());
+				return null;
+			case "listBuckets":
+				beforeCall(method.getName());
+				return new HashSet<>(buckets.keySet());
+			case "listKeys":
+				beforeCall(method.getName());
+				return new ArrayList<>(bucket((String) args[0]).keySet());
+			case "fetchIndex":
+				beforeCall(method.getName());
+				return fetchIndex((IndexQuery) args[0]);
+			case "mapReduce":
+				beforeCall(method.getName());
+				return mapReduce((MapReduceSpec) args[0]);
+			case "generateAndSetClientId":
+				clientId = ByteBuffer.allocate(4).putInt((int) System.nanoTime()).array();
+				return clientId;
+			case "setClientId":
+				clientId = (byte[]) args[0];
+				return null;
+			case "getClientId":
+				return clientId;
+			case "getTransport":
+				return Transport.PB;
+			case "ping":
+				beforeCall(method.getName());
+				return null;
+			case "shutdown":
+				return null;
+			default:
+				throw new UnsupportedOperationException(method.getName() + " is not supported by " + getClass().getName());
+		}
+	}
+
+	private List<String> fetchIndex(IndexQuery query) throws IOException {
+		List<String> keys = new ArrayList<>();
+		query.write(new IndexWriter() {
+			@Override
+			public void write(String bucket, String index, String value) {
+				write(bucket, index, value, value);
+			}
+
+			@Override
+			public void write(String bucket, String index, String from, String to) {
+				for (IRiakObject obj : bucket(bucket).values()) {
+					for (Map.Entry<BinIndex, Set<String>> e : obj.allBinIndexes().entrySet()) {
+						if (!index.equals(e.getKey().getFullname())) {
+							continue;
+						}
+						for (String v : e.getValue()) {
+							if (v.compareTo(from) >= 0 && v.compareTo(to) <= 0) {
+								keys.add(obj.getKey());
+								break;
+							}
+						}
+					}
+				}
+			}
+
+			@Override
+			public void write(String bucket, String index, long value) {
+				write(bucket, index, value, value);
+			}
+
+			@Override
+			public void write(String bucket, String index, long from, long to) {
+				for (IRiakObject obj : bucket(bucket).values()) {
+					for (Map.Entry<IntIndex, Set<Long>> e : obj.allIntIndexesV2().entrySet()) {
+						if (!index.equals(e.getKey().getFullname())) {
+							continue;
+						}
+						for (Long v : e.getValue()) {
+							if (v >= from && v <= to) {
+								keys.add(obj.getKey());
+								break;
+							}
+						}
+					}
+				}
+			}
+		});
+		return keys;
+	}
+
+	private MapReduceResult mapReduce(MapReduceSpec spec) throws IOException {
+		JsonNode inputs = mapper.readTree(spec.getJSON()).get("inputs");
+		List<List<String>> results = new ArrayList<>();
+		if (inputs.isTextual()) {
+			for (String key : new TreeSet<>(bucket(inputs.asText()).keySet())) {
+				results.add(Arrays.asList(inputs.asText(), key));
+			}
+		} else if (inputs.has("bucket")) {
+			for (String key : new TreeSet<>(bucket(inputs.get("bucket").asText()).keySet())) {
+				results.add(Arrays.asList(inputs.get("bucket").asText(), key));
+			}
+		} else if (inputs.has("arg")) {
+			String bucket = inputs.get("arg").get(0).asText();
+			String query = inputs.get("arg").get(1).asText();
+			for (String key : new TreeSet<>(bucket(bucket).keySet())) {
+				if (matches(bucket(bucket).get(key), query)) {
+					results.add(Arrays.asList(bucket, key));
+				}
+			}
+		} else {
+			throw new UnsupportedOperationException("Only bucket and search MapReduce jobs are supported by " + getClass().getName());
+		}
+
+		String raw = mapper.writeValueAsString(results);
+		return new MapReduceResult() {
+			@Override
+			public <T> Collection<T> getResult(Class<T> resultType) throws ConversionException {
+				try {
+					return mapper.readValue(raw, mapper.getTypeFactory().constructCollectionType(List.class, resultType));
+				} catch (IOException e) {
+					throw new ConversionException(e);
+				}
+			}
+
+			@Override
+			public String getResultRaw() {
+				return raw;
+			}
+		};
+	}
+
+	private boolean matches(IRiakObject obj, String query) {
+		int colon = query.indexOf(':');
+		if (colon < 0) {
+			throw new UnsupportedOperationException("Only field:value searches are supported by " + getClass().getName());
+		}
+		String field = query.substring(0, colon);
+		String term = query.substring(colon + 1);
+		if ("*".equals(field) && "*".equals(term)) {
+			return true;
+		}
+		JsonNode value;
+		try {
+			value = mapper.readTree(obj.getValueAsString()).get(field);
+		} catch (IOException e) {
+			return false;
+		}
+		if (null == value || value.isContainerNode()) {
+			return false;
+		}
+		return (term.endsWith("*") ? value.asText().startsWith(term.substring(0, term.length() - 1)) : value.asText().equals(term));
+	}
+
+	private byte[] nextVClock() {
+		return ByteBuffer.allocate(8).putLong(vclocks.incrementAndGet()).array();
+	}
+
+	private ConcurrentMap<String, IRiakObject> bucket(String name) {
+		ConcurrentMap<String, IRiakObject> bucket = buckets.get(name);
+		if (null == bucket) {
+			ConcurrentMap<String, IRiakObject> newBucket = new ConcurrentHashMap<>();
+			if (null == (bucket = buckets.putIfAbsent(name, newBucket))) {
+				bucket = newBucket;
+			}
+		}
+		return bucket;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		InvocationHandler ih = (proxy, method, args) -> {
+			if (Object.class == method.getDeclaringClass()) {
+				switch (method.getName()) {
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+				}
+			}
+			return handler.invoke(method, (null != args ? args : new Object[0]));
+		};
+		return (T) Proxy.newProxyInstance(InMemoryRiakClient.class.getClassLoader(), new Class<?>[]{type}, ih);
+	}
+
+	private interface Handler {
+		Object invoke(Method method, Object[] args) throws Exception;
+	}
+
+}
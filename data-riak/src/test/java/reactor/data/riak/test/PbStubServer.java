@@ -0,0 +1,199 @@
+package reactor.data.riak.test;
+
+import com.basho.riak.protobuf.RiakKvPB;
+import com.basho.riak.protobuf.RiakPB;
+import com.google.protobuf.ByteString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for Riak's protocol buffers listener that answers pings, gets, puts and deletes from memory. Each
+ * connection is served by its own thread, which answers pipelined requests in order like Riak does.
+ *
+ * @author Jon Brisbin
+ */
+public class PbStubServer {
+
+	private static final byte ERROR_RESP = 0;
+	private static final byte PING_REQ   = 1;
+	private static final byte PING_RESP  = 2;
+	private static final byte GET_REQ    = 9;
+	private static final byte GET_RESP   = 10;
+	private static final byte PUT_REQ    = 11;
+	private static final byte PUT_RESP   = 12;
+	private static final byte DEL_REQ    = 13;
+	private static final byte DEL_RESP   = 14;
+
+	private final ConcurrentMap<String, RiakKvPB.RpbContent> objects     = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ByteString>          vclocks     = new ConcurrentHashMap<>();
+	private final AtomicLong                                 nextVclock  = new AtomicLong();
+	private final AtomicInteger                              connections = new AtomicInteger();
+	private final AtomicLong                                 requests    = new AtomicLong();
+	private final ServerSocket server;
+	private volatile boolean closed;
+
+	/**
+	 * Start listening on an ephemeral port on the loopback interface.
+	 *
+	 * @throws IOException if the port can't be bound
+	 */
+	public PbStubServer() throws IOException {
+		this.server = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(this::accept, "pb-stub-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Get the address to connect to.
+	 *
+	 * @return the address
+	 */
+	public InetSocketAddress getAddress() {
+		return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+	}
+
+	/**
+	 * Get the number of connections accepted so far.
+	 *
+	 * @return the number of connections
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * Get the number of requests answered so far.
+	 *
+	 * @return the number of requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Stop accepting connections. Connections already open are closed by their clients.
+	 */
+	public void close() throws IOException {
+		closed = true;
+		server.close();
+	}
+
+	private void accept() {
+		while (!closed) {
+			try {
+				Socket s = server.accept();
+				s.setTcpNoDelay(true);
+				connections.incrementAndGet();
+				Thread t = new Thread(() -> serve(s), "pb-stub-" + connections.get());
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				if (!closed) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	}
+
+	private void serve(Socket s) {
+		try (Socket socket = s;
+				 DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			while (!closed) {
+				int length = in.readInt();
+				byte code = in.readByte();
+				byte[] message = new byte[length - 1];
+				in.readFully(message);
+
+				respond(out, code, message);
+				requests.incrementAndGet();
+				// answer a pipelined batch with a single flush
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+		} catch (EOFException ignored) {
+		} catch (IOException e) {
+			if (!closed) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private void respond(DataOutputStream out, byte code, byte[] message) throws IOException {
+		switch (code) {
+			case PING_REQ:
+				write(out, PING_RESP, new byte[0]);
+				break;
+			case GET_REQ: {
+				RiakKvPB.RpbGetReq req = RiakKvPB.RpbGetReq.parseFrom(message);
+				String id = id(req.getBucket(), req.getKey());
+				RiakKvPB.RpbGetResp.Builder resp = RiakKvPB.RpbGetResp.newBuilder();
+				RiakKvPB.RpbContent content = objects.get(id);
+				if (null != content) {
+					resp.addContent(content).setVclock(vclocks.get(id));
+				}
+				write(out, GET_RESP, resp.build().toByteArray());
+				break;
+			}
+			case PUT_REQ: {
+				RiakKvPB.RpbPutReq req = RiakKvPB.RpbPutReq.parseFrom(message);
+				ByteString key = (req.hasKey() ? req.getKey() : ByteString.copyFromUtf8(UUID.randomUUID().toString()));
+				String id = id(req.getBucket(), key);
+				ByteString vclock = ByteString.copyFrom(ByteBuffer.allocate(8).putLong(nextVclock.incrementAndGet()).array());
+				objects.put(id, req.getContent());
+				vclocks.put(id, vclock);
+				RiakKvPB.RpbPutResp.Builder resp = RiakKvPB.RpbPutResp.newBuilder();
+				if (!req.hasKey()) {
+					resp.setKey(key);
+				}
+				if (req.getReturnBody()) {
+					resp.addContent(req.getContent()).setVclock(vclock);
+				}
+				write(out, PUT_RESP, resp.build().toByteArray());
+				break;
+			}
+			case DEL_REQ: {
+				RiakKvPB.RpbDelReq req = RiakKvPB.RpbDelReq.parseFrom(message);
+				String id = id(req.getBucket(), req.getKey());
+				objects.remove(id);
+				vclocks.remove(id);
+				write(out, DEL_RESP, new byte[0]);
+				break;
+			}
+			default:
+				write(out, ERROR_RESP, RiakPB.RpbErrorResp.newBuilder()
+																							 .setErrmsg(ByteString.copyFromUtf8("Unknown message code " + code))
+																							 .setErrcode(1)
+																							 .build()
+																							 .toByteArray());
+		}
+	}
+
+	private static void write(DataOutputStream out, byte code, byte[] message) throws IOException {
+		out.writeInt(message.length + 1);
+		out.writeByte(code);
+		out.write(message);
+	}
+
+	private static String id(ByteString bucket, ByteString key) {
+		return bucket.toStringUtf8() + "/" + key.toStringUtf8();
+	}
+
+}
@@ -1,42 +1,58 @@
 package reactor.data.spring;
 
-import org.aopalliance.intercept.MethodInterceptor;
-import org.aopalliance.intercept.MethodInvocation;
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.core.EntityInformation;
 import org.springframework.data.repository.support.Repositories;
-import org.springframework.util.ReflectionUtils;
-import reactor.core.Composable;
+import org.springframework.util.ClassUtils;
+import reactor.data.riak.Riak;
+import reactor.data.spring.riak.RiakComposableCrudRepository;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Map;
 
 import static org.springframework.core.GenericTypeResolver.resolveTypeArguments;
-import static org.springframework.util.ReflectionUtils.doWithMethods;
 
 /**
+ * Creates a {@link ComposableCrudRepository} around the Spring Data repository for a domain type. Repositories created
+ * with the same {@link ComposableRepositorySettings} share one timer and one set of read and write pools, which are
+ * shut down when the last of their factory beans is destroyed.
+ *
  * @author Jon Brisbin
  */
 public class ComposableRepositoryFactoryBean<R extends ComposableCrudRepository<T, ID>, T, ID extends Serializable>
 		implements FactoryBean<R>,
-							 ApplicationListener<ContextRefreshedEvent> {
+							 ApplicationListener<ContextRefreshedEvent>,
+							 DisposableBean {
+
+	private static final boolean RIAK_PRESENT = ClassUtils.isPresent(
+			"reactor.data.riak.Riak",
+			ComposableRepositoryFactoryBean.class.getClassLoader()
+	);
+	private static final ComposableRepositorySettings DEFAULT_SETTINGS = new ComposableRepositorySettings();
+
+	private final Class<R>                     repositoryType;
+	private final ComposableRepositorySettings settings;
+	private       Class<? extends T>           domainType;
+	private       ListableBeanFactory          beanFactory;
+	private       Repositories                 repositories;
+	private       CrudRepository<T, ID>        delegateRepository;
+	private       R                            composableRepository;
+	private       ComposableRepositoryPools    pools;
 
-	private final Class<R>              repositoryType;
-	private       Class<? extends T>    domainType;
-	private       ListableBeanFactory   beanFactory;
-	private       Repositories          repositories;
-	private       CrudRepository<T, ID> delegateRepository;
-	private       R                     composableRepository;
+	public ComposableRepositoryFactoryBean(Class<R> repositoryType) {
+		this(repositoryType, DEFAULT_SETTINGS);
+	}
 
 	@SuppressWarnings("unchecked")
-	public ComposableRepositoryFactoryBean(Class<R> repositoryType) {
+	public ComposableRepositoryFactoryBean(Class<R> repositoryType, ComposableRepositorySettings settings) {
 		this.repositoryType = repositoryType;
+		this.settings = settings;
 		for (Class<?> intfType : repositoryType.getInterfaces()) {
 			if (!ComposableRepository.class.isAssignableFrom(intfType)) {
 				continue;
@@ -56,15 +72,30 @@ public class ComposableRepositoryFactoryBean<R extends ComposableCrudRepository<
 		this.beanFactory = event.getApplicationContext();
 		repositories = new Repositories(this.beanFactory);
 		if (null != (delegateRepository = repositories.getRepositoryFor(domainType))) {
-			SimpleComposableCrudRepository<T, ID> repo = new SimpleComposableCrudRepository<T, ID>(delegateRepository);
-
-			ProxyFactory proxyFactory = new ProxyFactory(repo);
-			proxyFactory.addInterface(repositoryType);
-			proxyFactory.addInterface(ComposableRepository.class);
-
-			proxyFactory.addAdvice(new QueryMethodExecutor<R, T, ID>(repositoryType, delegateRepository));
+			EntityInformation<T, ID> entityInformation = repositories.getEntityInformationFor(domainType);
+			Map<String, ComposableRepositorySettings> beans = beanFactory.getBeansOfType(ComposableRepositorySettings.class);
+			ComposableRepositorySettings settings = (beans.size() == 1 ? beans.values().iterator().next() : this.settings);
+			pools = ComposableRepositoryPools.acquire(settings);
+			composableRepository = proxy(new SimpleComposableCrudRepository<T, ID>(
+					delegateRepository,
+					entityInformation,
+					settings,
+					pools
+			));
+		} else if (RIAK_PRESENT) {
+			// no Spring Data repository manages this type, so keep it in Riak if there's a Riak to keep it in
+			ComposableCrudRepository<T, ID> repo = RiakRepositories.create(beanFactory, (Class<T>) domainType);
+			if (null != repo) {
+				composableRepository = proxy(repo);
+			}
+		}
+	}
 
-			composableRepository = (R) proxyFactory.getProxy();
+	@Override
+	public void destroy() {
+		if (null != pools) {
+			pools.release();
+			pools = null;
 		}
 	}
 
@@ -83,73 +114,31 @@ public class ComposableRepositoryFactoryBean<R extends ComposableCrudRepository<
 		return true;
 	}
 
-	private static class QueryMethodExecutor<R extends ComposableCrudRepository<T, ID>, T, ID extends Serializable> implements MethodInterceptor {
-		private final Map<String, Method>     crudMethods  = new HashMap<String, Method>();
-		private final Map<String, Method>     queryMethods = new HashMap<String, Method>();
-		private final Map<String, Class<?>[]> paramTypes   = new HashMap<String, Class<?>[]>();
-		private final CrudRepository<T, ID> delegateRepository;
-
-		private QueryMethodExecutor(Class<R> composableRepositoryType, CrudRepository<T, ID> delegateRepository) {
-			this.delegateRepository = delegateRepository;
-
-			doWithMethods(
-					composableRepositoryType,
-					new ReflectionUtils.MethodCallback() {
-						@Override
-						public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
-							String name = method.toGenericString();
-							Class<?>[] paramTypes = method.getParameterTypes();
-							QueryMethodExecutor.this.paramTypes.put(name, paramTypes);
-						}
-					},
-					new ReflectionUtils.MethodFilter() {
-						@Override
-						public boolean matches(Method method) {
-							return Object.class != method.getDeclaringClass() && !method.getName().contains("$");
-						}
-					}
-			);
+	@SuppressWarnings("unchecked")
+	private R proxy(ComposableCrudRepository<T, ID> repo) {
+		ProxyFactory proxyFactory = new ProxyFactory(repo);
+		proxyFactory.addInterface(repositoryType);
+		proxyFactory.addInterface(ComposableRepository.class);
+		if (repo instanceof ComposableRepositoryStats) {
+			proxyFactory.addInterface(ComposableRepositoryStats.class);
 		}
 
-		@SuppressWarnings("unchecked")
-		@Override
-		public Object invoke(MethodInvocation invocation) throws Throwable {
-			String name = invocation.getMethod().toGenericString();
-			Class<?>[] paramTypes = this.paramTypes.get(name);
-
-			try {
-				Method m;
-				if (null == (m = crudMethods.get(name))) {
-					if (null != (m = invocation.getThis().getClass().getDeclaredMethod(invocation.getMethod().getName(), paramTypes))) {
-						crudMethods.put(name, m);
-					}
-				}
-				if (null != m) {
-					return m.invoke(invocation.getThis(), invocation.getArguments());
-				}
-			} catch (Exception e) {
-				if (NoSuchMethodException.class.isAssignableFrom(e.getClass())) {
-					// this is probably a finder method
-					Method m;
-					if (null == (m = queryMethods.get(name))) {
-						if (null != (m = delegateRepository.getClass().getDeclaredMethod(invocation.getMethod().getName(), paramTypes))) {
-							queryMethods.put(name, m);
-						}
-					}
-					if (null != m) {
-						Object result = m.invoke(delegateRepository, invocation.getArguments());
-						if (result instanceof Iterable) {
-							return Composable.from((Iterable) result);
-						} else {
-							return Composable.from(result);
-						}
-					}
-				}
-
-				throw e;
-			}
+		proxyFactory.addAdvice(new QueryMethodExecutor<R, T, ID>(repositoryType, repo, delegateRepository));
 
-			throw new NoSuchMethodException(name);
+		return (R) proxyFactory.getProxy();
+	}
+
+	/**
+	 * Kept apart so that {@link Riak} is only loaded when it's on the classpath.
+	 */
+	private static class RiakRepositories {
+		private static <T, ID extends Serializable> ComposableCrudRepository<T, ID> create(ListableBeanFactory beanFactory,
+																																											 Class<T> domainType) {
+			Map<String, Riak> riaks = beanFactory.getBeansOfType(Riak.class);
+			if (riaks.size() != 1) {
+				return null;
+			}
+			return new RiakComposableCrudRepository<T, ID>(riaks.values().iterator().next(), domainType);
 		}
 	}
 
@@ -0,0 +1,118 @@
+package reactor.data.spring;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The timer and the read and write pools that {@link SimpleComposableCrudRepository SimpleComposableCrudRepositories}
+ * call their delegates on. Repositories created by {@link ComposableRepositoryFactoryBean} with the same {@link
+ * ComposableRepositorySettings} share one set of pools, which is shut down once the last of them has been destroyed.
+ *
+ * @author Jon Brisbin
+ */
+final class ComposableRepositoryPools {
+
+	private static final Map<ComposableRepositorySettings, ComposableRepositoryPools> SHARED =
+			new IdentityHashMap<ComposableRepositorySettings, ComposableRepositoryPools>();
+
+	private final ComposableRepositorySettings settings;
+	private final ScheduledExecutorService     timer;
+	private final ThreadPoolExecutor           writes;
+	private final ThreadPoolExecutor           reads;
+	private       int                          references;
+
+	/**
+	 * Create pools sized by the given settings that aren't shared with any other repository. The caller owns them and
+	 * must {@link #shutdown()} them once their repositories are no longer used.
+	 */
+	ComposableRepositoryPools(ComposableRepositorySettings settings) {
+		this.settings = settings;
+		this.timer = Executors.newSingleThreadScheduledExecutor(daemon("composable-repository-timer"));
+		this.writes = pool("composable-repository-writes", settings.getWriteThreads());
+		this.reads = pool("composable-repository-reads", settings.getReadThreads());
+	}
+
+	/**
+	 * Get the pools shared by every repository with the given settings, creating them if this is the first. Every call
+	 * must be matched by a call to {@link #release()}.
+	 */
+	static ComposableRepositoryPools acquire(ComposableRepositorySettings settings) {
+		synchronized (SHARED) {
+			ComposableRepositoryPools pools = SHARED.get(settings);
+			if (null == pools) {
+				pools = new ComposableRepositoryPools(settings);
+				SHARED.put(settings, pools);
+			}
+			pools.references++;
+			return pools;
+		}
+	}
+
+	/**
+	 * Give back pools taken by {@link #acquire(ComposableRepositorySettings)}, shutting them down if no other repository
+	 * is using them.
+	 */
+	void release() {
+		synchronized (SHARED) {
+			if (--references > 0) {
+				return;
+			}
+			SHARED.remove(settings);
+		}
+		shutdown();
+	}
+
+	/**
+	 * Stop the timer and the pools. Calls that are already queued are still run.
+	 */
+	void shutdown() {
+		timer.shutdown();
+		writes.shutdown();
+		reads.shutdown();
+	}
+
+	boolean isShutdown() {
+		return timer.isShutdown() && writes.isShutdown() && reads.isShutdown();
+	}
+
+	ScheduledExecutorService getTimer() {
+		return timer;
+	}
+
+	ThreadPoolExecutor getWrites() {
+		return writes;
+	}
+
+	ThreadPoolExecutor getReads() {
+		return reads;
+	}
+
+	private static ThreadPoolExecutor pool(String name, int threads) {
+		return new ThreadPoolExecutor(threads,
+																	threads,
+																	0L,
+																	TimeUnit.MILLISECONDS,
+																	new LinkedBlockingQueue<Runnable>(),
+																	daemon(name));
+	}
+
+	private static ThreadFactory daemon(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,229 @@
+package reactor.data.spring;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tuning for the {@link ComposableCrudRepository ComposableCrudRepositories} that wrap a Spring Data repository. The
+ * settings are usually taken from the attributes of {@link reactor.data.spring.config.EnableComposableRepositories},
+ * unless the application context holds a single {@code ComposableRepositorySettings} bean, which is used instead.
+ * <p>
+ * <pre>
+ * ComposableRepositorySettings settings = new ComposableRepositorySettings()
+ *     .saveBatching(500, 20, TimeUnit.MILLISECONDS, 50000)
+ *     .findAllPaging(200, 2)
+ *     .lookupBatching(250, 5, TimeUnit.MILLISECONDS)
+ *     .readPool(16)
+ *     .writePool(4);
+ * </pre>
+ *
+ * @author Jon Brisbin
+ */
+public class ComposableRepositorySettings {
+
+	public static final int  DEFAULT_SAVE_BATCH_SIZE      = 100;
+	public static final long DEFAULT_SAVE_LINGER_MILLIS   = 10;
+	public static final int  DEFAULT_MAX_BUFFERED_SAVES   = 10000;
+	public static final int  DEFAULT_FIND_ALL_PAGE_SIZE   = 1000;
+	public static final int  DEFAULT_FIND_ALL_PREFETCH    = 1;
+	public static final int  DEFAULT_LOOKUP_BATCH_SIZE    = 100;
+	public static final long DEFAULT_LOOKUP_LINGER_MILLIS = 5;
+	public static final int  DEFAULT_READ_THREADS         = 8;
+	public static final int  DEFAULT_WRITE_THREADS        = 2;
+
+	private int  saveBatchSize      = DEFAULT_SAVE_BATCH_SIZE;
+	private long saveLingerMillis   = DEFAULT_SAVE_LINGER_MILLIS;
+	private int  maxBufferedSaves   = DEFAULT_MAX_BUFFERED_SAVES;
+	private int  findAllPageSize    = DEFAULT_FIND_ALL_PAGE_SIZE;
+	private int  findAllPrefetch    = DEFAULT_FIND_ALL_PREFETCH;
+	private int  lookupBatchSize    = DEFAULT_LOOKUP_BATCH_SIZE;
+	private long lookupLingerMillis = DEFAULT_LOOKUP_LINGER_MILLIS;
+	private int  readThreads        = DEFAULT_READ_THREADS;
+	private int  writeThreads       = DEFAULT_WRITE_THREADS;
+
+	/**
+	 * Buffer the entities passed to {@link ComposableCrudRepository#save(reactor.core.Composable)} and save them with the
+	 * delegate's bulk {@code save(Iterable)}. A batch is saved once it holds {@code batchSize} entities or once its first
+	 * entity has waited {@code linger}, whichever comes first. Once {@code maxBuffered} entities are waiting to be saved,
+	 * adding another blocks until a batch has been written.
+	 *
+	 * @param batchSize   the most entities to save at once, or {@literal 1} to save each entity as it arrives
+	 * @param linger      how long an entity may wait for its batch to fill
+	 * @param unit        the unit of {@code linger}
+	 * @param maxBuffered the most entities waiting to be saved at a time
+	 * @return {@literal this}
+	 */
+	public ComposableRepositorySettings saveBatching(int batchSize, long linger, TimeUnit unit, int maxBuffered) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		}
+		if (linger < 0) {
+			throw new IllegalArgumentException("linger cannot be negative");
+		}
+		if (maxBuffered < batchSize) {
+			throw new IllegalArgumentException("maxBuffered must be at least batchSize");
+		}
+		this.saveBatchSize = batchSize;
+		this.saveLingerMillis = unit.toMillis(linger);
+		this.maxBufferedSaves = maxBuffered;
+		return this;
+	}
+
+	/**
+	 * Read {@link ComposableCrudRepository#findAll()} a page at a time from delegates that are {@link
+	 * org.springframework.data.repository.PagingAndSortingRepository PagingAndSortingRepositories}, loading up to {@code
+	 * prefetch} pages ahead of the one being emitted.
+	 *
+	 * @param pageSize the number of entities in a page
+	 * @param prefetch the number of pages to load ahead, or {@literal 0} to load the next page once the current one has
+	 *                 been emitted
+	 * @return {@literal this}
+	 */
+	public ComposableRepositorySettings findAllPaging(int pageSize, int prefetch) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be at least 1");
+		}
+		if (prefetch < 0) {
+			throw new IllegalArgumentException("prefetch cannot be negative");
+		}
+		this.findAllPageSize = pageSize;
+		this.findAllPrefetch = prefetch;
+		return this;
+	}
+
+	/**
+	 * Buffer the IDs passed to {@link ComposableCrudRepository#findAll(reactor.core.Composable)} and look them up with
+	 * the delegate's bulk {@code findAll(Iterable)}. A batch is looked up once it holds {@code batchSize} IDs or once its
+	 * first ID has waited {@code linger}, whichever comes first.
+	 *
+	 * @param batchSize the most IDs to look up at once, or {@literal 1} to look up each ID as it arrives
+	 * @param linger    how long an ID may wait for its batch to fill
+	 * @param unit      the unit of {@code linger}
+	 * @return {@literal this}
+	 */
+	public ComposableRepositorySettings lookupBatching(int batchSize, long linger, TimeUnit unit) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		}
+		if (linger < 0) {
+			throw new IllegalArgumentException("linger cannot be negative");
+		}
+		this.lookupBatchSize = batchSize;
+		this.lookupLingerMillis = unit.toMillis(linger);
+		return this;
+	}
+
+	/**
+	 * Run reads against the delegate ({@code findOne}, {@code exists}, {@code findAll} and {@code count}) on a pool of
+	 * {@code threads} threads. Size the read and write pools together to the datastore client's connection pool, so
+	 * threads don't queue for connections; the defaults add up to the 10 connections per host of the MongoDB driver.
+	 *
+	 * @param threads the number of read threads
+	 * @return {@literal this}
+	 */
+	public ComposableRepositorySettings readPool(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		this.readThreads = threads;
+		return this;
+	}
+
+	/**
+	 * Run writes against the delegate ({@code save}, {@code delete} and {@code deleteAll}) on a pool of {@code threads}
+	 * threads. The values arriving on one {@link reactor.core.Composable} are always written in order, but with more
+	 * than one thread the writes of different calls may be interleaved.
+	 *
+	 * @param threads the number of write threads
+	 * @return {@literal this}
+	 * @see #readPool(int)
+	 */
+	public ComposableRepositorySettings writePool(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		this.writeThreads = threads;
+		return this;
+	}
+
+	/**
+	 * Get the most entities saved at once.
+	 *
+	 * @return the save batch size
+	 */
+	public int getSaveBatchSize() {
+		return saveBatchSize;
+	}
+
+	/**
+	 * Get how long, in milliseconds, an entity may wait for its batch to fill.
+	 *
+	 * @return the save linger time
+	 */
+	public long getSaveLingerMillis() {
+		return saveLingerMillis;
+	}
+
+	/**
+	 * Get the most entities waiting to be saved at a time.
+	 *
+	 * @return the maximum number of buffered saves
+	 */
+	public int getMaxBufferedSaves() {
+		return maxBufferedSaves;
+	}
+
+	/**
+	 * Get the number of entities in a page read by {@code findAll()}.
+	 *
+	 * @return the page size
+	 */
+	public int getFindAllPageSize() {
+		return findAllPageSize;
+	}
+
+	/**
+	 * Get the number of pages {@code findAll()} loads ahead.
+	 *
+	 * @return the number of pages to prefetch
+	 */
+	public int getFindAllPrefetch() {
+		return findAllPrefetch;
+	}
+
+	/**
+	 * Get the most IDs looked up at once.
+	 *
+	 * @return the lookup batch size
+	 */
+	public int getLookupBatchSize() {
+		return lookupBatchSize;
+	}
+
+	/**
+	 * Get how long, in milliseconds, an ID may wait for its lookup batch to fill.
+	 *
+	 * @return the lookup linger time
+	 */
+	public long getLookupLingerMillis() {
+		return lookupLingerMillis;
+	}
+
+	/**
+	 * Get the number of threads running reads.
+	 *
+	 * @return the number of read threads
+	 */
+	public int getReadThreads() {
+		return readThreads;
+	}
+
+	/**
+	 * Get the number of threads running writes.
+	 *
+	 * @return the number of write threads
+	 */
+	public int getWriteThreads() {
+		return writeThreads;
+	}
+
+}
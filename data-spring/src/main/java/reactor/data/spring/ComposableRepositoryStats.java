@@ -0,0 +1,62 @@
+package reactor.data.spring;
+
+/**
+ * Gauges of the work queued and running on behalf of a {@link ComposableCrudRepository} that wraps a blocking Spring
+ * Data repository. The repository proxies created by {@link ComposableRepositoryFactoryBean} implement this interface
+ * when the repository behind them keeps these statistics. The read and write gauges are those of the pools, so
+ * repositories that share their pools report the same values.
+ *
+ * @author Jon Brisbin
+ */
+public interface ComposableRepositoryStats {
+
+	/**
+	 * Get the number of reads waiting for a read thread.
+	 *
+	 * @return the read queue depth
+	 */
+	int getReadQueueDepth();
+
+	/**
+	 * Get the number of reads running.
+	 *
+	 * @return the number of active reads
+	 */
+	int getActiveReads();
+
+	/**
+	 * Get the number of reads that have finished, approximately.
+	 *
+	 * @return the number of completed reads
+	 */
+	long getCompletedReads();
+
+	/**
+	 * Get the number of writes waiting for a write thread.
+	 *
+	 * @return the write queue depth
+	 */
+	int getWriteQueueDepth();
+
+	/**
+	 * Get the number of writes running.
+	 *
+	 * @return the number of active writes
+	 */
+	int getActiveWrites();
+
+	/**
+	 * Get the number of writes that have finished, approximately.
+	 *
+	 * @return the number of completed writes
+	 */
+	long getCompletedWrites();
+
+	/**
+	 * Get the number of entities passed to {@code save} that haven't been saved yet.
+	 *
+	 * @return the number of buffered saves
+	 */
+	int getBufferedSaves();
+
+}
@@ -0,0 +1,123 @@
+package reactor.data.spring;
+
+import reactor.fn.Consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Buffers the values arriving on a {@link reactor.core.Composable} and hands them to {@link #write(List)} in batches. A
+ * batch is written once it holds {@code batchSize} values or once its first value has waited {@code linger}, whichever
+ * comes first. Batches are written one at a time, in the order they were filled, on the given {@link Executor}, so
+ * batchers sharing an executor run side by side without reordering their own results.
+ * <p>
+ * If a {@link Semaphore} is given, each value takes a permit when it arrives and gives it back once its batch has been
+ * written, so a producer that gets too far ahead blocks.
+ *
+ * @author Jon Brisbin
+ */
+abstract class MicroBatcher<V> implements Consumer<V> {
+
+	private final List<V>        buffer   = new ArrayList<V>();
+	private final Queue<List<V>> batches  = new ConcurrentLinkedQueue<List<V>>();
+	private final AtomicBoolean  draining = new AtomicBoolean();
+	private final ScheduledExecutorService timer;
+	private final Executor                 executor;
+	private final Semaphore                permits;
+	private final int                      batchSize;
+	private final long                     lingerMillis;
+	private       ScheduledFuture<?>       lingerTask;
+
+	MicroBatcher(ScheduledExecutorService timer, Executor executor, Semaphore permits, int batchSize, long lingerMillis) {
+		this.timer = timer;
+		this.executor = executor;
+		this.permits = permits;
+		this.batchSize = batchSize;
+		this.lingerMillis = lingerMillis;
+	}
+
+	/**
+	 * Write a batch. Called on the executor, never for two batches of the same batcher at once. Implementations must not
+	 * throw, or batches queued behind this one would never be written.
+	 *
+	 * @param batch the values to write, in the order they arrived
+	 */
+	protected abstract void write(List<V> batch);
+
+	@Override
+	public void accept(V value) {
+		if (null != permits) {
+			permits.acquireUninterruptibly();
+		}
+		synchronized (this) {
+			buffer.add(value);
+			if (buffer.size() >= batchSize) {
+				flush();
+			} else if (null == lingerTask) {
+				lingerTask = timer.schedule(
+						new Runnable() {
+							@Override
+							public void run() {
+								synchronized (MicroBatcher.this) {
+									lingerTask = null;
+									flush();
+								}
+							}
+						},
+						lingerMillis,
+						TimeUnit.MILLISECONDS
+				);
+			}
+		}
+	}
+
+	/**
+	 * Queue the buffered values for writing. Must be called while holding this batcher's lock, so batches are queued in
+	 * the order they were filled.
+	 */
+	private void flush() {
+		if (null != lingerTask) {
+			lingerTask.cancel(false);
+			lingerTask = null;
+		}
+		if (buffer.isEmpty()) {
+			return;
+		}
+		batches.add(new ArrayList<V>(buffer));
+		buffer.clear();
+		if (draining.compareAndSet(false, true)) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					drain();
+				}
+			});
+		}
+	}
+
+	private void drain() {
+		do {
+			List<V> batch;
+			while (null != (batch = batches.poll())) {
+				try {
+					write(batch);
+				} finally {
+					if (null != permits) {
+						permits.release(batch.size());
+					}
+				}
+			}
+			draining.set(false);
+			// a batch queued after the last poll but before draining was cleared would otherwise be stranded
+		} while (!batches.isEmpty() && draining.compareAndSet(false, true));
+	}
+
+}
@@ -0,0 +1,134 @@
+package reactor.data.spring;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import reactor.Fn;
+import reactor.core.Composable;
+import reactor.core.Reactor;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Streams every entity of a {@link PagingAndSortingRepository} one page at a time. Pages are loaded on the read
+ * executor, and each page's entities are emitted by the thread that loaded it, as soon as the pages before it have been
+ * emitted. Up to {@code prefetch} pages are loaded ahead of the one being emitted, so the first entity is emitted as
+ * soon as the first page arrives and no more than {@code prefetch + 1} pages are held at once. With no prefetch, the
+ * next page is only loaded once every entity of the current one has been emitted. No thread waits for a page to arrive.
+ * <p>
+ * Pages are requested without a sort, so entities saved or deleted while the stream is running may be skipped or
+ * emitted twice. If a page fails to load, the error is published on the repository's {@link Reactor} by its type and
+ * the stream stops.
+ *
+ * @author Jon Brisbin
+ */
+class PagedFindAll<T, ID extends Serializable> {
+
+	private final Map<Integer, Page<T>> loaded = new HashMap<Integer, Page<T>>();
+	private final PagingAndSortingRepository<T, ID> repository;
+	private final Executor                          reads;
+	private final Reactor                           reactor;
+	private final Composable<T>                     entities;
+	private final int                               pageSize;
+	private final int                               prefetch;
+	private       int                               nextToLoad;
+	private       int                               nextToEmit;
+	private       int                               totalPages = 1;
+	private       boolean                           emitting;
+	private       boolean                           failed;
+
+	PagedFindAll(PagingAndSortingRepository<T, ID> repository,
+							 Executor reads,
+							 Reactor reactor,
+							 Composable<T> entities,
+							 int pageSize,
+							 int prefetch) {
+		this.repository = repository;
+		this.reads = reads;
+		this.reactor = reactor;
+		this.entities = entities;
+		this.pageSize = pageSize;
+		this.prefetch = prefetch;
+	}
+
+	synchronized void start() {
+		loadAhead();
+	}
+
+	/**
+	 * Start loading pages until {@code prefetch} pages are loading or loaded beyond the one being emitted, or waited for.
+	 * Must be called while holding this stream's lock.
+	 */
+	private void loadAhead() {
+		// nextToEmit stays on a page until it has been emitted, so it counts as the current page rather than one ahead
+		while (!failed && nextToLoad < totalPages && nextToLoad - (nextToEmit + 1) < prefetch) {
+			load(nextToLoad++);
+		}
+	}
+
+	private void load(final int page) {
+		reads.execute(new Runnable() {
+			@Override
+			public void run() {
+				Page<T> p;
+				try {
+					p = repository.findAll(new PageRequest(page, pageSize));
+				} catch (RuntimeException e) {
+					failed(e);
+					return;
+				}
+				loaded(page, p);
+			}
+		});
+	}
+
+	private void loaded(int page, Page<T> p) {
+		synchronized (this) {
+			if (failed) {
+				return;
+			}
+			loaded.put(page, p);
+			totalPages = p.getTotalPages();
+			loadAhead();
+			if (emitting) {
+				// whoever is emitting will get to this page
+				return;
+			}
+			emitting = true;
+		}
+		emit();
+	}
+
+	private void emit() {
+		for (; ; ) {
+			Page<T> page;
+			synchronized (this) {
+				page = loaded.get(nextToEmit);
+				if (null == page || failed) {
+					emitting = false;
+					return;
+				}
+			}
+			for (T entity : page) {
+				entities.accept(entity);
+			}
+			synchronized (this) {
+				loaded.remove(nextToEmit);
+				nextToEmit++;
+				loadAhead();
+			}
+		}
+	}
+
+	private void failed(Throwable t) {
+		synchronized (this) {
+			failed = true;
+			loaded.clear();
+		}
+		reactor.notify(Fn.T(t.getClass()), Fn.event(t));
+	}
+
+}
@@ -0,0 +1,149 @@
+package reactor.data.spring;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.util.ReflectionUtils;
+import reactor.core.Composable;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.springframework.util.ReflectionUtils.doWithMethods;
+
+/**
+ * Dispatches calls on a {@link ComposableRepository} proxy. Every method of the repository interface is resolved once,
+ * when the executor is created, to an {@link Invoker} holding a {@link MethodHandle} bound to its target: methods the
+ * {@link ComposableCrudRepository} implements go to it, and finder methods go to the delegate {@link CrudRepository},
+ * with their results wrapped in a {@link Composable}. A call is then a single map lookup by {@link Method} and an exact
+ * handle invocation.
+ * <p>
+ * The map of invokers is complete and read-only once the constructor returns, so concurrent calls on a repository
+ * proxy, including the first calls of each method, share it without locking.
+ * <p>
+ * Methods that aren't declared by the repository interface, like {@code toString()}, proceed to the target as usual.
+ *
+ * @author Jon Brisbin
+ */
+class QueryMethodExecutor<R extends ComposableCrudRepository<T, ID>, T, ID extends Serializable> implements MethodInterceptor {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private final Map<Method, Invoker> invokers;
+
+	QueryMethodExecutor(Class<R> composableRepositoryType,
+											final ComposableCrudRepository<T, ID> repository,
+											final CrudRepository<T, ID> delegateRepository) {
+		final Map<Method, Invoker> invokers = new HashMap<Method, Invoker>();
+		doWithMethods(
+				composableRepositoryType,
+				new ReflectionUtils.MethodCallback() {
+					@Override
+					public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
+						if (!invokers.containsKey(method)) {
+							invokers.put(method, resolve(method, repository, delegateRepository));
+						}
+					}
+				},
+				new ReflectionUtils.MethodFilter() {
+					@Override
+					public boolean matches(Method method) {
+						return Object.class != method.getDeclaringClass() && !method.getName().contains("$");
+					}
+				}
+		);
+		this.invokers = Collections.unmodifiableMap(invokers);
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Invoker invoker = invokers.get(invocation.getMethod());
+		if (null == invoker) {
+			return invocation.proceed();
+		}
+		return invoker.invoke(invocation.getArguments());
+	}
+
+	private static Invoker resolve(Method method, Object repository, Object delegateRepository) throws IllegalAccessException {
+		String name = method.getName();
+		Class<?>[] paramTypes = method.getParameterTypes();
+
+		Method m = ReflectionUtils.findMethod(repository.getClass(), name, paramTypes);
+		if (null != m) {
+			return new Invoker(bind(m, repository), false);
+		}
+
+		// this is probably a finder method
+		if (null == delegateRepository) {
+			return new Unresolved(method, true);
+		}
+		if (null != (m = ReflectionUtils.findMethod(delegateRepository.getClass(), name, paramTypes))) {
+			return new Invoker(bind(m, delegateRepository), true);
+		}
+		return new Unresolved(method, false);
+	}
+
+	/**
+	 * Get a handle that invokes {@code m} on {@code target} with its arguments spread from an {@code Object[]}.
+	 */
+	private static MethodHandle bind(Method m, Object target) throws IllegalAccessException {
+		ReflectionUtils.makeAccessible(m);
+		int arity = m.getParameterTypes().length;
+		return LOOKUP.unreflect(m)
+								 .bindTo(target)
+								 .asType(MethodType.genericMethodType(arity))
+								 .asSpreader(Object[].class, arity);
+	}
+
+	private static class Invoker {
+		private final MethodHandle handle;
+		private final boolean      finder;
+
+		private Invoker(MethodHandle handle, boolean finder) {
+			this.handle = handle;
+			this.finder = finder;
+		}
+
+		@SuppressWarnings("unchecked")
+		Object invoke(Object[] args) throws Throwable {
+			Object result = (Object) handle.invokeExact(args);
+			if (!finder) {
+				return result;
+			}
+			if (result instanceof Iterable) {
+				return Composable.from((Iterable) result);
+			} else {
+				return Composable.from(result);
+			}
+		}
+	}
+
+	/**
+	 * Fails calls to a finder method that there's nothing to delegate to.
+	 */
+	private static class Unresolved extends Invoker {
+		private final String  name;
+		private final boolean noDelegate;
+
+		private Unresolved(Method method, boolean noDelegate) {
+			super(null, true);
+			this.name = method.toGenericString();
+			this.noDelegate = noDelegate;
+		}
+
+		@Override
+		Object invoke(Object[] args) throws Throwable {
+			if (noDelegate) {
+				throw new UnsupportedOperationException(name + " needs a Spring Data repository to delegate to");
+			}
+			throw new NoSuchMethodException(name);
+		}
+	}
+
+}
@@ -1,85 +1,190 @@
 package reactor.data.spring;
 
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.core.EntityInformation;
+import reactor.Fn;
 import reactor.core.Composable;
-import reactor.core.R;
 import reactor.core.Reactor;
-import reactor.fn.Consumer;
-import reactor.fn.Function;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * A {@link ComposableCrudRepository} that wraps a blocking Spring Data {@link CrudRepository}. Calls to the delegate
+ * never run on the {@link Reactor} that results are emitted through: reads run on a pool of {@link
+ * ComposableRepositorySettings#readPool(int) read threads} and writes on a pool of {@link
+ * ComposableRepositorySettings#writePool(int) write threads}, so a slow query only holds up the calls queued behind it
+ * on the same pool. Values arriving on a {@link Composable} are handed to the delegate one batch at a time, in the order
+ * they arrived.
+ *
  * @author Jon Brisbin
  */
-class SimpleComposableCrudRepository<T, ID extends Serializable> implements ComposableCrudRepository<T, ID> {
+class SimpleComposableCrudRepository<T, ID extends Serializable>
+		implements ComposableCrudRepository<T, ID>,
+							 ComposableRepositoryStats {
 
 	private final Reactor reactor = new Reactor();
-	private final CrudRepository<T, ID> delegateRepository;
+	private final CrudRepository<T, ID>        delegateRepository;
+	private final EntityInformation<T, ID>     entityInformation;
+	private final ComposableRepositorySettings settings;
+	private final Semaphore                    bufferedSaves;
+	private final ScheduledExecutorService     timer;
+	private final ThreadPoolExecutor           writes;
+	private final ThreadPoolExecutor           reads;
 
-	SimpleComposableCrudRepository(CrudRepository<T, ID> delegateRepository) {
+	/**
+	 * Create a repository that calls its delegate on the given pools, which may be shared with other repositories. The
+	 * caller owns the pools and shuts them down.
+	 */
+	SimpleComposableCrudRepository(CrudRepository<T, ID> delegateRepository,
+																 EntityInformation<T, ID> entityInformation,
+																 ComposableRepositorySettings settings,
+																 ComposableRepositoryPools pools) {
 		this.delegateRepository = delegateRepository;
+		this.entityInformation = entityInformation;
+		this.settings = settings;
+		this.bufferedSaves = new Semaphore(settings.getMaxBufferedSaves());
+		this.timer = pools.getTimer();
+		this.writes = pools.getWrites();
+		this.reads = pools.getReads();
 	}
 
+	/**
+	 * Save entities as they arrive. If saves are batched, entities are buffered and written with the delegate's bulk
+	 * {@code save(Iterable)}. Either way the saved entities are emitted in the order they arrived.
+	 *
+	 * @see ComposableRepositorySettings#saveBatching(int, long, TimeUnit, int)
+	 */
 	@Override
-
 	public <S extends T> Composable<S> save(Composable<S> entities) {
 		final Composable<S> c = new Composable<S>(reactor);
-		entities.consume(new Consumer<S>() {
+		entities.consume(new MicroBatcher<S>(timer,
+																				 writes,
+																				 bufferedSaves,
+																				 settings.getSaveBatchSize(),
+																				 settings.getSaveLingerMillis()) {
 			@Override
-			public void accept(S entity) {
-				c.accept(delegateRepository.save(entity));
+			protected void write(List<S> batch) {
+				try {
+					if (batch.size() == 1) {
+						c.accept(delegateRepository.save(batch.get(0)));
+						return;
+					}
+					for (S entity : delegateRepository.save(batch)) {
+						c.accept(entity);
+					}
+				} catch (RuntimeException e) {
+					publishError(e);
+				}
 			}
 		});
 		return c;
 	}
 
 	@Override
-	public Composable<T> findOne(ID id) {
-		return new Composable<ID>(reactor.getDispatcher())
-				.map(new Function<ID, T>() {
-					@Override
-					public T apply(ID id) {
-						return delegateRepository.findOne(id);
-					}
-				});
+	public Composable<T> findOne(final ID id) {
+		return submit(reads, new Callable<T>() {
+			@Override
+			public T call() {
+				return delegateRepository.findOne(id);
+			}
+		});
 	}
 
 	@Override
-	public Composable<Boolean> exists(ID id) {
-		return Composable.from(id)
-										 .using(reactor)
-										 .build()
-										 .map(new Function<ID, Boolean>() {
-											 @Override
-											 public Boolean apply(ID id) {
-												 return delegateRepository.exists(id);
-											 }
-										 });
+	public Composable<Boolean> exists(final ID id) {
+		return submit(reads, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return delegateRepository.exists(id);
+			}
+		});
 	}
 
+	/**
+	 * Emit every entity. If the delegate is a {@link PagingAndSortingRepository}, entities are read a page at a time and
+	 * emitted as each page arrives, with the next pages loaded in the background.
+	 *
+	 * @see ComposableRepositorySettings#findAllPaging(int, int)
+	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public Composable<T> findAll() {
 		final Composable<T> c = new Composable<T>(reactor);
-		Consumer<Void> consumer = new Consumer<Void>() {
+		if (delegateRepository instanceof PagingAndSortingRepository) {
+			new PagedFindAll<T, ID>((PagingAndSortingRepository<T, ID>) delegateRepository,
+															reads,
+															reactor,
+															c,
+															settings.getFindAllPageSize(),
+															settings.getFindAllPrefetch()).start();
+			return c;
+		}
+		reads.execute(new Runnable() {
 			@Override
-			public void accept(Void v) {
-				for (T t : delegateRepository.findAll()) {
-					c.accept(t);
+			public void run() {
+				try {
+					for (T t : delegateRepository.findAll()) {
+						c.accept(t);
+					}
+				} catch (RuntimeException e) {
+					publishError(e);
 				}
 			}
-		};
-		R.schedule(consumer, null, reactor);
+		});
 		return c;
 	}
 
+	/**
+	 * Emit the entities with the given IDs, in the order their IDs arrived. If lookups are batched, IDs are buffered and
+	 * resolved with the delegate's bulk {@code findAll(Iterable)}; otherwise each is resolved with {@code findOne}. Either
+	 * way, IDs with no entity are skipped rather than emitted as {@literal null}.
+	 *
+	 * @see ComposableRepositorySettings#lookupBatching(int, long, TimeUnit)
+	 */
 	@Override
 	public Composable<T> findAll(Composable<ID> ids) {
 		final Composable<T> c = new Composable<T>(reactor);
-		ids.consume(new Consumer<ID>() {
+		final boolean batched = settings.getLookupBatchSize() > 1 && null != entityInformation;
+		ids.consume(new MicroBatcher<ID>(timer,
+																		 reads,
+																		 null,
+																		 (batched ? settings.getLookupBatchSize() : 1),
+																		 settings.getLookupLingerMillis()) {
 			@Override
-			public void accept(ID id) {
-				c.accept(delegateRepository.findOne(id));
+			protected void write(List<ID> batch) {
+				Map<ID, T> found = new HashMap<ID, T>();
+				try {
+					if (!batched) {
+						for (ID id : batch) {
+							T entity = delegateRepository.findOne(id);
+							if (null != entity) {
+								c.accept(entity);
+							}
+						}
+						return;
+					}
+					for (T entity : delegateRepository.findAll(batch)) {
+						found.put(entityInformation.getId(entity), entity);
+					}
+				} catch (RuntimeException e) {
+					publishError(e);
+					return;
+				}
+				for (ID id : batch) {
+					T entity = found.get(id);
+					if (null != entity) {
+						c.accept(entity);
+					}
+				}
 			}
 		});
 		return c;
@@ -87,40 +192,40 @@ class SimpleComposableCrudRepository<T, ID extends Serializable> implements Comp
 
 	@Override
 	public Composable<Long> count() {
-		final Composable<Long> c = new Composable<Long>();
-		Consumer<Void> consumer = new Consumer<Void>() {
+		return submit(reads, new Callable<Long>() {
 			@Override
-			public void accept(Void v) {
-				c.accept(delegateRepository.count());
+			public Long call() {
+				return delegateRepository.count();
 			}
-		};
-		R.schedule(consumer, null, reactor);
-		return c;
+		});
 	}
 
 	@Override
-	public Composable<Void> delete(ID id) {
-		return Composable.from(id)
-										 .using(reactor)
-										 .build()
-										 .map(new Function<ID, Void>() {
-											 @Override
-											 public Void apply(ID id) {
-												 delegateRepository.delete(id);
-												 return null;
-											 }
-										 });
+	public Composable<Void> delete(final ID id) {
+		return submit(writes, new Callable<Void>() {
+			@Override
+			public Void call() {
+				delegateRepository.delete(id);
+				return null;
+			}
+		});
 	}
 
 	@Override
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	public Composable<Void> delete(Composable<? extends T> entities) {
 		final Composable<Void> c = new Composable<Void>(reactor);
-		entities.consume(new Consumer() {
+		entities.consume(new MicroBatcher(timer, writes, null, 1, 0) {
 			@Override
-			public void accept(Object o) {
-				delegateRepository.delete((T) o);
-				c.accept((Void) null);
+			protected void write(List batch) {
+				try {
+					for (Object entity : batch) {
+						delegateRepository.delete((T) entity);
+						c.accept((Void) null);
+					}
+				} catch (RuntimeException e) {
+					publishError(e);
+				}
 			}
 		});
 		return c;
@@ -128,16 +233,70 @@ class SimpleComposableCrudRepository<T, ID extends Serializable> implements Comp
 
 	@Override
 	public Composable<Void> deleteAll() {
-		final Composable<Void> c = new Composable<Void>(reactor);
-		Consumer<Void> consumer = new Consumer<Void>() {
+		return submit(writes, new Callable<Void>() {
 			@Override
-			public void accept(Void aVoid) {
+			public Void call() {
 				delegateRepository.deleteAll();
-				c.accept((Void) null);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public int getReadQueueDepth() {
+		return reads.getQueue().size();
+	}
+
+	@Override
+	public int getActiveReads() {
+		return reads.getActiveCount();
+	}
+
+	@Override
+	public long getCompletedReads() {
+		return reads.getCompletedTaskCount();
+	}
+
+	@Override
+	public int getWriteQueueDepth() {
+		return writes.getQueue().size();
+	}
+
+	@Override
+	public int getActiveWrites() {
+		return writes.getActiveCount();
+	}
+
+	@Override
+	public long getCompletedWrites() {
+		return writes.getCompletedTaskCount();
+	}
+
+	@Override
+	public int getBufferedSaves() {
+		return settings.getMaxBufferedSaves() - bufferedSaves.availablePermits();
+	}
+
+	/**
+	 * Run {@code call} on {@code pool} and emit its result.
+	 */
+	private <V> Composable<V> submit(ThreadPoolExecutor pool, final Callable<V> call) {
+		final Composable<V> c = new Composable<V>(reactor);
+		pool.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					c.accept(call.call());
+				} catch (Exception e) {
+					publishError(e);
+				}
 			}
-		};
-		R.schedule(consumer, null, reactor);
+		});
 		return c;
 	}
 
+	private void publishError(Throwable t) {
+		reactor.notify(Fn.T(t.getClass()), Fn.event(t));
+	}
+
 }
@@ -13,8 +13,10 @@ import org.springframework.core.type.filter.AssignableTypeFilter;
 import org.springframework.util.ClassUtils;
 import reactor.data.spring.ComposableRepository;
 import reactor.data.spring.ComposableRepositoryFactoryBean;
+import reactor.data.spring.ComposableRepositorySettings;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Jon Brisbin
@@ -55,10 +57,29 @@ public class ComposableRepositoryBeanDefinitionRegistrar
 			basePackages = new String[]{s};
 		}
 
+		ComposableRepositorySettings settings = new ComposableRepositorySettings().saveBatching(
+				(Integer) attrs.get("saveBatchSize"),
+				(Long) attrs.get("saveLingerMillis"),
+				TimeUnit.MILLISECONDS,
+				(Integer) attrs.get("maxBufferedSaves")
+		).findAllPaging(
+				(Integer) attrs.get("findAllPageSize"),
+				(Integer) attrs.get("findAllPrefetch")
+		).lookupBatching(
+				(Integer) attrs.get("lookupBatchSize"),
+				(Long) attrs.get("lookupLingerMillis"),
+				TimeUnit.MILLISECONDS
+		).readPool(
+				(Integer) attrs.get("readThreads")
+		).writePool(
+				(Integer) attrs.get("writeThreads")
+		);
+
 		for (String basePackage : basePackages) {
 			for (BeanDefinition beanDef : provider.findCandidateComponents(basePackage)) {
 				BeanDefinitionBuilder factoryBeanDef = BeanDefinitionBuilder.rootBeanDefinition(ComposableRepositoryFactoryBean.class.getName());
 				factoryBeanDef.addConstructorArgValue(ClassUtils.resolveClassName(beanDef.getBeanClassName(), classLoader));
+				factoryBeanDef.addConstructorArgValue(settings);
 
 				registry.registerBeanDefinition(beanDef.getBeanClassName(), factoryBeanDef.getBeanDefinition());
 			}
@@ -2,6 +2,7 @@ package reactor.data.spring.config;
 
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Import;
+import reactor.data.spring.ComposableRepositorySettings;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -42,4 +43,51 @@ public @interface EnableComposableRepositories {
 	 */
 	ComponentScan.Filter[] excludeFilters() default {};
 
+	/**
+	 * The most entities a repository saves with one bulk {@code save(Iterable)} on its Spring Data delegate. Set to
+	 * {@literal 1} to save each entity as it arrives.
+	 */
+	int saveBatchSize() default ComposableRepositorySettings.DEFAULT_SAVE_BATCH_SIZE;
+
+	/**
+	 * How long, in milliseconds, an entity may wait for its save batch to fill.
+	 */
+	long saveLingerMillis() default ComposableRepositorySettings.DEFAULT_SAVE_LINGER_MILLIS;
+
+	/**
+	 * The most entities a repository holds waiting to be saved before {@code save} blocks.
+	 */
+	int maxBufferedSaves() default ComposableRepositorySettings.DEFAULT_MAX_BUFFERED_SAVES;
+
+	/**
+	 * The number of entities {@code findAll()} reads at a time from delegates that support paging.
+	 */
+	int findAllPageSize() default ComposableRepositorySettings.DEFAULT_FIND_ALL_PAGE_SIZE;
+
+	/**
+	 * The number of pages {@code findAll()} loads ahead of the one being emitted.
+	 */
+	int findAllPrefetch() default ComposableRepositorySettings.DEFAULT_FIND_ALL_PREFETCH;
+
+	/**
+	 * The most IDs {@code findAll(Composable)} looks up with one bulk {@code findAll(Iterable)} on the Spring Data
+	 * delegate. Set to {@literal 1} to look up each ID as it arrives.
+	 */
+	int lookupBatchSize() default ComposableRepositorySettings.DEFAULT_LOOKUP_BATCH_SIZE;
+
+	/**
+	 * How long, in milliseconds, an ID may wait for its lookup batch to fill.
+	 */
+	long lookupLingerMillis() default ComposableRepositorySettings.DEFAULT_LOOKUP_LINGER_MILLIS;
+
+	/**
+	 * The number of threads that run reads against a repository's Spring Data delegate.
+	 */
+	int readThreads() default ComposableRepositorySettings.DEFAULT_READ_THREADS;
+
+	/**
+	 * The number of threads that run writes against a repository's Spring Data delegate.
+	 */
+	int writeThreads() default ComposableRepositorySettings.DEFAULT_WRITE_THREADS;
+
 }
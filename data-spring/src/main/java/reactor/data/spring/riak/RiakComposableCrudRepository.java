@@ -0,0 +1,410 @@
+package reactor.data.spring.riak;
+
+import com.basho.riak.client.bucket.Bucket;
+import org.springframework.data.annotation.Id;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+import reactor.Fn;
+import reactor.core.Composable;
+import reactor.core.Promise;
+import reactor.data.riak.Riak;
+import reactor.data.riak.RiakStream;
+import reactor.data.spring.ComposableCrudRepository;
+import reactor.fn.Consumer;
+import reactor.fn.Function;
+import reactor.fn.Tuple2;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ComposableCrudRepository} that keeps its entities in {@link Riak} rather than delegating to a blocking
+ * {@link org.springframework.data.repository.CrudRepository}. Every entity of the domain type lives in one bucket and is
+ * stored under the {@link String#valueOf(Object) string form} of its ID, which is read from the field annotated with
+ * {@link Id} or, failing that, the field named {@code id}.
+ * <p>
+ * Operations are handed straight to {@link Riak}, so entities arriving on a {@link Composable} are stored, fetched and
+ * deleted concurrently, each on the IO shard its key is routed to. Values are converted with Riak's default JSON
+ * converter. Errors from operations that emit many values are published on the {@link Riak} instance, keyed by their
+ * type.
+ *
+ * @author Jon Brisbin
+ */
+public class RiakComposableCrudRepository<T, ID extends Serializable> implements ComposableCrudRepository<T, ID> {
+
+	private static final int LOOKUP_BATCH_SIZE = 64;
+
+	private final Riak     riak;
+	private final Class<T> domainType;
+	private final String   bucket;
+	private final Field    idField;
+
+	/**
+	 * Create a repository that keeps entities in a bucket named after the domain type, like {@code person} for {@code
+	 * Person}.
+	 *
+	 * @param riak       the {@link Riak} to use
+	 * @param domainType the type of entity
+	 */
+	public RiakComposableCrudRepository(Riak riak, Class<T> domainType) {
+		this(riak, domainType, StringUtils.uncapitalize(domainType.getSimpleName()));
+	}
+
+	/**
+	 * Create a repository that keeps entities in the given bucket.
+	 *
+	 * @param riak       the {@link Riak} to use
+	 * @param domainType the type of entity
+	 * @param bucket     the name of the bucket
+	 */
+	public RiakComposableCrudRepository(Riak riak, Class<T> domainType, String bucket) {
+		Assert.notNull(riak, "Riak cannot be null.");
+		Assert.notNull(domainType, "Domain type cannot be null.");
+		Assert.hasText(bucket, "Bucket name cannot be empty.");
+		this.riak = riak;
+		this.domainType = domainType;
+		this.bucket = bucket;
+		this.idField = findIdField(domainType);
+	}
+
+	/**
+	 * Get the name of the bucket entities are kept in.
+	 *
+	 * @return the bucket name
+	 */
+	public String getBucket() {
+		return bucket;
+	}
+
+	@Override
+	public <S extends T> Composable<S> save(Composable<S> entities) {
+		final Composable<S> c = new Composable<S>(riak);
+		entities.consume(new Consumer<S>() {
+			@Override
+			public void accept(final S entity) {
+				final String key;
+				try {
+					key = keyOf(entity);
+				} catch (IllegalArgumentException e) {
+					publishError(e);
+					return;
+				}
+				withBucket(new Consumer<Bucket>() {
+					@Override
+					public void accept(Bucket b) {
+						emit(riak.store(b, key, entity, null, null, null), c);
+					}
+				}, errorConsumer());
+			}
+		});
+		return c;
+	}
+
+	@Override
+	public Composable<T> findOne(ID id) {
+		final String key = keyFor(id);
+		final Promise<T> p = new Promise<T>(riak);
+		withBucket(new Consumer<Bucket>() {
+			@Override
+			public void accept(Bucket b) {
+				complete(riak.fetch(b, key, domainType, null, null), p);
+			}
+		}, failure(p));
+		return p;
+	}
+
+	@Override
+	public Composable<Boolean> exists(ID id) {
+		return findOne(id).map(new Function<T, Boolean>() {
+			@Override
+			public Boolean apply(T entity) {
+				return null != entity;
+			}
+		});
+	}
+
+	@Override
+	public Composable<T> findAll() {
+		final Composable<T> c = new Composable<T>(riak);
+		withBucket(new Consumer<Bucket>() {
+			@Override
+			public void accept(Bucket b) {
+				riak.scan(b, domainType).consume(new Consumer<Tuple2<String, T>>() {
+					@Override
+					public void accept(Tuple2<String, T> kv) {
+						c.accept(kv.getT2());
+					}
+				});
+			}
+		}, errorConsumer());
+		return c;
+	}
+
+	/**
+	 * Emit the entities with the given IDs. IDs are buffered while a batch is waiting to be fetched and each batch is
+	 * fetched with {@link Riak#fetchStream(Bucket, java.util.Collection, Class, Function,
+	 * com.basho.riak.client.convert.Converter, int)}, so entities are emitted as they're fetched rather than in the order
+	 * their IDs arrived. IDs with no entity are skipped, like a CrudRepository does.
+	 */
+	@Override
+	public Composable<T> findAll(Composable<ID> ids) {
+		Composable<T> c = new Composable<T>(riak);
+		ids.consume(new LookupBatcher(c));
+		return c;
+	}
+
+	/**
+	 * Count the entities by listing the bucket's keys. Listing keys is expensive for Riak, so this shouldn't be called
+	 * routinely against production clusters.
+	 */
+	@Override
+	public Composable<Long> count() {
+		final Promise<Long> p = new Promise<Long>(riak);
+		withBucket(new Consumer<Bucket>() {
+			@Override
+			public void accept(Bucket b) {
+				complete(riak.keys(b).completion(), p);
+			}
+		}, failure(p));
+		return p;
+	}
+
+	@Override
+	public Composable<Void> delete(ID id) {
+		final String key = keyFor(id);
+		final Promise<Void> p = new Promise<Void>(riak);
+		withBucket(new Consumer<Bucket>() {
+			@Override
+			public void accept(Bucket b) {
+				complete(riak.delete(b, key, null), p);
+			}
+		}, failure(p));
+		return p;
+	}
+
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public Composable<Void> delete(Composable<? extends T> entities) {
+		final Composable<Void> c = new Composable<Void>(riak);
+		entities.consume(new Consumer() {
+			@Override
+			public void accept(Object entity) {
+				final String key;
+				try {
+					key = keyOf((T) entity);
+				} catch (IllegalArgumentException e) {
+					publishError(e);
+					return;
+				}
+				withBucket(new Consumer<Bucket>() {
+					@Override
+					public void accept(Bucket b) {
+						emit(riak.delete(b, key, null), c);
+					}
+				}, errorConsumer());
+			}
+		});
+		return c;
+	}
+
+	/**
+	 * Delete every entity by listing the bucket's keys and deleting each one as it's listed. Listing keys is expensive for
+	 * Riak, so this shouldn't be called routinely against production clusters.
+	 */
+	@Override
+	public Composable<Void> deleteAll() {
+		final Promise<Void> p = new Promise<Void>(riak);
+		withBucket(new Consumer<Bucket>() {
+			@Override
+			public void accept(final Bucket b) {
+				// deletes count down and the listing counts up, so only the last of them reaches zero
+				final AtomicLong remaining = new AtomicLong();
+				RiakStream<String> keys = riak.keys(b);
+				keys.consume(new Consumer<String>() {
+					@Override
+					public void accept(String key) {
+						Promise<Void> op = riak.delete(b, key, null);
+						op.onSuccess(new Consumer<Void>() {
+							@Override
+							public void accept(Void v) {
+								if (remaining.decrementAndGet() == 0) {
+									p.set((Void) null);
+								}
+							}
+						});
+						op.when(Throwable.class, failure(p));
+					}
+				});
+				keys.completion().onSuccess(new Consumer<Long>() {
+					@Override
+					public void accept(Long listed) {
+						if (remaining.addAndGet(listed) == 0) {
+							p.set((Void) null);
+						}
+					}
+				});
+				keys.completion().when(Throwable.class, failure(p));
+			}
+		}, failure(p));
+		return p;
+	}
+
+	private void withBucket(Consumer<Bucket> op, Consumer<Throwable> onError) {
+		Promise<Bucket> b = riak.fetchBucket(bucket);
+		b.onSuccess(op);
+		b.when(Throwable.class, onError);
+	}
+
+	private <V> void emit(Promise<V> op, final Composable<V> c) {
+		op.onSuccess(new Consumer<V>() {
+			@Override
+			public void accept(V value) {
+				c.accept(value);
+			}
+		});
+		op.when(Throwable.class, errorConsumer());
+	}
+
+	private static <V> void complete(Promise<V> op, final Promise<V> p) {
+		op.onSuccess(new Consumer<V>() {
+			@Override
+			public void accept(V value) {
+				p.set(value);
+			}
+		});
+		op.when(Throwable.class, failure(p));
+	}
+
+	private Consumer<Throwable> errorConsumer() {
+		return new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				publishError(t);
+			}
+		};
+	}
+
+	private void publishError(Throwable t) {
+		riak.notify(Fn.T(t.getClass()), Fn.event(t));
+	}
+
+	private static <V> Consumer<Throwable> failure(final Promise<V> p) {
+		return new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable t) {
+				p.set(t);
+			}
+		};
+	}
+
+	private String keyOf(T entity) {
+		Assert.notNull(entity, "Entity cannot be null.");
+		Object id = ReflectionUtils.getField(idField, entity);
+		Assert.notNull(id, "Entity must have an ID to be stored in Riak.");
+		return String.valueOf(id);
+	}
+
+	private static String keyFor(Object id) {
+		Assert.notNull(id, "ID cannot be null.");
+		return String.valueOf(id);
+	}
+
+	private static Field findIdField(Class<?> domainType) {
+		Field named = null;
+		for (Class<?> type = domainType; null != type && Object.class != type; type = type.getSuperclass()) {
+			for (Field f : type.getDeclaredFields()) {
+				if (f.isAnnotationPresent(Id.class)) {
+					ReflectionUtils.makeAccessible(f);
+					return f;
+				}
+				if (null == named && "id".equals(f.getName())) {
+					named = f;
+				}
+			}
+		}
+		if (null == named) {
+			throw new IllegalArgumentException(domainType.getName() + " has no field annotated with @Id or named 'id'");
+		}
+		ReflectionUtils.makeAccessible(named);
+		return named;
+	}
+
+	/**
+	 * Buffers IDs and fetches them a batch at a time. The first ID of a batch schedules its fetch on the {@link Riak}
+	 * dispatcher, so IDs arriving before that runs join the batch; a batch that fills up is fetched right away.
+	 */
+	private class LookupBatcher implements Consumer<ID> {
+		private final Composable<T> c;
+		private       List<String>  keys = new ArrayList<String>();
+
+		private LookupBatcher(Composable<T> c) {
+			this.c = c;
+		}
+
+		@Override
+		public void accept(ID id) {
+			String key;
+			try {
+				key = keyFor(id);
+			} catch (IllegalArgumentException e) {
+				publishError(e);
+				return;
+			}
+			List<String> full = null;
+			boolean first;
+			synchronized (this) {
+				keys.add(key);
+				first = (keys.size() == 1);
+				if (keys.size() >= LOOKUP_BATCH_SIZE) {
+					full = take();
+				}
+			}
+			if (null != full) {
+				fetch(full);
+			} else if (first) {
+				Promise<Void> later = new Promise<Void>(riak);
+				later.onSuccess(new Consumer<Void>() {
+					@Override
+					public void accept(Void v) {
+						List<String> batch;
+						synchronized (LookupBatcher.this) {
+							batch = take();
+						}
+						if (!batch.isEmpty()) {
+							fetch(batch);
+						}
+					}
+				});
+				later.set((Void) null);
+			}
+		}
+
+		private List<String> take() {
+			List<String> batch = keys;
+			keys = new ArrayList<String>();
+			return batch;
+		}
+
+		private void fetch(final List<String> batch) {
+			withBucket(new Consumer<Bucket>() {
+				@Override
+				public void accept(Bucket b) {
+					riak.fetchStream(b, batch, domainType, null, null, Riak.DEFAULT_FETCH_ALL_CONCURRENCY)
+							.consume(new Consumer<Tuple2<String, T>>() {
+								@Override
+								public void accept(Tuple2<String, T> kv) {
+									if (null != kv.getT2()) {
+										c.accept(kv.getT2());
+									}
+								}
+							});
+				}
+			}, errorConsumer());
+		}
+	}
+
+}
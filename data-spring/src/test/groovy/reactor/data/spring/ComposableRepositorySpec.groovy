@@ -4,15 +4,25 @@ import com.mongodb.Mongo
 import org.springframework.context.annotation.AnnotationConfigApplicationContext
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
+import org.springframework.data.domain.PageImpl
+import org.springframework.data.domain.Pageable
 import org.springframework.data.mongodb.core.MongoTemplate
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories
+import org.springframework.data.repository.CrudRepository
+import org.springframework.data.repository.PagingAndSortingRepository
+import org.springframework.data.repository.core.EntityInformation
 import reactor.core.Composable
+import reactor.data.riak.RiakSpec
+import reactor.data.riak.test.InMemoryRiakClient
 import reactor.data.spring.config.EnableComposableRepositories
+import reactor.data.spring.riak.RiakComposableCrudRepository
 import reactor.data.spring.test.ComposablePersonRepository
 import reactor.data.spring.test.Person
+import reactor.fn.Consumer
 import reactor.fn.Function
 import spock.lang.Specification
 
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
 
 /**
@@ -26,6 +36,11 @@ class ComposableRepositorySpec extends Specification {
 		appCtx = new AnnotationConfigApplicationContext(SpecConfig)
 	}
 
+	def cleanup() {
+		// destroys the repository factory beans, which give back their pools
+		appCtx.close()
+	}
+
 	def "generates proxies for ComposableRepositories"() {
 
 		when: "a repository is requested"
@@ -66,6 +81,291 @@ class ComposableRepositorySpec extends Specification {
 
 	}
 
+	def "serves repository methods from many threads at once"() {
+
+		given: "a ComposableRepository holding an entity"
+		def people = appCtx.getBean(ComposablePersonRepository)
+		people.save(Composable.from(new Person(id: 3, name: "Jim Doe"))).await(1, TimeUnit.SECONDS)
+		def threads = 16
+		def calls = 50
+		def start = new CountDownLatch(1)
+		def done = new CountDownLatch(threads)
+		def names = [].asSynchronized()
+		def errors = [].asSynchronized()
+
+		when: "every thread makes its first calls at the same time"
+		threads.times {
+			Thread.start {
+				try {
+					start.await()
+					calls.times {
+						names << people.findOne(3L).await(5, TimeUnit.SECONDS)?.name
+						names << people.findByName("Jim Doe").await(5, TimeUnit.SECONDS)?.name
+					}
+				} catch (Throwable t) {
+					errors << t
+				} finally {
+					done.countDown()
+				}
+			}
+		}
+		start.countDown()
+		done.await(30, TimeUnit.SECONDS)
+
+		then: "every call was dispatched to the right method"
+		errors.empty
+		names.size() == threads * calls * 2
+		names.every { it == "Jim Doe" }
+
+	}
+
+	def "saves entities in batches"() {
+
+		given: "a repository that saves up to 10 entities at a time"
+		def batches = [].asSynchronized()
+		def delegate = [save: { entities ->
+			if (entities instanceof Iterable) {
+				batches << entities.toList()
+			}
+			entities
+		}] as CrudRepository
+		def settings = new ComposableRepositorySettings().saveBatching(10, 50, TimeUnit.MILLISECONDS, 100)
+		def pools = new ComposableRepositoryPools(settings)
+		def people = new SimpleComposableCrudRepository<Person, Long>(delegate, null, settings, pools)
+		def entities = new Composable<Person>()
+		def saved = [].asSynchronized()
+		def latch = new CountDownLatch(25)
+
+		when: "25 entities are saved"
+		people.save(entities).consume({ Person p ->
+			saved << p.id
+			latch.countDown()
+		} as Consumer<Person>)
+		(1..25).each { entities.accept(new Person(id: it, name: "Person $it")) }
+		latch.await(1, TimeUnit.SECONDS)
+
+		then: "full batches are saved at once and the rest once the linger time has passed"
+		batches*.size() == [10, 10, 5]
+		saved.sort(false) == (1L..25L).toList()
+
+		cleanup:
+		pools.shutdown()
+
+	}
+
+	def "streams findAll() a page at a time"() {
+
+		given: "a repository that reads 10 entities at a time"
+		def people = (1..25).collect { new Person(id: it, name: "Person $it") }
+		def requested = [].asSynchronized()
+		def delegate = [findAll: { Pageable pageable ->
+			requested << pageable.pageNumber
+			def to = Math.min(pageable.offset + pageable.pageSize, people.size())
+			new PageImpl<Person>(people.subList(pageable.offset, to), pageable, people.size())
+		}] as PagingAndSortingRepository
+		def settings = new ComposableRepositorySettings().findAllPaging(10, 1)
+		def pools = new ComposableRepositoryPools(settings)
+		def repo = new SimpleComposableCrudRepository<Person, Long>(delegate, null, settings, pools)
+		def found = [].asSynchronized()
+		def latch = new CountDownLatch(25)
+
+		when: "every entity is requested"
+		repo.findAll().consume({ Person p ->
+			found << p.id
+			latch.countDown()
+		} as Consumer<Person>)
+		latch.await(1, TimeUnit.SECONDS)
+
+		then: "each page was read once and every entity was emitted"
+		requested.sort(false) == [0, 1, 2]
+		found.sort(false) == (1L..25L).toList()
+
+		cleanup:
+		pools.shutdown()
+
+	}
+
+	def "looks up streams of IDs in batches"() {
+
+		given: "a repository that looks up to 10 IDs at a time"
+		def people = (1L..20L).collectEntries { [(it): new Person(id: it, name: "Person $it")] }
+		def lookups = [].asSynchronized()
+		def delegate = [findAll: { Iterable ids ->
+			lookups << ids.toList()
+			ids.collect { people[it] }.findAll().reverse()
+		}] as CrudRepository
+		def entityInformation = [getId: { Person p -> p.id }] as EntityInformation
+		def settings = new ComposableRepositorySettings().lookupBatching(10, 50, TimeUnit.MILLISECONDS)
+		def pools = new ComposableRepositoryPools(settings)
+		def repo = new SimpleComposableCrudRepository<Person, Long>(delegate, entityInformation, settings, pools)
+		def ids = new Composable<Long>()
+		def found = [].asSynchronized()
+		def latch = new CountDownLatch(20)
+
+		when: "25 IDs arrive, 5 of which have no entity"
+		repo.findAll(ids).consume({ Person p ->
+			found << p.id
+			latch.countDown()
+		} as Consumer<Person>)
+		(1L..25L).each { ids.accept(it) }
+		latch.await(1, TimeUnit.SECONDS)
+
+		then: "IDs are looked up in batches and missing IDs are skipped"
+		lookups*.size() == [10, 10, 5]
+		found.sort(false) == (1L..20L).toList()
+
+		cleanup:
+		pools.shutdown()
+
+	}
+
+	def "skips IDs with no entity whether or not lookups are batched"() {
+
+		given: "a repository that finds every ID but 2"
+		def people = [1L, 3L].collectEntries { [(it): new Person(id: it, name: "Person $it")] }
+		def delegate = [
+				findOne: { Long id -> people[id] },
+				findAll: { Iterable ids -> ids.collect { people[it] }.findAll() }
+		] as CrudRepository
+		def entityInformation = [getId: { Person p -> p.id }] as EntityInformation
+		def settings = new ComposableRepositorySettings().lookupBatching(batchSize, 50, TimeUnit.MILLISECONDS)
+		def pools = new ComposableRepositoryPools(settings)
+		def repo = new SimpleComposableCrudRepository<Person, Long>(delegate, entityInformation, settings, pools)
+		def ids = new Composable<Long>()
+		def found = [].asSynchronized()
+		def latch = new CountDownLatch(3)
+
+		when: "IDs 1 to 3 are looked up"
+		repo.findAll(ids).consume({ Person p ->
+			found << p
+			latch.countDown()
+		} as Consumer<Person>)
+		(1L..3L).each { ids.accept(it) }
+		latch.await(500, TimeUnit.MILLISECONDS)
+
+		then: "only the entities that exist are emitted"
+		found*.id == [1L, 3L]
+
+		cleanup:
+		pools.shutdown()
+
+		where:
+		batchSize << [1, 10]
+
+	}
+
+	def "runs reads and writes on separate pools"() {
+
+		given: "a repository whose reads block until released"
+		def release = new CountDownLatch(1)
+		def delegate = [
+				count    : { release.await(1, TimeUnit.SECONDS); 0L },
+				deleteAll: { -> }
+		] as CrudRepository
+		def settings = new ComposableRepositorySettings().readPool(1).writePool(1)
+		def pools = new ComposableRepositoryPools(settings)
+		def repo = new SimpleComposableCrudRepository<Person, Long>(delegate, null, settings, pools)
+		def written = new CountDownLatch(1)
+
+		when: "a write is made while the only read thread is busy and another read waits for it"
+		repo.count()
+		repo.count()
+		repo.deleteAll().consume({ written.countDown() } as Consumer<Void>)
+
+		then: "the write was not held up and the waiting read is counted"
+		written.await(500, TimeUnit.MILLISECONDS)
+		repo.activeReads == 1
+		repo.readQueueDepth == 1
+
+		cleanup:
+		release.countDown()
+		pools.shutdown()
+
+	}
+
+	def "shares pools between repositories with the same settings"() {
+
+		given: "pools for two repositories with the same settings and one with other settings"
+		def settings = new ComposableRepositorySettings()
+		def first = ComposableRepositoryPools.acquire(settings)
+		def second = ComposableRepositoryPools.acquire(settings)
+		def other = ComposableRepositoryPools.acquire(new ComposableRepositorySettings())
+
+		expect: "the repositories with the same settings share one set of pools"
+		first.is(second)
+		!first.is(other)
+
+		when: "one of the repositories is destroyed"
+		first.release()
+
+		then: "the pools keep running for the other"
+		!second.isShutdown()
+
+		when: "the other is destroyed"
+		second.release()
+
+		then: "the pools are shut down"
+		second.isShutdown()
+		!other.isShutdown()
+
+		cleanup:
+		other.release()
+
+	}
+
+	def "provides repositories backed by Riak"() {
+
+		given: "a ComposableRepository backed by Riak"
+		def riak = new RiakSpec().client(new InMemoryRiakClient().getClient()).build()
+		def people = new RiakComposableCrudRepository<Person, Long>(riak, Person)
+
+		when: "an entity is saved"
+		people.save(Composable.from(new Person(id: 2, name: "Jane Doe"))).await(1, TimeUnit.SECONDS)
+
+		then: "it is stored in a bucket named for its type"
+		people.bucket == "person"
+		people.findOne(2L).await(1, TimeUnit.SECONDS)?.name == "Jane Doe"
+		people.exists(2L).await(1, TimeUnit.SECONDS)
+
+		when: "the entity is deleted"
+		people.delete(2L).await(1, TimeUnit.SECONDS)
+
+		then: "it no longer exists"
+		!people.exists(2L).await(1, TimeUnit.SECONDS)
+
+	}
+
+	def "looks up, counts and deletes Riak entities in bulk"() {
+
+		given: "a Riak repository holding 20 people"
+		def riak = new RiakSpec().client(new InMemoryRiakClient().getClient()).build()
+		def people = new RiakComposableCrudRepository<Person, Long>(riak, Person)
+		(1L..20L).each { people.save(Composable.from(new Person(id: it, name: "Person $it"))).await(1, TimeUnit.SECONDS) }
+		def ids = new Composable<Long>()
+		def found = [].asSynchronized()
+		def latch = new CountDownLatch(20)
+
+		when: "25 IDs arrive, 5 of which have no entity"
+		people.findAll(ids).consume({ Person p ->
+			found << p.id
+			latch.countDown()
+		} as Consumer<Person>)
+		(1L..25L).each { ids.accept(it) }
+		latch.await(1, TimeUnit.SECONDS)
+
+		then: "the entities that exist are emitted"
+		found.sort(false) == (1L..20L).toList()
+		people.count().await(1, TimeUnit.SECONDS) == 20
+
+		when: "every entity is deleted"
+		people.deleteAll().await(1, TimeUnit.SECONDS)
+
+		then: "none are left"
+		people.count().await(1, TimeUnit.SECONDS) == 0
+		!people.exists(1L).await(1, TimeUnit.SECONDS)
+
+	}
+
 }
 
 @Configuration
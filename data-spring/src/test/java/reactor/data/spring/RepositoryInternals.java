@@ -0,0 +1,30 @@
+package reactor.data.spring;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.data.repository.CrudRepository;
+
+import java.io.Serializable;
+
+/**
+ * Gives benchmarks and tests outside {@code reactor.data.spring} access to the package-private parts of the composable
+ * repository support they measure. Not part of the API.
+ *
+ * @author Jon Brisbin
+ */
+public final class RepositoryInternals {
+
+	private RepositoryInternals() {
+	}
+
+	/**
+	 * Create the advice {@link ComposableRepositoryFactoryBean} adds to a repository proxy, which dispatches calls to
+	 * the repository or to its Spring Data delegate.
+	 */
+	public static <R extends ComposableCrudRepository<T, ID>, T, ID extends Serializable> MethodInterceptor queryMethodExecutor(
+			Class<R> repositoryType,
+			ComposableCrudRepository<T, ID> repository,
+			CrudRepository<T, ID> delegate) {
+		return new QueryMethodExecutor<R, T, ID>(repositoryType, repository, delegate);
+	}
+
+}